@@ -1,38 +1,263 @@
 package hk.ust.comp3021;
 
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.RenderingEngine;
+import hk.ust.comp3021.replay.ActionLog;
+import hk.ust.comp3021.replay.AsyncRenderingEngine;
+import hk.ust.comp3021.replay.FrameRecording;
+import hk.ust.comp3021.replay.InterleavingLog;
+import hk.ust.comp3021.replay.OutputMultiplexer;
 import hk.ust.comp3021.replay.ReplaySokobanGame;
+import hk.ust.comp3021.replay.SeekableReplay;
+import hk.ust.comp3021.replay.TerminalRenderingEngine;
+import hk.ust.comp3021.solver.CooperativeSolver;
+import hk.ust.comp3021.solver.SolutionCache;
+import hk.ust.comp3021.tools.ActionMinimizer;
+import hk.ust.comp3021.tools.CorpusValidator;
+import hk.ust.comp3021.tools.ValidationReport;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 /**
  * The holder of the entry point of the game.
  */
 public class Sokoban {
 
+    private static final String SOLVE_COMMAND = "solve";
+
+    private static final String VALIDATE_COMMAND = "validate";
+
+    private static final String CONVERT_COMMAND = "convert";
+
+    private static final String SEEK_COMMAND = "seek";
+
+    private static final String MINIMIZE_COMMAND = "minimize";
+
+    private static final String PLAY_COMMAND = "play";
+
+    private static final String BENCHMARK_COMMAND = "bench";
+
+    /**
+     * Prefix of the mode argument that runs a {@link ReplaySokobanGame.Mode#FREE_RACE} game and records the order of
+     * its actions to the file following the prefix.
+     */
+    private static final String RECORD_MODE_PREFIX = "record:";
+
+    /**
+     * Prefix of the mode argument that processes actions in the order recorded in the file following the prefix.
+     */
+    private static final String REPLAY_MODE_PREFIX = "replay:";
+
+    private static final String MERGE_RUNS_OPTION = "--merge-runs";
+
+    /**
+     * Prefix of the options given before the arguments of a replay.
+     */
+    private static final String OPTION_PREFIX = "--";
+
+    /**
+     * Option before the arguments of a replay that renders it with {@link TerminalRenderingEngine.Mode#DIFFERENTIAL}.
+     */
+    private static final String DIFFERENTIAL_RENDER_OPTION = "--diff";
+
+    /**
+     * Option before the arguments of a replay that skips frames in which nothing changed, optionally followed by
+     * {@code =} and the interval in milliseconds after which an unchanged frame is rendered anyway.
+     */
+    private static final String SKIP_UNCHANGED_OPTION = "--skip-unchanged";
+
+    /**
+     * Option before the arguments of a replay that formats and writes frames on background threads with an
+     * {@link AsyncRenderingEngine}.
+     */
+    private static final String ASYNC_RENDER_OPTION = "--async-render";
+
+    /**
+     * Option before the arguments of a replay that renders only a window of the map, followed by {@code =},
+     * the size of the window as {@code <width>x<height>}, and optionally {@code :} and the id of the player to follow.
+     * The window follows the centroid of all players if no player is given.
+     */
+    private static final String VIEWPORT_OPTION = "--viewport";
+
+    /**
+     * Option before the arguments of a replay that records the rendered frames with {@link FrameRecording}, followed by
+     * {@code =} and the file to write. The recording is compressed if the file name ends with {@link #GZIP_EXTENSION}.
+     */
+    private static final String RECORD_FRAMES_OPTION = "--record-frames";
+
+    private static final String GZIP_EXTENSION = ".gz";
+
+    /**
+     * Options given before the arguments of a replay.
+     *
+     * @param renderMode    how frames are written to the terminal
+     * @param skipUnchanged whether frames in which the game state has not changed are skipped
+     * @param heartbeat     interval after which an unchanged frame is rendered anyway, or null to never render one
+     * @param asyncRender   whether frames are formatted and written on background threads
+     * @param viewport      window of the map to render, or null to render the whole map
+     * @param frameFile     file to record the rendered frames to, or null to not record them
+     */
+    public record ReplayOptions(@NotNull TerminalRenderingEngine.Mode renderMode,
+                                boolean skipUnchanged,
+                                @Nullable Duration heartbeat,
+                                boolean asyncRender,
+                                @Nullable TerminalRenderingEngine.Viewport viewport,
+                                @Nullable Path frameFile) {
+        /**
+         * Options of a replay given without any option.
+         */
+        public static final ReplayOptions DEFAULT =
+                new ReplayOptions(TerminalRenderingEngine.Mode.FULL, false, null, false, null, null);
+    }
+
+    /**
+     * Result of a game run by {@link #benchmarkGames(int, String, ReplaySokobanGame.Mode, String[])}.
+     *
+     * @param actions       number of processed actions, including failed actions and exits
+     * @param failedActions number of processed actions that failed
+     * @param won           whether the game was won
+     * @param wallNanos     wall time the game took, in nanoseconds
+     */
+    public record BenchmarkResult(long actions, long failedActions, boolean won, long wallNanos) {
+        /**
+         * @return processed actions per second of wall time
+         */
+        public double actionsPerSecond() {
+            return wallNanos == 0 ? 0 : actions * 1e9 / wallNanos;
+        }
+    }
+
+    /**
+     * Discards whatever a benchmarked game renders.
+     */
+    private static final RenderingEngine HEADLESS_RENDERING_ENGINE = new RenderingEngine() {
+        @Override
+        public void render(@NotNull GameState state) {
+        }
+
+        @Override
+        public void message(@NotNull String content) {
+        }
+    };
+
+    private static final Duration DEFAULT_SOLVE_TIME_LIMIT = Duration.ofSeconds(60);
+
+    /**
+     * A subcommand of the program.
+     */
+    @FunctionalInterface
+    private interface Command {
+        /**
+         * @throws IOException          If files cannot be read or written.
+         * @throws InterruptedException If interrupted while running.
+         */
+        void run() throws IOException, InterruptedException;
+    }
+
     /**
      * The entry point of the program.
      *
      * @param args The command line args.
      */
     public static void main(@NotNull String[] args) {
-        if (args.length < 5) {
-            System.out.println("Usage: java -jar Sokoban.jar <repeat> <map_file> <mode> <fps> <action_file> [<action_file> ...]");
+        if (args.length >= 3 && SOLVE_COMMAND.equals(args[0])) {
+            runCommand(() -> {
+                final var timeLimit = args.length > 3 ? Duration.ofSeconds(Long.parseLong(args[3])) : DEFAULT_SOLVE_TIME_LIMIT;
+                final var cacheDir = args.length > 4 ? Path.of(args[4]) : null;
+                final var files = solveGame(args[1], args[2], timeLimit, cacheDir);
+                if (files == null) {
+                    System.out.println("No solution found within " + timeLimit.toSeconds() + " seconds.");
+                    System.exit(1);
+                    return;
+                }
+                System.out.println("Replay with: " + files.stream().map(Path::toString).collect(Collectors.joining(" ")));
+            });
+            return;
+        }
+        if (args.length >= 3 && VALIDATE_COMMAND.equals(args[0])) {
+            runCommand(() -> {
+                final var timeLimit = args.length > 3 ? Duration.ofSeconds(Long.parseLong(args[3])) : null;
+                final var summary = validateMaps(args[1], args[2], timeLimit);
+                System.out.printf("Validated %d maps (%d invalid, %d solvable) in %d ms.%n",
+                        summary.maps(), summary.invalid(), summary.solvable(), summary.wallMillis());
+            });
+            return;
+        }
+        if (args.length >= 3 && CONVERT_COMMAND.equals(args[0])) {
+            runCommand(() -> {
+                final var mergeRuns = args.length > 3 && MERGE_RUNS_OPTION.equals(args[3]);
+                ActionLog.convert(Path.of(args[1]), Path.of(args[2]), mergeRuns);
+            });
+            return;
+        }
+        if (args.length >= 4 && MINIMIZE_COMMAND.equals(args[0])) {
+            runCommand(() -> {
+                final var summary = minimizeActions(args[1], args[2], args[3]);
+                System.out.printf("Minimized %d action files (%d failed) from %d to %d actions in %d ms.%n",
+                        summary.files(), summary.failed(), summary.originalActions(), summary.minimizedActions(),
+                        summary.wallMillis());
+            });
+            return;
+        }
+        if (args.length >= 4 && SEEK_COMMAND.equals(args[0])) {
+            runCommand(() -> seekReplay(args[1], Long.parseLong(args[2]),
+                    Arrays.stream(args, 3, args.length).map(Path::of).toList()));
+            return;
+        }
+        if (args.length >= 2 && PLAY_COMMAND.equals(args[0])) {
+            runCommand(() -> {
+                final var mode = args.length > 3 && DIFFERENTIAL_RENDER_OPTION.equals(args[3])
+                        ? TerminalRenderingEngine.Mode.DIFFERENTIAL
+                        : TerminalRenderingEngine.Mode.FULL;
+                playFrames(Path.of(args[1]), args.length > 2 ? Double.parseDouble(args[2]) : 1, mode);
+            });
+            return;
+        }
+        if (args.length >= 5 && BENCHMARK_COMMAND.equals(args[0])) {
+            runCommand(() -> runBenchmark(args));
+            return;
+        }
+        var optionCount = 0;
+        while (optionCount < args.length && args[optionCount].startsWith(OPTION_PREFIX)) {
+            optionCount++;
+        }
+        final var replayArgs = Arrays.copyOfRange(args, optionCount, args.length);
+        if (replayArgs.length < 5) {
+            printUsage();
             System.exit(1);
             return;
         }
+        final var replayOptionCount = optionCount;
+        runCommand(() -> {
+            var options = ReplayOptions.DEFAULT;
+            for (int i = 0; i < replayOptionCount; i++) {
+                options = parseReplayOption(options, args[i]);
+            }
+            runReplay(replayArgs, options);
+        });
+    }
+
+    /**
+     * Runs a subcommand, reporting its failure and exiting with status 1 if it throws.
+     *
+     * @param command The subcommand.
+     */
+    private static void runCommand(@NotNull Command command) {
         try {
-            final var repeat = Integer.parseInt(args[0]);
-            final var mode = switch (args[2]) {
-                case "ROUND_ROBIN" -> ReplaySokobanGame.Mode.ROUND_ROBIN;
-                case "FREE_RACE" -> ReplaySokobanGame.Mode.FREE_RACE;
-                default -> {
-                    throw new IllegalArgumentException("Invalid mode: " + args[2]);
-                }
-            };
-            final var fps = Integer.parseInt(args[3]);
-            replayGame(repeat, args[1], mode, fps, Arrays.copyOfRange(args, 4, args.length));
+            command.run();
         } catch (IOException e) {
             System.out.println("Failed to open files: " + e);
             System.exit(1);
@@ -48,6 +273,133 @@ public class Sokoban {
         }
     }
 
+    private static void printUsage() {
+        System.out.println("Usage: java -jar Sokoban.jar [<option> ...] <repeat> <map_file> <mode> <fps> <action_file> "
+                + "[<action_file> ...]");
+        System.out.println("       <mode> is ROUND_ROBIN, FREE_RACE, " + RECORD_MODE_PREFIX + "<log_file> or "
+                + REPLAY_MODE_PREFIX + "<log_file>");
+        System.out.println("       <option> is " + DIFFERENTIAL_RENDER_OPTION + " to redraw only the changed cells of a single "
+                + "game in an ANSI terminal,");
+        System.out.println("       or " + SKIP_UNCHANGED_OPTION + "[=<heartbeat_millis>] to skip frames in which nothing "
+                + "changed,");
+        System.out.println("       or " + ASYNC_RENDER_OPTION + " to format and write frames on background threads, "
+                + "dropping frames when behind,");
+        System.out.println("       or " + VIEWPORT_OPTION + "=<width>x<height>[:<player_id>] to render only a window "
+                + "following a player or all players,");
+        System.out.println("       or " + RECORD_FRAMES_OPTION + "=<frame_file>[" + GZIP_EXTENSION + "] to record the "
+                + "frames of a single game; options apply to ROUND_ROBIN and FREE_RACE games");
+        System.out.println("       java -jar Sokoban.jar solve <map_file> <output_dir> [<time_limit_seconds> [<cache_dir>]]");
+        System.out.println("       java -jar Sokoban.jar validate <map_dir> <report_file> [<time_limit_seconds>]");
+        System.out.println("       java -jar Sokoban.jar convert <action_file> <output_file> [" + MERGE_RUNS_OPTION + "]");
+        System.out.println("       java -jar Sokoban.jar minimize <map_file> <action_file_or_dir> <output_file_or_dir>");
+        System.out.println("       java -jar Sokoban.jar seek <map_file> <action_number> <action_file> [<action_file> ...]");
+        System.out.println("       java -jar Sokoban.jar play <frame_file> [<speed> [" + DIFFERENTIAL_RENDER_OPTION + "]]");
+        System.out.println("       java -jar Sokoban.jar bench <repeat> <map_file> <mode> <action_file> [<action_file> ...]");
+    }
+
+    private static void runBenchmark(@NotNull String[] args) throws IOException, InterruptedException {
+        final var start = System.nanoTime();
+        final var results = benchmarkGames(Integer.parseInt(args[1]), args[2], ReplaySokobanGame.Mode.valueOf(args[3]),
+                Arrays.copyOfRange(args, 4, args.length));
+        final var wallNanos = System.nanoTime() - start;
+        for (int i = 0; i < results.size(); i++) {
+            printBenchmarkResult("Game " + (i + 1), results.get(i));
+        }
+        printBenchmarkResult("Total", new BenchmarkResult(
+                results.stream().mapToLong(BenchmarkResult::actions).sum(),
+                results.stream().mapToLong(BenchmarkResult::failedActions).sum(),
+                results.stream().allMatch(BenchmarkResult::won),
+                wallNanos));
+        System.out.printf("%d of %d games won.%n", results.stream().filter(BenchmarkResult::won).count(), results.size());
+    }
+
+    private static @NotNull ReplayOptions parseReplayOption(@NotNull ReplayOptions options, @NotNull String option) {
+        if (DIFFERENTIAL_RENDER_OPTION.equals(option)) {
+            return new ReplayOptions(TerminalRenderingEngine.Mode.DIFFERENTIAL, options.skipUnchanged(), options.heartbeat(),
+                    options.asyncRender(), options.viewport(), options.frameFile());
+        }
+        if (SKIP_UNCHANGED_OPTION.equals(option)) {
+            return new ReplayOptions(options.renderMode(), true, null, options.asyncRender(), options.viewport(),
+                    options.frameFile());
+        }
+        if (option.startsWith(SKIP_UNCHANGED_OPTION + "=")) {
+            final var heartbeat = Duration.ofMillis(Long.parseLong(option.substring(SKIP_UNCHANGED_OPTION.length() + 1)));
+            if (heartbeat.isNegative() || heartbeat.isZero()) {
+                throw new IllegalArgumentException("Invalid heartbeat: " + option);
+            }
+            return new ReplayOptions(options.renderMode(), true, heartbeat, options.asyncRender(), options.viewport(),
+                    options.frameFile());
+        }
+        if (ASYNC_RENDER_OPTION.equals(option)) {
+            return new ReplayOptions(options.renderMode(), options.skipUnchanged(), options.heartbeat(), true,
+                    options.viewport(), options.frameFile());
+        }
+        if (option.startsWith(VIEWPORT_OPTION + "=")) {
+            return new ReplayOptions(options.renderMode(), options.skipUnchanged(), options.heartbeat(),
+                    options.asyncRender(), parseViewport(option.substring(VIEWPORT_OPTION.length() + 1)),
+                    options.frameFile());
+        }
+        if (option.startsWith(RECORD_FRAMES_OPTION + "=")) {
+            return new ReplayOptions(options.renderMode(), options.skipUnchanged(), options.heartbeat(),
+                    options.asyncRender(), options.viewport(), Path.of(option.substring(RECORD_FRAMES_OPTION.length() + 1)));
+        }
+        throw new IllegalArgumentException("Invalid option: " + option);
+    }
+
+    private static @NotNull TerminalRenderingEngine.Viewport parseViewport(@NotNull String viewport) {
+        final var playerSeparator = viewport.indexOf(':');
+        final var size = playerSeparator < 0 ? viewport : viewport.substring(0, playerSeparator);
+        final var sizeSeparator = size.indexOf('x');
+        if (sizeSeparator < 0) {
+            throw new IllegalArgumentException("Invalid viewport: " + viewport);
+        }
+        final var playerId = playerSeparator < 0
+                ? TerminalRenderingEngine.Viewport.ALL_PLAYERS
+                : Integer.parseInt(viewport.substring(playerSeparator + 1));
+        if (playerId == TerminalRenderingEngine.Viewport.ALL_PLAYERS && playerSeparator >= 0) {
+            throw new IllegalArgumentException("Invalid player id: " + viewport);
+        }
+        return new TerminalRenderingEngine.Viewport(Integer.parseInt(size.substring(0, sizeSeparator)),
+                Integer.parseInt(size.substring(sizeSeparator + 1)), playerId);
+    }
+
+    private static void runReplay(@NotNull String[] args, @NotNull ReplayOptions options)
+            throws IOException, InterruptedException {
+        final var repeat = Integer.parseInt(args[0]);
+        final var actionFiles = Arrays.copyOfRange(args, 4, args.length);
+        if (!ReplayOptions.DEFAULT.equals(options)
+                && (args[2].startsWith(RECORD_MODE_PREFIX) || args[2].startsWith(REPLAY_MODE_PREFIX))) {
+            throw new IllegalArgumentException("Options apply to ROUND_ROBIN and FREE_RACE games only");
+        }
+        if (options.renderMode() != TerminalRenderingEngine.Mode.FULL && repeat != 1) {
+            throw new IllegalArgumentException(DIFFERENTIAL_RENDER_OPTION + " needs a single game");
+        }
+        if (options.frameFile() != null && repeat != 1) {
+            throw new IllegalArgumentException(RECORD_FRAMES_OPTION + " needs a single game");
+        }
+        if (args[2].startsWith(RECORD_MODE_PREFIX)) {
+            if (repeat != 1) {
+                throw new IllegalArgumentException("Only a single game can be recorded");
+            }
+            recordGame(args[1], Integer.parseInt(args[3]), Path.of(args[2].substring(RECORD_MODE_PREFIX.length())),
+                    actionFiles);
+            return;
+        }
+        if (args[2].startsWith(REPLAY_MODE_PREFIX)) {
+            replayRecordedGame(repeat, args[1], Path.of(args[2].substring(REPLAY_MODE_PREFIX.length())), actionFiles);
+            return;
+        }
+        final var mode = switch (args[2]) {
+            case "ROUND_ROBIN" -> ReplaySokobanGame.Mode.ROUND_ROBIN;
+            case "FREE_RACE" -> ReplaySokobanGame.Mode.FREE_RACE;
+            default -> {
+                throw new IllegalArgumentException("Invalid mode: " + args[2]);
+            }
+        };
+        final var fps = Integer.parseInt(args[3]);
+        replayGame(repeat, args[1], mode, fps, actionFiles, options);
+    }
+
 
     /**
      * @param repeat      number of times to repeat the game in parallel
@@ -63,20 +415,334 @@ public class Sokoban {
                                   ReplaySokobanGame.Mode mode,
                                   int fps,
                                   @NotNull String[] actionFiles
+    ) throws IOException, InterruptedException {
+        replayGame(repeat, mapFile, mode, fps, actionFiles, ReplayOptions.DEFAULT);
+    }
+
+    /**
+     * @param repeat      number of times to repeat the game in parallel
+     * @param mapFile     map file
+     * @param mode        mode of the game
+     * @param fps         rendering fps
+     * @param actionFiles action files
+     * @param options     how the games are rendered
+     * @throws IOException          if mapFile cannot be load
+     * @throws InterruptedException if the game is interrupted
+     */
+    public static void replayGame(int repeat,
+                                  @NotNull String mapFile,
+                                  ReplaySokobanGame.Mode mode,
+                                  int fps,
+                                  @NotNull String[] actionFiles,
+                                  @NotNull ReplayOptions options
     ) throws IOException, InterruptedException {
         final var threads = new Thread[repeat];
+        // Closes each rendering engine once its game has ended
+        final var closeRenderingEngines = new ArrayList<Runnable>();
+        // Frames go straight to the standard output channel, bypassing the encoding and locking of System.out.
+        System.out.flush();
+        final var standardOutput = new FileOutputStream(FileDescriptor.out).getChannel();
+        // Parallel games buffer their output separately, and a single thread writes it in batches.
+        final var multiplexer = repeat > 1 ? new OutputMultiplexer(standardOutput) : null;
         for (int i = 0; i < repeat; i++) {
-            final var game = SokobanGameFactory.createReplayGame(mapFile, mode, fps, actionFiles);
+            final var output = multiplexer != null ? multiplexer.newSink() : standardOutput;
+            final RenderingEngine renderingEngine;
+            if (options.asyncRender()) {
+                final var asyncRenderingEngine = new AsyncRenderingEngine(output, options.renderMode());
+                asyncRenderingEngine.setViewport(options.viewport());
+                closeRenderingEngines.add(asyncRenderingEngine::close);
+                renderingEngine = asyncRenderingEngine;
+            } else {
+                final var terminalRenderingEngine = new TerminalRenderingEngine(output, options.renderMode());
+                terminalRenderingEngine.setViewport(options.viewport());
+                closeRenderingEngines.add(terminalRenderingEngine::close);
+                renderingEngine = terminalRenderingEngine;
+            }
+            final var frameFile = options.frameFile();
+            final RenderingEngine gameRenderingEngine;
+            if (frameFile != null) {
+                final var recorder = new FrameRecording.Recorder(Files.newOutputStream(frameFile),
+                        frameFile.toString().endsWith(GZIP_EXTENSION), renderingEngine);
+                closeRenderingEngines.add(() -> {
+                    try {
+                        recorder.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                gameRenderingEngine = recorder;
+            } else {
+                gameRenderingEngine = renderingEngine;
+            }
+            final var game = SokobanGameFactory.createReplayGame(mapFile, mode, fps, actionFiles, null,
+                    gameRenderingEngine);
+            if (options.skipUnchanged()) {
+                game.enableFrameSkipping(options.heartbeat());
+            }
             final var thread = new Thread(game);
             threads[i] = thread;
         }
-        for (final var th :
-            threads) {
-            th.start();
+        if (multiplexer != null) {
+            closeRenderingEngines.add(multiplexer::close);
         }
-        for (final var th :
-            threads) {
-            th.join();
+        try {
+            for (final var th :
+                threads) {
+                th.start();
+            }
+            for (final var th :
+                threads) {
+                th.join();
+            }
+        } finally {
+            closeRenderingEngines.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Runs games in parallel as fast as possible, without rendering, to measure the throughput of the game engine.
+     *
+     * @param repeat      number of games to run in parallel
+     * @param mapFile     map file
+     * @param mode        mode of the games
+     * @param actionFiles action files
+     * @return the result of every game
+     * @throws IOException          if mapFile cannot be load
+     * @throws InterruptedException if the games are interrupted
+     */
+    public static @NotNull List<BenchmarkResult> benchmarkGames(int repeat,
+                                                                @NotNull String mapFile,
+                                                                ReplaySokobanGame.Mode mode,
+                                                                @NotNull String[] actionFiles
+    ) throws IOException, InterruptedException {
+        final var games = new ReplaySokobanGame[repeat];
+        for (int i = 0; i < repeat; i++) {
+            games[i] = SokobanGameFactory.createReplayGame(mapFile, mode, ReplaySokobanGame.UNTHROTTLED, actionFiles, null,
+                    HEADLESS_RENDERING_ENGINE);
+        }
+        final var wallNanos = new long[repeat];
+        final var threads = new Thread[repeat];
+        for (int i = 0; i < repeat; i++) {
+            final var index = i;
+            threads[i] = new Thread(() -> {
+                final var start = System.nanoTime();
+                games[index].run();
+                wallNanos[index] = System.nanoTime() - start;
+            });
+        }
+        for (final var thread : threads) {
+            thread.start();
+        }
+        for (final var thread : threads) {
+            thread.join();
+        }
+        final var results = new ArrayList<BenchmarkResult>(repeat);
+        for (int i = 0; i < repeat; i++) {
+            results.add(new BenchmarkResult(games[i].getProcessedActionCount(), games[i].getFailedActionCount(),
+                    games[i].isWin(), wallNanos[i]));
+        }
+        return results;
+    }
+
+    private static void printBenchmarkResult(@NotNull String name, @NotNull BenchmarkResult result) {
+        System.out.printf("%s: %d actions (%d failed) in %.3f ms, %.0f actions/s%s%n", name, result.actions(),
+                result.failedActions(), result.wallNanos() / 1e6, result.actionsPerSecond(), result.won() ? ", won" : "");
+    }
+
+    /**
+     * Runs a {@link ReplaySokobanGame.Mode#FREE_RACE} game and records the order in which its actions are processed.
+     *
+     * @param mapFile     map file
+     * @param fps         rendering fps
+     * @param logFile     file to write the order of actions to
+     * @param actionFiles action files
+     * @throws IOException if mapFile cannot be load or the log cannot be written
+     */
+    public static void recordGame(@NotNull String mapFile,
+                                  int fps,
+                                  @NotNull Path logFile,
+                                  @NotNull String[] actionFiles
+    ) throws IOException {
+        try (var recorder = new InterleavingLog.Writer(Files.newOutputStream(logFile))) {
+            SokobanGameFactory.createReplayGame(mapFile, ReplaySokobanGame.Mode.FREE_RACE, fps, actionFiles, recorder).run();
+        }
+    }
+
+    /**
+     * Runs games that process actions in a recorded order, each on its own thread.
+     *
+     * @param repeat      number of times to repeat the game in parallel
+     * @param mapFile     map file
+     * @param logFile     file written by {@link #recordGame(String, int, Path, String[])}
+     * @param actionFiles action files, in the same order as when recorded
+     * @throws IOException          if the files cannot be load
+     * @throws InterruptedException if the game is interrupted
+     */
+    public static void replayRecordedGame(int repeat,
+                                          @NotNull String mapFile,
+                                          @NotNull Path logFile,
+                                          @NotNull String[] actionFiles
+    ) throws IOException, InterruptedException {
+        final var threads = new Thread[repeat];
+        final var schedules = new InterleavingLog.Reader[repeat];
+        try {
+            for (int i = 0; i < repeat; i++) {
+                schedules[i] = new InterleavingLog.Reader(Files.newInputStream(logFile));
+                threads[i] = new Thread(SokobanGameFactory.createDeterministicReplayGame(mapFile, schedules[i], actionFiles));
+            }
+            for (final var thread : threads) {
+                thread.start();
+            }
+            for (final var thread : threads) {
+                thread.join();
+            }
+        } finally {
+            for (final var schedule : schedules) {
+                if (schedule != null) {
+                    schedule.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Solves a game map and writes one action file per player.
+     * The files are replayable in {@link ReplaySokobanGame.Mode#ROUND_ROBIN} mode when given in the returned order.
+     *
+     * @param mapFile   map file
+     * @param outputDir directory to write the action files to
+     * @param timeLimit time limit of the solver
+     * @return the written action files, or null if no solution is found within the time limit
+     * @throws IOException if mapFile cannot be load or the action files cannot be written
+     */
+    public static @Nullable List<Path> solveGame(@NotNull String mapFile,
+                                                 @NotNull String outputDir,
+                                                 @NotNull Duration timeLimit
+    ) throws IOException {
+        return solveGame(mapFile, outputDir, timeLimit, null);
+    }
+
+    /**
+     * Solves a game map and writes one action file per player, reusing the solutions of earlier runs.
+     * The files are replayable in {@link ReplaySokobanGame.Mode#ROUND_ROBIN} mode when given in the returned order.
+     *
+     * @param mapFile   map file
+     * @param outputDir directory to write the action files to
+     * @param timeLimit time limit of the solver
+     * @param cacheDir  directory of the {@link SolutionCache}, or null to always solve
+     * @return the written action files, or null if no solution is found within the time limit
+     * @throws IOException if mapFile cannot be load, or the cache or the action files cannot be written
+     */
+    public static @Nullable List<Path> solveGame(@NotNull String mapFile,
+                                                 @NotNull String outputDir,
+                                                 @NotNull Duration timeLimit,
+                                                 @Nullable Path cacheDir
+    ) throws IOException {
+        final var gameMap = SokobanGameFactory.loadGameMap(Path.of(mapFile));
+        final var solver = new CooperativeSolver(timeLimit);
+        final var solution = cacheDir == null
+                ? solver.solve(gameMap)
+                : new SolutionCache(cacheDir, SolutionCache.DEFAULT_CAPACITY).getOrSolve(gameMap, solver::solve);
+        if (solution == null) {
+            return null;
+        }
+        return solution.writeActionFiles(Path.of(outputDir));
+    }
+
+    /**
+     * Validates all map files in a directory tree in parallel and writes a report.
+     * The report is written as JSON if its name ends with {@code .json}, and as CSV otherwise.
+     *
+     * @param mapDir     directory tree of map files
+     * @param reportFile file to write the report to
+     * @param timeLimit  time limit of the winnability check of each map, or null to skip the check
+     * @return the totals of the run
+     * @throws IOException          if the maps cannot be listed or the report cannot be written
+     * @throws InterruptedException if the validation is interrupted
+     */
+    public static @NotNull CorpusValidator.Summary validateMaps(@NotNull String mapDir,
+                                                               @NotNull String reportFile,
+                                                               @Nullable Duration timeLimit
+    ) throws IOException, InterruptedException {
+        final var report = Path.of(reportFile);
+        final var pool = new ForkJoinPool();
+        try (var writer = new ValidationReport(Files.newBufferedWriter(report), ValidationReport.Format.of(report))) {
+            return new CorpusValidator(pool, timeLimit).validate(Path.of(mapDir), writer);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Renders the game state after the given number of actions of a {@link ReplaySokobanGame.Mode#ROUND_ROBIN} replay.
+     * The keyframes of the replay are built on the first run and saved next to the first action file.
+     *
+     * @param mapFile     map file
+     * @param action      number of actions to replay
+     * @param actionFiles text action files
+     * @throws IOException if the files cannot be read, or the keyframes cannot be written
+     */
+    public static void seekReplay(@NotNull String mapFile, long action, @NotNull List<Path> actionFiles) throws IOException {
+        final var gameMap = SokobanGameFactory.loadGameMap(Path.of(mapFile));
+        try (var replay = new SeekableReplay(gameMap, actionFiles, SeekableReplay.DEFAULT_INTERVAL)) {
+            if (!replay.load()) {
+                replay.index();
+                replay.save();
+            }
+            final var position = replay.seek(action);
+            final var renderingEngine = new TerminalRenderingEngine(System.out);
+            renderingEngine.message(String.format("Action %d of %d", position, replay.getActionCount()));
+            renderingEngine.render(replay.getState());
+        }
+    }
+
+    /**
+     * Plays back frames recorded with {@link FrameRecording} to the standard output.
+     *
+     * @param frameFile frame recording, optionally compressed with gzip
+     * @param speed     how many times faster than recorded to play
+     * @param mode      how frames are written
+     * @throws IOException          if the recording cannot be read
+     * @throws InterruptedException if the playback is interrupted
+     */
+    public static void playFrames(@NotNull Path frameFile, double speed, @NotNull TerminalRenderingEngine.Mode mode)
+            throws IOException, InterruptedException {
+        System.out.flush();
+        try (var player = new FrameRecording.Player(Files.newInputStream(frameFile))) {
+            player.play(new FileOutputStream(FileDescriptor.out).getChannel(), mode, speed);
+        }
+    }
+
+    /**
+     * Minimises an action file, or all action files in a directory tree in parallel.
+     *
+     * @param mapFile map file of the action files
+     * @param input   action file, or directory tree of action files
+     * @param output  file, or directory tree, to write the minimised action files to
+     * @return the totals of the run
+     * @throws IOException          if the files cannot be read or written
+     * @throws InterruptedException if the minimisation is interrupted
+     */
+    public static @NotNull ActionMinimizer.Summary minimizeActions(@NotNull String mapFile,
+                                                                   @NotNull String input,
+                                                                   @NotNull String output
+    ) throws IOException, InterruptedException {
+        final var gameMap = SokobanGameFactory.loadGameMap(Path.of(mapFile));
+        final var pool = new ForkJoinPool();
+        try {
+            final var minimizer = new ActionMinimizer(pool);
+            if (Files.isDirectory(Path.of(input))) {
+                return minimizer.minimizeAll(gameMap, Path.of(input), Path.of(output));
+            }
+            final var start = System.nanoTime();
+            final var result = minimizer.minimize(gameMap, Path.of(input), Path.of(output));
+            if (result.error() != null) {
+                throw new IOException(result.error());
+            }
+            return new ActionMinimizer.Summary(1, 0, result.originalActions(), result.minimizedActions(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            pool.shutdown();
         }
     }
 }
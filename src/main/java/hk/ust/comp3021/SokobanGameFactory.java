@@ -2,32 +2,58 @@ package hk.ust.comp3021;
 
 import hk.ust.comp3021.game.GameMap;
 import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.InputEngine;
+import hk.ust.comp3021.game.RenderingEngine;
 import hk.ust.comp3021.game.SokobanGame;
+import hk.ust.comp3021.replay.ActionLog;
+import hk.ust.comp3021.replay.DeterministicReplaySokobanGame;
+import hk.ust.comp3021.replay.InterleavingLog;
+import hk.ust.comp3021.replay.MappedInputEngine;
+import hk.ust.comp3021.replay.PrefetchingInputEngine;
 import hk.ust.comp3021.replay.ReplaySokobanGame;
 import hk.ust.comp3021.replay.StreamInputEngine;
 import hk.ust.comp3021.replay.TerminalRenderingEngine;
+import hk.ust.comp3021.solver.PlannerInputEngine;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Factory for creating Sokoban games
  */
 public class SokobanGameFactory {
 
+    /**
+     * Prefix of an action file argument that plays the player with the given id automatically,
+     * e.g. {@code planner:0}.
+     */
+    public static final String PLANNER_PREFIX = "planner:";
+
+    /**
+     * Extension of gzip-compressed map and action files, which are decompressed while being read.
+     */
+    public static final String GZIP_EXTENSION = ".gz";
+
+    private static final int GZIP_BUFFER_SIZE = 256 * 1024;
+
     /**
      * Create a Sokoban game.
      *
      * @param mapFile     Map file.
      * @param mode        Mode of the game.
      * @param frameRate   Rendering frameRate.
-     * @param actionFiles Action files.
+     * @param actionFiles Action files in the text or the binary {@link ActionLog} format, text action files
+     *                    compressed with gzip and named with {@link #GZIP_EXTENSION}, or {@link #PLANNER_PREFIX}
+     *                    followed by a player id to play that player with a {@link PlannerInputEngine}.
      * @return The Sokoban game.
      * @throws IOException if mapFile cannot be load
      */
@@ -35,33 +61,159 @@ public class SokobanGameFactory {
                                                         @NotNull ReplaySokobanGame.Mode mode,
                                                         int frameRate,
                                                         @NotNull String[] actionFiles
+    ) throws IOException {
+        return createReplayGame(mapFile, mode, frameRate, actionFiles, null);
+    }
+
+    /**
+     * Create a Sokoban game that records the order in which it processes actions.
+     *
+     * @param mapFile     Map file.
+     * @param mode        Mode of the game.
+     * @param frameRate   Rendering frameRate.
+     * @param actionFiles Action files, as in {@link #createReplayGame(String, ReplaySokobanGame.Mode, int, String[])}.
+     * @param recorder    The recorder of the interleaving of actions, or null to not record.
+     * @return The Sokoban game.
+     * @throws IOException if mapFile cannot be load
+     */
+    public static @NotNull SokobanGame createReplayGame(@NotNull String mapFile,
+                                                        @NotNull ReplaySokobanGame.Mode mode,
+                                                        int frameRate,
+                                                        @NotNull String[] actionFiles,
+                                                        @Nullable InterleavingLog.Writer recorder
+    ) throws IOException {
+        return createReplayGame(mapFile, mode, frameRate, actionFiles, recorder, new TerminalRenderingEngine(System.out));
+    }
+
+    /**
+     * Create a Sokoban game that renders to the given rendering engine.
+     *
+     * @param mapFile         Map file.
+     * @param mode            Mode of the game.
+     * @param frameRate       Rendering frameRate.
+     * @param actionFiles     Action files, as in {@link #createReplayGame(String, ReplaySokobanGame.Mode, int, String[])}.
+     * @param recorder        The recorder of the interleaving of actions, or null to not record.
+     * @param renderingEngine The rendering engine.
+     * @return The Sokoban game.
+     * @throws IOException if mapFile cannot be load
+     */
+    public static @NotNull ReplaySokobanGame createReplayGame(@NotNull String mapFile,
+                                                              @NotNull ReplaySokobanGame.Mode mode,
+                                                              int frameRate,
+                                                              @NotNull String[] actionFiles,
+                                                              @Nullable InterleavingLog.Writer recorder,
+                                                              @NotNull RenderingEngine renderingEngine
     ) throws IOException {
         Path file = Path.of(mapFile);
         final var gameMap = loadGameMap(file);
-        final var inputEngines = Arrays.stream(actionFiles).map(f -> {
-            try {
-                return new StreamInputEngine(new FileInputStream(f));
-            } catch (FileNotFoundException e) {
-                throw new RuntimeException(e);
-            }
-        }).collect(Collectors.toList());
-        return new ReplaySokobanGame(
+        final var gameState = new GameState(gameMap);
+        final var game = new ReplaySokobanGame(
                 mode,
                 frameRate,
-                new GameState(gameMap),
-                inputEngines,
-                new TerminalRenderingEngine(System.out)
+                gameState,
+                createInputEngines(gameState, actionFiles),
+                renderingEngine
+        );
+        game.setInterleavingRecorder(recorder);
+        return game;
+    }
+
+    /**
+     * Create a Sokoban game that processes actions in a recorded order on the calling thread.
+     *
+     * @param mapFile     Map file.
+     * @param schedule    The recorded interleaving of actions.
+     * @param actionFiles Action files, in the same order as in the recorded game.
+     * @return The Sokoban game.
+     * @throws IOException if mapFile cannot be load
+     */
+    public static @NotNull SokobanGame createDeterministicReplayGame(@NotNull String mapFile,
+                                                                     @NotNull InterleavingLog.Reader schedule,
+                                                                     @NotNull String[] actionFiles
+    ) throws IOException {
+        final var gameState = new GameState(loadGameMap(Path.of(mapFile)));
+        return new DeterministicReplaySokobanGame(
+                gameState,
+                createInputEngines(gameState, actionFiles),
+                new TerminalRenderingEngine(System.out),
+                schedule
         );
     }
 
     /**
-     * @param mapFile The file containing the game map.
+     * @return The input engines of the action files. If one cannot be created, the ones created before it are closed,
+     * so that their read-ahead threads stop.
+     */
+    private static @NotNull List<InputEngine> createInputEngines(@NotNull GameState gameState,
+                                                                 @NotNull String[] actionFiles) {
+        final var engines = new ArrayList<InputEngine>(actionFiles.length);
+        try {
+            for (final var f : actionFiles) {
+                engines.add(createInputEngine(gameState, f));
+            }
+        } catch (RuntimeException e) {
+            for (final var engine : engines) {
+                try {
+                    engine.close();
+                } catch (RuntimeException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+            }
+            throw e;
+        }
+        return engines;
+    }
+
+    private static @NotNull InputEngine createInputEngine(@NotNull GameState gameState, @NotNull String f) {
+        if (f.startsWith(PLANNER_PREFIX)) {
+            return new PlannerInputEngine(gameState, Integer.parseInt(f.substring(PLANNER_PREFIX.length())));
+        }
+        try {
+            if (isCompressed(Path.of(f))) {
+                // Inflating happens on the read-ahead thread, overlapping with the game loop.
+                return new PrefetchingInputEngine(new StreamInputEngine(openCompressed(Path.of(f))));
+            }
+            if (ActionLog.isBinary(Path.of(f))) {
+                return new MappedInputEngine(Path.of(f));
+            }
+            // Read ahead so that slow files and pipes do not block the game loop.
+            return new PrefetchingInputEngine(new StreamInputEngine(new FileInputStream(f)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param mapFile The file containing the game map, compressed with gzip if named with {@link #GZIP_EXTENSION}.
      * @return The parsed game map.
      * @throws IOException When there is an issue loading the file.
      */
     public static @NotNull GameMap loadGameMap(@NotNull Path mapFile) throws IOException {
+        if (isCompressed(mapFile)) {
+            try (var stream = openCompressed(mapFile)) {
+                return GameMap.parse(new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
         final var fileContent = Files.readString(mapFile);
         return GameMap.parse(fileContent);
     }
 
+    private static boolean isCompressed(@NotNull Path file) {
+        final var name = file.getFileName();
+        return name != null && name.toString().endsWith(GZIP_EXTENSION);
+    }
+
+    /**
+     * Opens a gzip-compressed file, decompressing it in large chunks without writing to disk.
+     */
+    private static @NotNull InputStream openCompressed(@NotNull Path file) throws IOException {
+        final var stream = Files.newInputStream(file);
+        try {
+            return new GZIPInputStream(stream, GZIP_BUFFER_SIZE);
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
 }
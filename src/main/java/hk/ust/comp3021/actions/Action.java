@@ -1,12 +1,35 @@
 package hk.ust.comp3021.actions;
 
+import java.util.function.IntFunction;
+
 /**
  * An action performed by a player.
+ * <p>
+ * Actions are immutable, so the factory methods such as {@link Move.Left#of(int)} return one shared instance per
+ * player, and the results of an action are shared through {@link ActionResult#success(Action)} and
+ * {@link ActionResult#failed(Action, String)}.
  */
-public abstract sealed class Action permits InvalidInput, Move, Undo, Exit {
+public abstract sealed class Action permits InvalidInput, Move, Undo, Exit, Repeat, Wait {
+
+    /**
+     * Number of player ids with shared action instances, covering the players {@code A} to {@code Z} and the id -1.
+     */
+    static final int CACHED_INITIATORS = 27;
+
+    private static final ActionResult.Failed[] NO_FAILURES = new ActionResult.Failed[0];
 
     protected final int initiator;
 
+    /**
+     * The shared successful result of this action, created on first use.
+     */
+    ActionResult.Success success;
+
+    /**
+     * The shared failed results of this action, one per distinct reason, replaced on write.
+     */
+    volatile ActionResult.Failed[] failures = NO_FAILURES;
+
     /**
      * @return The id of the player who performed the action.
      */
@@ -19,4 +42,25 @@ public abstract sealed class Action permits InvalidInput, Move, Undo, Exit {
     }
 
     public abstract String toString();
+
+    /**
+     * @param cache       The shared instances, indexed by initiator plus one.
+     * @param initiator   The id of the player who performed the action.
+     * @param constructor The constructor of the action.
+     * @param <T>         The type of the action.
+     * @return The shared instance for the initiator, or a new instance if the initiator is not cached.
+     */
+    static <T extends Action> T cached(T[] cache, int initiator, IntFunction<T> constructor) {
+        final var index = initiator + 1;
+        if (index < 0 || index >= cache.length) {
+            return constructor.apply(initiator);
+        }
+        var action = cache[index];
+        if (action == null) {
+            // Racing threads may create duplicates; actions are immutable, so any of them can be shared.
+            action = constructor.apply(initiator);
+            cache[index] = action;
+        }
+        return action;
+    }
 }
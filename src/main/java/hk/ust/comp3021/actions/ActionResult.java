@@ -2,6 +2,8 @@ package hk.ust.comp3021.actions;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
+
 /**
  * The result of an action.
  */
@@ -23,6 +25,38 @@ public abstract sealed class ActionResult {
         return action;
     }
 
+    /**
+     * @param action The action.
+     * @return The shared successful result of the action.
+     */
+    public static @NotNull Success success(@NotNull Action action) {
+        var result = action.success;
+        if (result == null) {
+            result = new Success(action);
+            action.success = result;
+        }
+        return result;
+    }
+
+    /**
+     * @param action The action.
+     * @param reason The reason for the failure.
+     * @return The shared failed result of the action with the given reason.
+     */
+    public static @NotNull Failed failed(@NotNull Action action, @NotNull String reason) {
+        final var failures = action.failures;
+        for (final var failure : failures) {
+            if (failure.reason.equals(reason)) {
+                return failure;
+            }
+        }
+        final var result = new Failed(action, reason);
+        final var updated = Arrays.copyOf(failures, failures.length + 1);
+        updated[failures.length] = result;
+        action.failures = updated;
+        return result;
+    }
+
     /**
      * Denotes a successful result.
      */
@@ -5,6 +5,9 @@ package hk.ust.comp3021.actions;
  * Exit action instructs the game to exit.
  */
 public final class Exit extends Action {
+
+    private static final Exit[] CACHE = new Exit[CACHED_INITIATORS];
+
     /**
      * @param initiator The id of the player who performed the action.
      */
@@ -12,6 +15,14 @@ public final class Exit extends Action {
         super(initiator);
     }
 
+    /**
+     * @param initiator The id of the player who performed the action.
+     * @return The shared instance for the player.
+     */
+    public static Exit of(int initiator) {
+        return cached(CACHE, initiator, Exit::new);
+    }
+
     /**
      * Default constructor.
      */
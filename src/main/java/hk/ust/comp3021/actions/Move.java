@@ -26,6 +26,8 @@ public abstract sealed class Move extends Action permits Move.Down, Move.Left, M
      */
     public static final class Down extends Move {
 
+        private static final Down[] CACHE = new Down[CACHED_INITIATORS];
+
         /**
          * @param initiator The id of the player who give the invalid input.
          */
@@ -33,6 +35,13 @@ public abstract sealed class Move extends Action permits Move.Down, Move.Left, M
             super(initiator);
         }
 
+        /**
+         * @param initiator The id of the player who performed the action.
+         * @return The shared instance for the player.
+         */
+        public static Down of(int initiator) {
+            return cached(CACHE, initiator, Down::new);
+        }
 
         @Override
         public @NotNull Position nextPosition(@NotNull Position currentPosition) {
@@ -50,6 +59,9 @@ public abstract sealed class Move extends Action permits Move.Down, Move.Left, M
      * The action of moving left.
      */
     public static final class Left extends Move {
+
+        private static final Left[] CACHE = new Left[CACHED_INITIATORS];
+
         /**
          * @param initiator The id of the player who give the invalid input.
          */
@@ -57,6 +69,14 @@ public abstract sealed class Move extends Action permits Move.Down, Move.Left, M
             super(initiator);
         }
 
+        /**
+         * @param initiator The id of the player who performed the action.
+         * @return The shared instance for the player.
+         */
+        public static Left of(int initiator) {
+            return cached(CACHE, initiator, Left::new);
+        }
+
         @Override
         public @NotNull Position nextPosition(@NotNull Position currentPosition) {
             return Position.of(currentPosition.x() - 1, currentPosition.y());
@@ -72,6 +92,9 @@ public abstract sealed class Move extends Action permits Move.Down, Move.Left, M
      * The action of mocking right.
      */
     public static final class Right extends Move {
+
+        private static final Right[] CACHE = new Right[CACHED_INITIATORS];
+
         /**
          * @param initiator The id of the player who give the invalid input.
          */
@@ -79,6 +102,14 @@ public abstract sealed class Move extends Action permits Move.Down, Move.Left, M
             super(initiator);
         }
 
+        /**
+         * @param initiator The id of the player who performed the action.
+         * @return The shared instance for the player.
+         */
+        public static Right of(int initiator) {
+            return cached(CACHE, initiator, Right::new);
+        }
+
         @Override
         public @NotNull Position nextPosition(@NotNull Position currentPosition) {
             return Position.of(currentPosition.x() + 1, currentPosition.y());
@@ -94,6 +125,9 @@ public abstract sealed class Move extends Action permits Move.Down, Move.Left, M
      * The action of moving up.
      */
     public static final class Up extends Move {
+
+        private static final Up[] CACHE = new Up[CACHED_INITIATORS];
+
         /**
          * @param initiator The id of the player who give the invalid input.
          */
@@ -101,6 +135,14 @@ public abstract sealed class Move extends Action permits Move.Down, Move.Left, M
             super(initiator);
         }
 
+        /**
+         * @param initiator The id of the player who performed the action.
+         * @return The shared instance for the player.
+         */
+        public static Up of(int initiator) {
+            return cached(CACHE, initiator, Up::new);
+        }
+
         @Override
         public @NotNull Position nextPosition(@NotNull Position currentPosition) {
             return Position.of(currentPosition.x(), currentPosition.y() - 1);
@@ -0,0 +1,50 @@
+package hk.ust.comp3021.actions;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Denotes an action repeated for a number of times, e.g., {@code L25} in an action file.
+ * <p>
+ * The game performs the repetitions as one operation, which stops at the first repetition that fails.
+ */
+public final class Repeat extends Action {
+
+    private final Action action;
+
+    private final int count;
+
+    /**
+     * @param action The action to repeat, which must be a {@link Move} or an {@link Undo}.
+     * @param count  The number of times to perform the action, at least 1.
+     */
+    public Repeat(@NotNull Action action, int count) {
+        super(action.getInitiator());
+        if (!(action instanceof Move || action instanceof Undo)) {
+            throw new IllegalArgumentException("Only moves and undos can be repeated: " + action);
+        }
+        if (count < 1) {
+            throw new IllegalArgumentException("Invalid repeat count: " + count);
+        }
+        this.action = action;
+        this.count = count;
+    }
+
+    /**
+     * @return The repeated action.
+     */
+    public @NotNull Action getAction() {
+        return action;
+    }
+
+    /**
+     * @return The number of times to perform the action.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return action + " (x" + count + ")";
+    }
+}
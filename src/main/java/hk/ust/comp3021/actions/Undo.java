@@ -5,6 +5,9 @@ package hk.ust.comp3021.actions;
  * Denotes an undo action.
  */
 public final class Undo extends Action {
+
+    private static final Undo[] CACHE = new Undo[CACHED_INITIATORS];
+
     /**
      * @param initiator The id of the player who give the invalid input.
      */
@@ -12,6 +15,14 @@ public final class Undo extends Action {
         super(initiator);
     }
 
+    /**
+     * @param initiator The id of the player who performed the action.
+     * @return The shared instance for the player.
+     */
+    public static Undo of(int initiator) {
+        return cached(CACHE, initiator, Undo::new);
+    }
+
     /**
      * Default constructor.
      */
@@ -0,0 +1,29 @@
+package hk.ust.comp3021.actions;
+
+
+/**
+ * Wait action, returned by an input engine that has no action ready yet, such as a planner that is still planning,
+ * instead of blocking the game until it has one.
+ * It changes nothing; games skip it without counting it as a processed or failed action.
+ */
+public final class Wait extends Action {
+
+    private static final Wait[] CACHE = new Wait[CACHED_INITIATORS];
+
+    private Wait(int initiator) {
+        super(initiator);
+    }
+
+    /**
+     * @param initiator The id of the player who performed the action.
+     * @return The shared instance for the player.
+     */
+    public static Wait of(int initiator) {
+        return cached(CACHE, initiator, Wait::new);
+    }
+
+    @Override
+    public String toString() {
+        return "Wait";
+    }
+}
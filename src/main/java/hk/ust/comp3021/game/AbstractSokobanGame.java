@@ -8,7 +8,11 @@ import hk.ust.comp3021.entities.Wall;
 import hk.ust.comp3021.utils.ShouldNotReachException;
 import org.jetbrains.annotations.NotNull;
 
+import static hk.ust.comp3021.utils.StringResources.HIT_PLAYER_MESSAGE;
+import static hk.ust.comp3021.utils.StringResources.HIT_WALL_MESSAGE;
+import static hk.ust.comp3021.utils.StringResources.OTHERS_BOX_MESSAGE;
 import static hk.ust.comp3021.utils.StringResources.PLAYER_NOT_FOUND;
+import static hk.ust.comp3021.utils.StringResources.PUSH_FAILED_MESSAGE;
 import static hk.ust.comp3021.utils.StringResources.UNDO_QUOTA_RUN_OUT;
 
 /**
@@ -38,32 +42,55 @@ public abstract class AbstractSokobanGame implements SokobanGame {
      */
     protected ActionResult processAction(@NotNull Action action) {
         return switch (action) {
-            case InvalidInput i -> new ActionResult.Failed(action, i.getMessage());
+            case InvalidInput i -> ActionResult.failed(action, i.getMessage());
             case Undo ignored -> {
                 final var shouldUndo = this.state.getUndoQuota()
                     .map(it -> it > 0)
                     .orElse(true);
                 if (shouldUndo) {
                     this.state.undo();
-                    yield new ActionResult.Success(action);
+                    yield ActionResult.success(action);
                 } else {
-                    yield new ActionResult.Failed(action, UNDO_QUOTA_RUN_OUT);
+                    yield ActionResult.failed(action, UNDO_QUOTA_RUN_OUT);
                 }
             }
             case Exit ignored -> {
                 this.isExitSpecified = true;
-                yield new ActionResult.Success(action);
+                yield ActionResult.success(action);
             }
             case Move move -> {
                 final var currentPlayerPos = this.state.getPlayerPositionById(action.getInitiator());
                 if (currentPlayerPos == null) {
-                    yield new ActionResult.Failed(action, PLAYER_NOT_FOUND);
+                    yield ActionResult.failed(action, PLAYER_NOT_FOUND);
                 }
                 yield this.processOneStepMove(currentPlayerPos, move);
             }
+            case Repeat repeat -> this.processRepeat(repeat);
+            case Wait ignored -> ActionResult.success(action);
         };
     }
 
+    /**
+     * Performs a repeated action as one operation, stopping at the first failing repetition.
+     * Like the spelled-out actions, which the game stops taking once it is won, it also stops when the game is won.
+     *
+     * @param repeat The repeated action.
+     * @return A success if all repetitions succeed or the game is won, otherwise the first failure.
+     */
+    @NotNull
+    private ActionResult processRepeat(@NotNull Repeat repeat) {
+        for (int i = 0; i < repeat.getCount(); i++) {
+            final var result = this.processAction(repeat.getAction());
+            if (result instanceof ActionResult.Failed) {
+                return result;
+            }
+            if (this.state.isWin()) {
+                break;
+            }
+        }
+        return ActionResult.success(repeat);
+    }
+
     /**
      * @param playerPosition The position of the player.
      * @param move           One-step move. We assume every move has only one step.
@@ -76,22 +103,22 @@ public abstract class AbstractSokobanGame implements SokobanGame {
         return switch (nextEntity) {
             case Empty ignored -> {
                 this.state.move(playerPosition, nextPlayerPos); // move if next place is empty
-                yield new ActionResult.Success(move);
+                yield ActionResult.success(move);
             }
-            case Wall ignored -> new ActionResult.Failed(move, "You hit a wall.");
-            case Player ignored -> new ActionResult.Failed(move, "You hit another player.");
+            case Wall ignored -> ActionResult.failed(move, HIT_WALL_MESSAGE);
+            case Player ignored -> ActionResult.failed(move, HIT_PLAYER_MESSAGE);
             case Box box -> {
                 if (box.getPlayerId() != move.getInitiator()) {
-                    yield new ActionResult.Failed(move, "You cannot move other players' boxes.");
+                    yield ActionResult.failed(move, OTHERS_BOX_MESSAGE);
                 }
                 final var nextBoxPos = move.nextPosition(nextPlayerPos);
                 if (!(this.state.getEntity(nextBoxPos) instanceof Empty))
-                    yield new ActionResult.Failed(move, "Failed to push the box.");
+                    yield ActionResult.failed(move, PUSH_FAILED_MESSAGE);
                 this.state.move(nextPlayerPos, nextBoxPos);
                 this.state.move(playerPosition, nextPlayerPos);
                 // Game history checkpoint reached if any box is moved.
                 this.state.checkpoint();
-                yield new ActionResult.Success(move);
+                yield ActionResult.success(move);
             }
             case null -> throw new ShouldNotReachException();
         };
@@ -8,6 +8,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Unmodifiable;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -25,10 +28,36 @@ import java.util.stream.Collectors;
  */
 public class GameState {
 
-    private final Stack<Transition> history = new Stack<>();
+    /**
+     * The entity of all empty positions; empty entities carry no state.
+     */
+    private static final Empty EMPTY = new Empty();
+
+    /**
+     * The checkpoints that can be undone, most recent first, or null if there are none.
+     */
+    private @Nullable Checkpoint history;
 
     private final Map<Position, Entity> entities;
 
+    /**
+     * The current position of each player, indexed by player id.
+     */
+    private final Position[] playerPositions;
+
+    /**
+     * The current positions of all players and boxes, so that they can be found without scanning the board.
+     * Each player or box keeps its slot in the array as it moves.
+     */
+    private final Position[] movablePositions;
+
+    /**
+     * The slot in {@link #movablePositions} plus one of the player or box on each cell of the board, or 0.
+     */
+    private final int[] movableSlots;
+
+    private final GameMap map;
+
     private final int boardWidth;
 
     private final int boardHeight;
@@ -39,6 +68,11 @@ public class GameState {
 
     private Transition currentTransition = new Transition();
 
+    /**
+     * Number of modifications of this game state, see {@link #getVersion()}.
+     */
+    private long version;
+
     /**
      * Create a running game state from a game map.
      *
@@ -46,6 +80,7 @@ public class GameState {
      */
     public GameState(@NotNull GameMap map) {
         this.entities = new HashMap<>();
+        this.map = map;
         this.boardWidth = map.getMaxWidth();
         this.boardHeight = map.getMaxHeight();
 
@@ -57,6 +92,16 @@ public class GameState {
                     this.entities.put(pos, entity);
             }
         }
+        this.playerPositions = new Position[map.getPlayerIds().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1];
+        this.entities.forEach(this::updatePlayerPosition);
+        this.movableSlots = new int[boardWidth * boardHeight];
+        this.movablePositions = this.entities.entrySet().stream()
+                .filter(e -> e.getValue() instanceof Player || e.getValue() instanceof Box)
+                .map(Map.Entry::getKey)
+                .toArray(Position[]::new);
+        for (int i = 0; i < this.movablePositions.length; i++) {
+            this.movableSlots[indexOf(this.movablePositions[i])] = i + 1;
+        }
         this.destinations = map.getDestinations();
         undoQuota = map.getUndoLimit().orElse(-1);
     }
@@ -80,10 +125,7 @@ public class GameState {
      * @return the current position of the player.
      */
     public @Nullable Position getPlayerPositionById(int id) {
-        return this.entities.entrySet().stream()
-                .filter(e -> e.getValue() instanceof Player p && p.getId() == id)
-                .map(Map.Entry::getKey)
-                .findFirst().orElse(null);
+        return id >= 0 && id < this.playerPositions.length ? this.playerPositions[id] : null;
     }
 
     /**
@@ -108,6 +150,37 @@ public class GameState {
         return this.entities.get(position);
     }
 
+    /**
+     * Get current positions of all players and boxes in the game map.
+     *
+     * @return a read-only view of the positions, which changes as entities move.
+     */
+    public @NotNull @Unmodifiable List<Position> getMovablePositions() {
+        return Collections.unmodifiableList(Arrays.asList(this.movablePositions));
+    }
+
+    /**
+     * Get the modification version of this game state.
+     * The version increases whenever an entity moves, an undo is performed or a snapshot is restored,
+     * so two reads returning the same version observed the same positions and undo quota.
+     * Like all other methods, this should be called while holding the lock the game state is modified under.
+     *
+     * @return a number that never decreases.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Get the game map this game state was created from.
+     * Walls, destinations and the size of the board never change during a game, so they can be taken from the map.
+     *
+     * @return the game map, which must not be modified.
+     */
+    public @NotNull GameMap getGameMap() {
+        return this.map;
+    }
+
     /**
      * Get all box destination positions as a set in the game map.
      * This should be the same as that in {@link GameMap} class.
@@ -153,9 +226,13 @@ public class GameState {
      */
     public void move(@NotNull Position from, @NotNull Position to) {
         // move entity
-        final var entity = this.entities.remove(from);
-        this.entities.put(from, new Empty());
+        final var entity = this.entities.put(from, EMPTY);
         this.entities.put(to, entity);
+        updatePlayerPosition(to, entity);
+        final var slot = this.movableSlots[indexOf(from)];
+        this.movableSlots[indexOf(from)] = 0;
+        moveSlot(slot, to);
+        this.version++;
 
         // append to history
         this.currentTransition.add(from, to);
@@ -170,7 +247,7 @@ public class GameState {
      * Every undo actions reverts the game state to the last checkpoint.
      */
     public void checkpoint() {
-        this.history.push(this.currentTransition);
+        this.history = new Checkpoint(this.currentTransition, this.history);
         this.currentTransition = new Transition();
     }
 
@@ -182,14 +259,31 @@ public class GameState {
      * @param transition the transition to apply.
      */
     private void applyTransition(Transition transition) {
-        transition.moves.entrySet().stream()
-                .map(e -> {
-                    final var entity = this.entities.remove(e.getKey());
-                    this.entities.put(e.getKey(), new Empty());
-                    return Map.entry(e.getValue(), entity);
-                })
-                .toList()
-                .forEach(e -> this.entities.put(e.getKey(), e.getValue()));
+        final var moved = new Entity[transition.size];
+        final var slots = new int[transition.size];
+        for (int i = 0; i < transition.size; i++) {
+            moved[i] = this.entities.put(transition.from[i], EMPTY);
+            slots[i] = this.movableSlots[indexOf(transition.from[i])];
+            this.movableSlots[indexOf(transition.from[i])] = 0;
+        }
+        for (int i = 0; i < transition.size; i++) {
+            this.entities.put(transition.to[i], moved[i]);
+            updatePlayerPosition(transition.to[i], moved[i]);
+            moveSlot(slots[i], transition.to[i]);
+        }
+    }
+
+    private void updatePlayerPosition(Position position, @Nullable Entity entity) {
+        if (entity instanceof Player player) {
+            this.playerPositions[player.getId()] = position;
+        }
+    }
+
+    private void moveSlot(int slot, Position to) {
+        if (slot > 0) {
+            this.movablePositions[slot - 1] = to;
+            this.movableSlots[indexOf(to)] = slot;
+        }
     }
 
     /**
@@ -200,13 +294,314 @@ public class GameState {
      * revert to the initial game state.
      */
     public void undo() {
+        this.version++;
         final var undoTransition = this.currentTransition.reverse();
         this.currentTransition = new Transition();
         this.applyTransition(undoTransition);
-        if (!this.history.empty()) {
-            final var historyTransaction = this.history.pop().reverse();
+        if (this.history != null) {
+            final var historyTransaction = this.history.transition.reverse();
+            this.history = this.history.previous;
             this.applyTransition(historyTransaction);
-            this.undoQuota--;
+            // An unlimited quota (-1) stays unlimited.
+            if (this.undoQuota > 0) {
+                this.undoQuota--;
+            }
+        }
+    }
+
+    /**
+     * Captures the current positions of players and boxes, the undo quota and the part of the history that can
+     * still be undone.
+     * <p>
+     * Checkpoints are never modified once recorded, so the snapshot shares them with this game state instead of
+     * copying them; snapshots taken as the game goes share their common history, and keeping a snapshot every few
+     * actions uses memory in proportion to the length of the game, even if undo is unlimited.
+     *
+     * @return A snapshot that can be restored into any game state of the same map.
+     */
+    public @NotNull Snapshot snapshot() {
+        final var data = new ArrayList<Integer>();
+        data.add(this.undoQuota);
+        final var movables = new ArrayList<Integer>();
+        this.entities.forEach((position, entity) -> {
+            if (entity instanceof Player player) {
+                movables.add(indexOf(position));
+                movables.add(player.getId() << 1);
+            } else if (entity instanceof Box box) {
+                movables.add(indexOf(position));
+                movables.add(box.getPlayerId() << 1 | 1);
+            }
+        });
+        data.add(movables.size() / 2);
+        data.addAll(movables);
+        addTransition(data, this.currentTransition);
+        final var depth = this.history == null ? 0 : this.history.depth;
+        final var checkpoints = this.undoQuota < 0 ? depth : Math.min(this.undoQuota, depth);
+        return new Snapshot(this.boardWidth, this.boardHeight, data.stream().mapToInt(Integer::intValue).toArray(),
+                this.history, checkpoints);
+    }
+
+    /**
+     * Reverts this game state to a snapshot.
+     *
+     * @param snapshot A snapshot taken from a game state of the same map.
+     * @throws IllegalArgumentException If the snapshot does not fit the map of this game state.
+     */
+    public void restore(@NotNull Snapshot snapshot) {
+        if (snapshot.width != this.boardWidth || snapshot.height != this.boardHeight) {
+            throw new IllegalArgumentException("Snapshot of a different map");
+        }
+        final var data = snapshot.data;
+        var i = 0;
+        final var quota = data[i++];
+        final var movableCount = data[i++];
+        if (movableCount != this.movablePositions.length) {
+            throw new IllegalArgumentException("Snapshot of a different map");
+        }
+        final var movables = new Entity[movableCount];
+        final var positions = new Position[movableCount];
+        for (int k = 0; k < movableCount; k++) {
+            positions[k] = positionOf(data[i++]);
+            final var code = data[i++];
+            movables[k] = (code & 1) == 0 ? new Player(code >> 1) : new Box(code >> 1);
+        }
+        final var current = new Transition();
+        readTransition(data, i, current);
+
+        this.version++;
+        this.entities.replaceAll((position, entity) -> entity instanceof Player || entity instanceof Box ? EMPTY : entity);
+        Arrays.fill(this.playerPositions, null);
+        Arrays.fill(this.movableSlots, 0);
+        for (int k = 0; k < movableCount; k++) {
+            if (!(this.entities.get(positions[k]) instanceof Empty)) {
+                throw new IllegalArgumentException("Snapshot of a different map");
+            }
+            this.entities.put(positions[k], movables[k]);
+            updatePlayerPosition(positions[k], movables[k]);
+            moveSlot(k + 1, positions[k]);
+        }
+        this.undoQuota = quota;
+        this.currentTransition = current;
+        this.history = snapshot.history;
+    }
+
+    private int indexOf(Position position) {
+        return position.y() * this.boardWidth + position.x();
+    }
+
+    private Position positionOf(int index) {
+        if (index < 0 || index >= this.boardWidth * this.boardHeight) {
+            throw new IllegalArgumentException("Snapshot of a different map");
+        }
+        return Position.of(index % this.boardWidth, index / this.boardWidth);
+    }
+
+    private void addTransition(List<Integer> data, Transition transition) {
+        data.add(transition.size);
+        for (int k = 0; k < transition.size; k++) {
+            data.add(indexOf(transition.from[k]));
+            data.add(indexOf(transition.to[k]));
+        }
+    }
+
+    private void readTransition(int[] data, int offset, Transition transition) {
+        var i = offset;
+        final var size = data[i++];
+        for (int k = 0; k < size; k++) {
+            transition.append(positionOf(data[i++]), positionOf(data[i++]));
+        }
+    }
+
+    /**
+     * A compact, immutable copy of the changing part of a game state, taken by {@link #snapshot()}.
+     * Positions are stored as indices into the board; the checkpoints are shared with the game state.
+     */
+    public static final class Snapshot {
+        private final int width;
+
+        private final int height;
+
+        private final int[] data;
+
+        private final @Nullable Checkpoint history;
+
+        /**
+         * Number of checkpoints of the history that can be undone; older ones are not part of the snapshot.
+         */
+        private final int checkpoints;
+
+        private Snapshot(int width, int height, int[] data, @Nullable Checkpoint history, int checkpoints) {
+            this.width = width;
+            this.height = height;
+            this.data = data;
+            this.history = history;
+            this.checkpoints = checkpoints;
+        }
+
+        /**
+         * @param output The output to write the snapshot to.
+         * @throws IOException If the output fails.
+         */
+        public void write(@NotNull DataOutput output) throws IOException {
+            write(output, null);
+        }
+
+        /**
+         * Writes the snapshot, leaving out the checkpoints it shares with a snapshot written before it.
+         *
+         * @param output   The output to write the snapshot to.
+         * @param previous The snapshot written before to the same output, or null.
+         * @throws IOException If the output fails.
+         */
+        public void write(@NotNull DataOutput output, @Nullable Snapshot previous) throws IOException {
+            output.writeInt(width);
+            output.writeInt(height);
+            output.writeInt(data.length);
+            for (final var value : data) {
+                output.writeInt(value);
+            }
+            // The history is the one of the previous snapshot, without its top `dropped` checkpoints, followed by
+            // `added` checkpoints; or only `added` checkpoints if `dropped` is -1.
+            final var depth = depthOf(history);
+            var dropped = -1;
+            var added = checkpoints;
+            if (previous != null) {
+                final var common = commonAncestor(history, previous.history);
+                final var previousDropped = depthOf(previous.history) - depthOf(common);
+                final var newer = depth - depthOf(common);
+                // A reader of the previous snapshot only has the checkpoints it can undo.
+                if (newer < checkpoints && previousDropped + checkpoints - newer <= previous.checkpoints) {
+                    dropped = previousDropped;
+                    added = newer;
+                }
+            }
+            output.writeInt(checkpoints);
+            output.writeInt(dropped);
+            output.writeInt(added);
+            final var transitions = new Transition[added];
+            var node = history;
+            for (int k = added - 1; k >= 0; k--) {
+                transitions[k] = Objects.requireNonNull(node).transition;
+                node = node.previous;
+            }
+            for (final var transition : transitions) {
+                output.writeInt(transition.size);
+                for (int k = 0; k < transition.size; k++) {
+                    output.writeInt(transition.from[k].y() * width + transition.from[k].x());
+                    output.writeInt(transition.to[k].y() * width + transition.to[k].x());
+                }
+            }
+        }
+
+        /**
+         * @param input The input to read a snapshot written by {@link #write(DataOutput)} from.
+         * @return The snapshot.
+         * @throws IOException If the input fails or is malformed.
+         */
+        public static @NotNull Snapshot read(@NotNull DataInput input) throws IOException {
+            return read(input, null);
+        }
+
+        /**
+         * @param input    The input to read a snapshot written by {@link #write(DataOutput, Snapshot)} from.
+         * @param previous The snapshot read before it, which must be the one passed to the writer, or null.
+         * @return The snapshot.
+         * @throws IOException If the input fails or is malformed.
+         */
+        public static @NotNull Snapshot read(@NotNull DataInput input, @Nullable Snapshot previous) throws IOException {
+            final var width = input.readInt();
+            final var height = input.readInt();
+            final var length = input.readInt();
+            if (width < 0 || height < 0 || length < 0) {
+                throw new IOException("Malformed snapshot");
+            }
+            final var data = new int[length];
+            for (int i = 0; i < length; i++) {
+                data[i] = input.readInt();
+            }
+            final var checkpoints = input.readInt();
+            final var dropped = input.readInt();
+            final var added = input.readInt();
+            Checkpoint history = null;
+            if (dropped >= 0) {
+                if (previous == null || previous.width != width || previous.height != height
+                        || dropped > depthOf(previous.history)) {
+                    throw new IOException("Malformed snapshot");
+                }
+                history = previous.history;
+                for (int k = 0; k < dropped; k++) {
+                    history = Objects.requireNonNull(history).previous;
+                }
+            }
+            if (added < 0 || checkpoints < 0) {
+                throw new IOException("Malformed snapshot");
+            }
+            for (int k = 0; k < added; k++) {
+                final var size = input.readInt();
+                if (size < 0 || size > (long) width * height) {
+                    throw new IOException("Malformed snapshot");
+                }
+                final var transition = new Transition();
+                for (int m = 0; m < size; m++) {
+                    transition.append(readPosition(input, width, height), readPosition(input, width, height));
+                }
+                history = new Checkpoint(transition, history);
+            }
+            if (depthOf(history) < checkpoints) {
+                throw new IOException("Malformed snapshot");
+            }
+            return new Snapshot(width, height, data, history, checkpoints);
+        }
+
+        private static Position readPosition(DataInput input, int width, int height) throws IOException {
+            final var index = input.readInt();
+            if (index < 0 || index >= (long) width * height) {
+                throw new IOException("Malformed snapshot");
+            }
+            return Position.of(index % width, index / width);
+        }
+
+        private static int depthOf(@Nullable Checkpoint checkpoint) {
+            return checkpoint == null ? 0 : checkpoint.depth;
+        }
+
+        private static @Nullable Checkpoint commonAncestor(@Nullable Checkpoint first, @Nullable Checkpoint second) {
+            while (depthOf(first) > depthOf(second)) {
+                first = Objects.requireNonNull(first).previous;
+            }
+            while (depthOf(second) > depthOf(first)) {
+                second = Objects.requireNonNull(second).previous;
+            }
+            while (first != second) {
+                first = Objects.requireNonNull(first).previous;
+                second = Objects.requireNonNull(second).previous;
+            }
+            return first;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Snapshot snapshot)) return false;
+            if (width != snapshot.width || height != snapshot.height || checkpoints != snapshot.checkpoints
+                    || !Arrays.equals(data, snapshot.data)) {
+                return false;
+            }
+            var first = history;
+            var second = snapshot.history;
+            for (int k = 0; k < checkpoints && first != second; k++) {
+                if (!Objects.requireNonNull(first).transition.equals(Objects.requireNonNull(second).transition)) {
+                    return false;
+                }
+                first = first.previous;
+                second = second.previous;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(width, height, Arrays.hashCode(data));
         }
     }
 
@@ -230,35 +625,94 @@ public class GameState {
         return boardHeight;
     }
 
+    /**
+     * A checkpoint in the history, linked to the one before it.
+     * Checkpoints are immutable, so game states and snapshots share them.
+     */
+    private static final class Checkpoint {
+        private final Transition transition;
+
+        private final @Nullable Checkpoint previous;
+
+        /**
+         * Number of checkpoints up to and including this one.
+         */
+        private final int depth;
+
+        private Checkpoint(Transition transition, @Nullable Checkpoint previous) {
+            this.transition = transition;
+            this.previous = previous;
+            this.depth = previous == null ? 1 : previous.depth + 1;
+        }
+    }
+
+    /**
+     * The moves of entities since a checkpoint, as pairs of original and current positions.
+     * The number of moved entities is small, so the pairs are kept in arrays and searched linearly.
+     */
     private static class Transition {
-        private final Map<Position, Position> moves;
+        private static final int INITIAL_CAPACITY = 4;
+
+        private Position[] from;
+
+        private Position[] to;
+
+        private int size;
 
         private void add(Position from, Position to) {
-            final var key = this.moves.entrySet().stream()
-                    .filter(e -> e.getValue().equals(from))
-                    .map(Map.Entry::getKey)
-                    .findFirst().orElse(from);
-            this.moves.put(key, to);
+            for (int i = 0; i < this.size; i++) {
+                if (this.to[i].equals(from)) {
+                    this.to[i] = to;
+                    return;
+                }
+            }
+            append(from, to);
+        }
+
+        private void append(Position from, Position to) {
+            if (this.size == this.from.length) {
+                this.from = Arrays.copyOf(this.from, this.size * 2);
+                this.to = Arrays.copyOf(this.to, this.size * 2);
+            }
+            this.from[this.size] = from;
+            this.to[this.size] = to;
+            this.size++;
         }
 
-        private Transition(Map<Position, Position> moves) {
-            this.moves = moves;
+        private Transition(Position[] from, Position[] to, int size) {
+            this.from = from;
+            this.to = to;
+            this.size = size;
         }
 
         private Transition() {
-            this.moves = new HashMap<>();
+            this(new Position[INITIAL_CAPACITY], new Position[INITIAL_CAPACITY], 0);
         }
 
         private Transition reverse() {
-            final var moves = this.moves.entrySet().stream().collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey));
-            return new Transition(moves);
+            return new Transition(this.to.clone(), this.from.clone(), this.size);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Transition transition)) return false;
+            return size == transition.size
+                    && Arrays.equals(from, 0, size, transition.from, 0, size)
+                    && Arrays.equals(to, 0, size, transition.to, 0, size);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(Arrays.copyOf(from, size)) + Arrays.hashCode(Arrays.copyOf(to, size));
         }
 
         @Override
         public String toString() {
-            final var moves = this.moves.entrySet().stream()
-                    .map(e -> String.format("(%d,%d)->(%d,%d)", e.getKey().x(), e.getKey().y(), e.getValue().x(), e.getValue().y()))
-                    .toList();
+            final var moves = new ArrayList<String>();
+            for (int i = 0; i < this.size; i++) {
+                moves.add(String.format("(%d,%d)->(%d,%d)", from[i].x(), from[i].y(), to[i].x(), to[i].y()));
+            }
             return String.join(",", moves);
         }
     }
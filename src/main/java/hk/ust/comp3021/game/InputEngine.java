@@ -5,16 +5,47 @@ import org.jetbrains.annotations.NotNull;
 
 /**
  * An engine for getting inputs from players.
+ * <p>
+ * A game closes its input engines once it stops fetching actions from them.
  */
-public interface InputEngine {
+public interface InputEngine extends AutoCloseable {
 
     /**
      * Fetches an unprocessed action performed by the players.
      * <p>
-     * If the next action is not available yet, this method will block until it is.
+     * If the next action is not available yet, this method will block until it is, or return a
+     * {@link hk.ust.comp3021.actions.Wait} action if the engine must not hold up the game while it prepares one.
      *
      * @return the action to process.
      */
     @NotNull
     Action fetchAction();
+
+    /**
+     * Fetches several unprocessed actions at once, in the order they would be returned by {@link #fetchAction()}.
+     * <p>
+     * Implementations should block only for the first action, and stop after an {@link hk.ust.comp3021.actions.Exit}
+     * action so that the actions after it stay unfetched.
+     * The default implementation fetches a single action.
+     *
+     * @param max The maximum number of actions to fetch, at most the length of {@code out}.
+     * @param out The array to store the actions in, starting from index 0.
+     * @return The number of actions stored; 0 if the engine does not support batches, in which case
+     * {@link #fetchAction()} should be used instead.
+     */
+    default int fetchActions(int max, @NotNull Action[] out) {
+        if (max <= 0) {
+            return 0;
+        }
+        out[0] = fetchAction();
+        return 1;
+    }
+
+    /**
+     * Releases the resources held by the engine, such as the stream it reads from.
+     * The default implementation does nothing.
+     */
+    @Override
+    default void close() {
+    }
 }
@@ -12,14 +12,31 @@ import org.jetbrains.annotations.NotNull;
  */
 public record Position(int x, int y) {
 
+    /**
+     * Positions with both coordinates below this bound are shared instances.
+     */
+    private static final int CACHE_BOUND = 128;
+
+    private static final Position[] CACHE = new Position[CACHE_BOUND * CACHE_BOUND];
+
     /**
      * Creates a new position.
+     * Positions are immutable, so positions near the origin are shared instead of newly created.
      *
      * @param x The horizontal displacement.
      * @param y The vertical displacement.
-     * @return The newly created position.
+     * @return The position.
      */
     public static @NotNull Position of(int x, int y) {
-        return new Position(x, y);
+        if (x < 0 || y < 0 || x >= CACHE_BOUND || y >= CACHE_BOUND) {
+            return new Position(x, y);
+        }
+        final var index = y * CACHE_BOUND + x;
+        var position = CACHE[index];
+        if (position == null) {
+            position = new Position(x, y);
+            CACHE[index] = position;
+        }
+        return position;
     }
 }
@@ -0,0 +1,250 @@
+package hk.ust.comp3021.replay;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A decoder of action files working directly on the bytes of the file.
+ * <p>
+ * An action file starts with a line holding the player id, followed by one action per line.
+ * The first byte of each line is mapped to an opcode through a lookup table; lines not starting with an action
+ * character, including empty lines, are skipped.
+ * An action character may be followed by a repeat count from 1 to {@link #MAX_REPEAT}, e.g. {@code L25}; the rest of
+ * a line is ignored. A line with a count of 0 or above the maximum is decoded as {@link #INVALID} rather than adjusted,
+ * since any adjusted count would replay different moves than the file states; longer runs must be written as several
+ * lines.
+ * The input is read in large chunks into a buffer that is reused for the whole file.
+ * <p>
+ * Read errors are treated like the end of the input.
+ */
+public final class ActionDecoder {
+
+    /**
+     * Opcode of moving left, matching the direction index used by the solvers.
+     */
+    public static final int LEFT = 0;
+
+    /**
+     * Opcode of moving down.
+     */
+    public static final int DOWN = 1;
+
+    /**
+     * Opcode of moving up.
+     */
+    public static final int UP = 2;
+
+    /**
+     * Opcode of moving right.
+     */
+    public static final int RIGHT = 3;
+
+    /**
+     * Opcode of undoing.
+     */
+    public static final int UNDO = 4;
+
+    /**
+     * Opcode of exiting.
+     */
+    public static final int EXIT = 5;
+
+    /**
+     * Returned by {@link #next()} for a line with an invalid repeat count.
+     */
+    public static final int INVALID = 6;
+
+    /**
+     * Returned by {@link #next()} at the end of the input.
+     */
+    public static final int END = -1;
+
+    /**
+     * Upper bound of a repeat count.
+     */
+    public static final int MAX_REPEAT = 1_000_000;
+
+    private static final int NONE = -1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] OPCODES = new byte[256];
+
+    static {
+        Arrays.fill(OPCODES, (byte) NONE);
+        final var actions = "HJKLUE";
+        for (int opcode = 0; opcode < actions.length(); opcode++) {
+            OPCODES[actions.charAt(opcode)] = (byte) opcode;
+            OPCODES[Character.toLowerCase(actions.charAt(opcode))] = (byte) opcode;
+        }
+    }
+
+    private final InputStream stream;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int position = 0;
+
+    private int limit = 0;
+
+    private int repeat = 1;
+
+    /**
+     * Number of bytes read from the stream before the current buffer content.
+     */
+    private long bufferOffset = 0;
+
+    /**
+     * @param stream The stream of the action file.
+     */
+    public ActionDecoder(@NotNull InputStream stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * Reads the first line of the file.
+     *
+     * @return The player id.
+     * @throws NoSuchElementException If the input is empty.
+     * @throws NumberFormatException  If the line is not a number.
+     */
+    public int readPlayerId() {
+        final var line = new StringBuilder();
+        var b = read();
+        if (b < 0) {
+            throw new NoSuchElementException("No line found");
+        }
+        while (b >= 0 && b != '\n' && b != '\r') {
+            line.append((char) b);
+            b = read();
+        }
+        return Integer.parseInt(line.toString());
+    }
+
+    /**
+     * Decodes the next action.
+     *
+     * @return The opcode of the next action, {@link #INVALID} if its repeat count is invalid, or {@link #END} at the
+     * end of the input.
+     */
+    public int next() {
+        while (true) {
+            final var b = read();
+            if (b < 0) {
+                return END;
+            }
+            if (b == '\n' || b == '\r') {
+                continue;
+            }
+            final int opcode = OPCODES[b];
+            final var count = opcode == NONE ? 1 : readCount();
+            skipLine();
+            if (opcode == NONE) {
+                continue;
+            }
+            if (count < 1 || count > MAX_REPEAT) {
+                repeat = 1;
+                return INVALID;
+            }
+            repeat = count;
+            return opcode;
+        }
+    }
+
+    /**
+     * @return The repeat count following the action last returned by {@link #next()}, 1 if there is none or the count
+     * is invalid.
+     */
+    public int getRepeat() {
+        return repeat;
+    }
+
+    /**
+     * @return The number of bytes of the stream decoded so far; decoding a stream positioned at this offset continues
+     * with the next action.
+     */
+    public long getOffset() {
+        return bufferOffset + position;
+    }
+
+    /**
+     * @return True if more input can be decoded without blocking.
+     */
+    public boolean hasBufferedInput() {
+        if (position < limit) {
+            return true;
+        }
+        try {
+            return stream.available() > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param c A character.
+     * @return The opcode of the action denoted by the character, or -1 if it does not denote an action.
+     */
+    public static int opcodeOf(char c) {
+        return c < OPCODES.length ? OPCODES[c] : NONE;
+    }
+
+    /**
+     * Reads the digits right after an action character.
+     *
+     * @return The repeat count, 1 if there are no digits, or {@code MAX_REPEAT + 1} if it is larger than the maximum.
+     */
+    private int readCount() {
+        var count = 0;
+        var digits = 0;
+        while ((position < limit || fill()) && buffer[position] >= '0' && buffer[position] <= '9') {
+            count = Math.min(count * 10 + (buffer[position++] - '0'), MAX_REPEAT + 1);
+            digits++;
+        }
+        return digits == 0 ? 1 : count;
+    }
+
+    private void skipLine() {
+        while (true) {
+            for (int i = position; i < limit; i++) {
+                if (buffer[i] == '\n' || buffer[i] == '\r') {
+                    position = i;
+                    return;
+                }
+            }
+            position = limit;
+            if (!fill()) {
+                return;
+            }
+        }
+    }
+
+    private int read() {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * @return False if there is no more input.
+     */
+    private boolean fill() {
+        try {
+            final var count = stream.read(buffer, 0, buffer.length);
+            if (count <= 0) {
+                return false;
+            }
+            bufferOffset += limit;
+            position = 0;
+            limit = count;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
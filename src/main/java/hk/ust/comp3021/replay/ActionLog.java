@@ -0,0 +1,300 @@
+package hk.ust.comp3021.replay;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A compact binary format of action files, and conversions from and to the text format read by
+ * {@link StreamInputEngine}.
+ * <p>
+ * A binary action log consists of:
+ * <ol>
+ * <li>A header: the magic bytes {@code SKAL}, a version byte, the player id and the number of tokens,
+ * both as 4-byte big-endian integers.</li>
+ * <li>The tokens, 3 bits each, packed from the most significant bit of each byte.
+ * Tokens 0 to 5 are the opcodes of {@link ActionDecoder}; token {@link #REPEAT} states that the next action is
+ * repeated, with the count stored in the varint section.</li>
+ * <li>The varint section: one unsigned LEB128 varint per {@link #REPEAT} token, in order.</li>
+ * </ol>
+ * An action takes 3 bits instead of the 16 bits of a character and a line break, and runs take a few bytes.
+ */
+public final class ActionLog {
+
+    /**
+     * Token stating that the next action is repeated.
+     */
+    public static final int REPEAT = 6;
+
+    private static final byte[] MAGIC = {'S', 'K', 'A', 'L'};
+
+    private static final byte VERSION = 1;
+
+    private static final int HEADER_SIZE = MAGIC.length + 1 + 2 * Integer.BYTES;
+
+    private static final int TOKEN_BITS = 3;
+
+    private static final int TOKEN_MASK = (1 << TOKEN_BITS) - 1;
+
+    private static final char[] ACTION_CHARS = {'H', 'J', 'K', 'L', 'U', 'E'};
+
+    private ActionLog() {
+    }
+
+    /**
+     * A sequential reader of the tokens of a binary action log.
+     */
+    public static final class Reader {
+
+        private final ByteBuffer buffer;
+
+        private final int playerId;
+
+        private final int tokenCount;
+
+        private int tokenIndex = 0;
+
+        private int varintPosition;
+
+        private int repeat = 1;
+
+        /**
+         * @param buffer The content of a binary action log, from its current position.
+         * @throws IOException If the content is not a binary action log.
+         */
+        public Reader(@NotNull ByteBuffer buffer) throws IOException {
+            this.buffer = buffer.slice();
+            try {
+                final var magic = new byte[MAGIC.length];
+                this.buffer.get(magic);
+                if (!Arrays.equals(magic, MAGIC) || this.buffer.get() != VERSION) {
+                    throw new IOException("Not a binary action log");
+                }
+                this.playerId = this.buffer.getInt();
+                this.tokenCount = this.buffer.getInt();
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated binary action log", e);
+            }
+            this.varintPosition = HEADER_SIZE + (int) (((long) tokenCount * TOKEN_BITS + 7) / 8);
+            if (tokenCount < 0 || varintPosition > this.buffer.limit()) {
+                throw new IOException("Truncated binary action log");
+            }
+        }
+
+        /**
+         * @return The player id in the header.
+         */
+        public int getPlayerId() {
+            return playerId;
+        }
+
+        /**
+         * Reads the next action.
+         *
+         * @return The opcode of the next action, or {@link ActionDecoder#END} at the end of the log.
+         */
+        public int next() {
+            repeat = 1;
+            while (tokenIndex < tokenCount) {
+                var token = readToken();
+                if (token == REPEAT && tokenIndex < tokenCount) {
+                    repeat = readVarint();
+                    token = readToken();
+                }
+                if (token <= ActionDecoder.EXIT) {
+                    return token;
+                }
+                // Skip reserved tokens.
+                repeat = 1;
+            }
+            return ActionDecoder.END;
+        }
+
+        /**
+         * @return The repeat count of the action last returned by {@link #next()}.
+         */
+        public int getRepeat() {
+            return repeat;
+        }
+
+        private int readToken() {
+            final var bit = (long) tokenIndex++ * TOKEN_BITS;
+            final var index = HEADER_SIZE + (int) (bit >>> 3);
+            final var shift = (int) (bit & 7);
+            // A token spans at most two bytes.
+            var word = (buffer.get(index) & 0xFF) << 8;
+            if (index + 1 < buffer.limit()) {
+                word |= buffer.get(index + 1) & 0xFF;
+            }
+            return (word >>> (16 - TOKEN_BITS - shift)) & TOKEN_MASK;
+        }
+
+        private int readVarint() {
+            var value = 0;
+            for (int shift = 0; varintPosition < buffer.limit() && shift < Integer.SIZE; shift += 7) {
+                final var b = buffer.get(varintPosition++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            return Math.max(value, 1);
+        }
+    }
+
+    /**
+     * @param file A file.
+     * @return True if the file starts with the magic bytes of a binary action log.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isBinary(@NotNull Path file) throws IOException {
+        try (var stream = Files.newInputStream(file)) {
+            return Arrays.equals(stream.readNBytes(MAGIC.length), MAGIC);
+        }
+    }
+
+    /**
+     * Converts a text action file into a binary action log.
+     * <p>
+     * Repeat counts in the text are kept.
+     * If {@code mergeRuns} is set, consecutive identical moves and undos on separate lines are also merged into one
+     * repeated action of at most {@link ActionDecoder#MAX_REPEAT} repetitions; note that a repeated action stops at its
+     * first failure and takes a single turn in {@link ReplaySokobanGame.Mode#ROUND_ROBIN} mode, unlike separate actions.
+     *
+     * @param text      The text action file.
+     * @param binary    The stream to write the binary action log to.
+     * @param mergeRuns Whether to merge runs of identical actions.
+     * @throws IOException If the streams fail or a line has an invalid repeat count.
+     */
+    public static void toBinary(@NotNull InputStream text, @NotNull OutputStream binary, boolean mergeRuns)
+            throws IOException {
+        final var decoder = new ActionDecoder(text);
+        final var playerId = decoder.readPlayerId();
+        final var tokens = new TokenWriter();
+        final var varints = new ByteArrayOutputStream();
+        var pending = ActionDecoder.END;
+        var pendingRepeat = 0;
+        while (true) {
+            final var opcode = decoder.next();
+            if (opcode == ActionDecoder.INVALID) {
+                throw new IOException("Invalid repeat count before byte " + decoder.getOffset());
+            }
+            final var repeat = opcode == ActionDecoder.EXIT ? 1 : decoder.getRepeat();
+            if (mergeRuns && opcode == pending && opcode != ActionDecoder.END && opcode != ActionDecoder.EXIT
+                    && pendingRepeat + repeat <= ActionDecoder.MAX_REPEAT) {
+                pendingRepeat += repeat;
+                continue;
+            }
+            if (pending != ActionDecoder.END) {
+                if (pendingRepeat > 1) {
+                    tokens.write(REPEAT);
+                    writeVarint(varints, pendingRepeat);
+                }
+                tokens.write(pending);
+            }
+            if (opcode == ActionDecoder.END) {
+                break;
+            }
+            pending = opcode;
+            pendingRepeat = repeat;
+        }
+        final var output = new DataOutputStream(binary);
+        output.write(MAGIC);
+        output.writeByte(VERSION);
+        output.writeInt(playerId);
+        output.writeInt(tokens.count);
+        output.write(tokens.bytes.toByteArray());
+        if (tokens.bitCount > 0) {
+            output.writeByte(tokens.current << (8 - tokens.bitCount));
+        }
+        varints.writeTo(output);
+        output.flush();
+    }
+
+    /**
+     * Converts a binary action log into a text action file, writing repeated actions with their counts.
+     * Counts above {@link ActionDecoder#MAX_REPEAT} are written as several lines.
+     *
+     * @param binary The content of the binary action log.
+     * @param text   The writer to write the text action file to.
+     * @throws IOException If the log is malformed or the writer fails.
+     */
+    public static void toText(@NotNull ByteBuffer binary, @NotNull BufferedWriter text) throws IOException {
+        final var reader = new Reader(binary);
+        text.write(String.valueOf(reader.getPlayerId()));
+        text.newLine();
+        for (var opcode = reader.next(); opcode != ActionDecoder.END; opcode = reader.next()) {
+            for (var remaining = Math.max(reader.getRepeat(), 1); remaining > 0; remaining -= ActionDecoder.MAX_REPEAT) {
+                text.write(ACTION_CHARS[opcode]);
+                if (remaining > 1) {
+                    text.write(String.valueOf(Math.min(remaining, ActionDecoder.MAX_REPEAT)));
+                }
+                text.newLine();
+            }
+        }
+        text.flush();
+    }
+
+    /**
+     * Converts an action file between the text and the binary format, detecting the format of the input.
+     *
+     * @param input     The input file.
+     * @param output    The output file.
+     * @param mergeRuns Whether to merge runs of identical actions when converting to the binary format.
+     * @throws IOException If the files cannot be read or written.
+     */
+    public static void convert(@NotNull Path input, @NotNull Path output, boolean mergeRuns) throws IOException {
+        if (isBinary(input)) {
+            try (var writer = Files.newBufferedWriter(output)) {
+                toText(ByteBuffer.wrap(Files.readAllBytes(input)), writer);
+            }
+        } else {
+            try (var in = Files.newInputStream(input); var out = Files.newOutputStream(output)) {
+                toBinary(in, out, mergeRuns);
+            }
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        var remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            out.write((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.write(remaining);
+    }
+
+    /**
+     * Packs tokens into bytes.
+     */
+    private static final class TokenWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private int current = 0;
+
+        private int bitCount = 0;
+
+        private int count = 0;
+
+        private void write(int token) {
+            current = (current << TOKEN_BITS) | token;
+            bitCount += TOKEN_BITS;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                bytes.write(current >>> bitCount);
+                current &= (1 << bitCount) - 1;
+            }
+            count++;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.RenderingEngine;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A rendering engine that formats and writes frames on background threads, so that rendering holds the lock of the
+ * game state only while the players and boxes are captured.
+ * <p>
+ * Rendering is a pipeline of three stages connected by bounded queues:
+ * {@link #render(GameState)} captures a {@link TerminalRenderingEngine.Frame} on the calling thread,
+ * a formatting thread turns frames and messages into bytes with a {@link TerminalRenderingEngine},
+ * and an output thread writes the bytes to the channel.
+ * <p>
+ * When frames are captured faster than they are formatted and written, the oldest frame waiting to be formatted is
+ * dropped. Messages stay in order with the frames around them, and are only dropped when the output stalls for so long
+ * that {@link #MAX_PENDING_ITEMS} frames and messages are waiting, since rendering must never block the game while it
+ * holds the lock of the game state.
+ * Since {@link TerminalRenderingEngine.Mode#DIFFERENTIAL} frames are computed against the last formatted frame,
+ * dropping frames keeps the terminal consistent.
+ */
+public class AsyncRenderingEngine implements RenderingEngine, AutoCloseable {
+
+    /**
+     * Default number of captured frames waiting to be formatted before the oldest is dropped.
+     */
+    public static final int DEFAULT_MAX_PENDING_FRAMES = 2;
+
+    /**
+     * Number of frames and messages waiting to be formatted before further messages are dropped.
+     */
+    private static final int MAX_PENDING_ITEMS = 1024;
+
+    /**
+     * Number of formatted outputs waiting to be written before formatting blocks.
+     */
+    private static final int MAX_PENDING_WRITES = 4;
+
+    private static final Object END = new Object();
+
+    // Frames and messages waiting to be formatted
+    private final LinkedBlockingDeque<Object> pending = new LinkedBlockingDeque<>(MAX_PENDING_ITEMS);
+
+    private final AtomicInteger pendingFrames = new AtomicInteger();
+
+    // Frames waiting to be formatted, oldest first, so that the oldest is found without scanning the messages
+    private final ConcurrentLinkedQueue<TerminalRenderingEngine.Frame> pendingFrameOrder = new ConcurrentLinkedQueue<>();
+
+    private final int maxPendingFrames;
+
+    private final LongAdder droppedFrames = new LongAdder();
+
+    private final LongAdder droppedMessages = new LongAdder();
+
+    private final TerminalRenderingEngine formatter;
+
+    private final OutputStage output;
+
+    private final Thread formattingThread;
+
+    private volatile @Nullable RuntimeException failure;
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param channel The channel to write the output to.
+     * @param mode    How frames are written.
+     */
+    public AsyncRenderingEngine(@NotNull WritableByteChannel channel, @NotNull TerminalRenderingEngine.Mode mode) {
+        this(channel, mode, DEFAULT_MAX_PENDING_FRAMES);
+    }
+
+    /**
+     * @param channel          The channel to write the output to.
+     * @param mode             How frames are written.
+     * @param maxPendingFrames Number of captured frames waiting to be formatted before the oldest is dropped.
+     */
+    public AsyncRenderingEngine(@NotNull WritableByteChannel channel,
+                                @NotNull TerminalRenderingEngine.Mode mode,
+                                int maxPendingFrames) {
+        if (maxPendingFrames <= 0) {
+            throw new IllegalArgumentException("maxPendingFrames must be positive");
+        }
+        this.maxPendingFrames = maxPendingFrames;
+        this.output = new OutputStage(channel);
+        this.formatter = new TerminalRenderingEngine(output, mode);
+        this.formattingThread = new Thread(this::format, "render-format");
+        this.formattingThread.setDaemon(true);
+        this.formattingThread.start();
+    }
+
+    /**
+     * Captures the players and boxes of the game state, to be formatted and written later.
+     *
+     * @param state The current game state.
+     */
+    @Override
+    public void render(@NotNull GameState state) {
+        if (closed || failure != null) {
+            return;
+        }
+        final var frame = TerminalRenderingEngine.Frame.of(state);
+        if (pendingFrames.incrementAndGet() > maxPendingFrames) {
+            for (var oldest = pendingFrameOrder.poll(); oldest != null; oldest = pendingFrameOrder.poll()) {
+                // The formatting thread may have taken it in the meantime.
+                if (pending.removeFirstOccurrence(oldest)) {
+                    pendingFrames.decrementAndGet();
+                    droppedFrames.increment();
+                    break;
+                }
+            }
+        }
+        pendingFrameOrder.add(frame);
+        if (!pending.offer(frame)) {
+            // Only messages fill the queue; the frame is dropped as the oldest would be.
+            pendingFrameOrder.remove(frame);
+            pendingFrames.decrementAndGet();
+            droppedFrames.increment();
+        }
+    }
+
+    @Override
+    public void message(@NotNull String content) {
+        if (closed || failure != null) {
+            return;
+        }
+        if (!pending.offer(content)) {
+            droppedMessages.increment();
+        }
+    }
+
+    /**
+     * Formats only a window of the map, from the next frame formatted on.
+     *
+     * @param viewport The window to render, or null to render the whole map.
+     */
+    public void setViewport(@Nullable TerminalRenderingEngine.Viewport viewport) {
+        formatter.setViewport(viewport);
+    }
+
+    /**
+     * @return The number of frames dropped because formatting or writing fell behind.
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.sum();
+    }
+
+    /**
+     * @return The number of messages dropped because the output stalled.
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.sum();
+    }
+
+    /**
+     * Formats and writes everything rendered so far, then stops the background threads.
+     * The channel is not closed.
+     *
+     * @throws UncheckedIOException If the output could not be written.
+     * @throws RuntimeException     If formatting failed.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (formattingThread.isAlive()) {
+                pending.put(END);
+            }
+            formattingThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        final var error = failure;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void format() {
+        try {
+            for (var item = pending.take(); item != END; item = pending.take()) {
+                if (item instanceof TerminalRenderingEngine.Frame frame) {
+                    pendingFrameOrder.remove(frame);
+                    pendingFrames.decrementAndGet();
+                    formatter.render(frame);
+                } else {
+                    formatter.message((String) item);
+                }
+                // Held back messages are written with the next frame while busy, and right away while idle.
+                if (pending.isEmpty()) {
+                    formatter.flush();
+                }
+            }
+            formatter.close();
+        } catch (InterruptedException e) {
+            failure = new IllegalStateException("Rendering interrupted", e);
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            pending.clear();
+            final var outputFailure = output.finish();
+            if (failure == null && outputFailure != null) {
+                failure = new UncheckedIOException(outputFailure);
+            }
+        }
+    }
+
+    /**
+     * A channel that hands copies of the written bytes to an output thread, which writes them to another channel.
+     * Writing blocks while {@link #MAX_PENDING_WRITES} outputs are waiting.
+     */
+    private static final class OutputStage implements WritableByteChannel {
+        private static final ByteBuffer END_OF_OUTPUT = ByteBuffer.allocate(0);
+
+        private final WritableByteChannel channel;
+
+        private final BlockingQueue<ByteBuffer> writes = new ArrayBlockingQueue<>(MAX_PENDING_WRITES);
+
+        // Buffers already written, reused for later outputs
+        private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(MAX_PENDING_WRITES + 1);
+
+        private final Thread thread;
+
+        private volatile @Nullable IOException failure;
+
+        private OutputStage(@NotNull WritableByteChannel channel) {
+            this.channel = channel;
+            this.thread = new Thread(this::run, "render-output");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        @Override
+        public int write(@NotNull ByteBuffer source) throws IOException {
+            final var error = failure;
+            if (error != null) {
+                throw error;
+            }
+            final var size = source.remaining();
+            var buffer = free.poll();
+            if (buffer == null || buffer.capacity() < size) {
+                buffer = ByteBuffer.allocateDirect(Math.max(size, buffer == null ? 0 : buffer.capacity() * 2));
+            }
+            buffer.clear();
+            buffer.put(source);
+            buffer.flip();
+            try {
+                writes.put(buffer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            return size;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /**
+         * Waits for all outputs to be written, and stops the output thread.
+         *
+         * @return The failure of writing to the channel, or null.
+         */
+        private @Nullable IOException finish() {
+            try {
+                writes.put(END_OF_OUTPUT);
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return failure;
+        }
+
+        private void run() {
+            try {
+                for (var buffer = writes.take(); buffer != END_OF_OUTPUT; buffer = writes.take()) {
+                    try {
+                        if (failure == null) {
+                            while (buffer.hasRemaining()) {
+                                channel.write(buffer);
+                            }
+                        }
+                    } catch (IOException e) {
+                        // Keep taking outputs so that formatting does not block; they are dropped.
+                        failure = e;
+                    }
+                    free.offer(buffer);
+                }
+            } catch (InterruptedException e) {
+                failure = new InterruptedIOException();
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.actions.ActionResult;
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.Wait;
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.InputEngine;
+import hk.ust.comp3021.game.RenderingEngine;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import static hk.ust.comp3021.utils.StringResources.*;
+
+/**
+ * A game that processes actions in the order recorded by {@link ReplaySokobanGame#setInterleavingRecorder}.
+ * <p>
+ * Actions are fetched and processed on the calling thread, one after another, without pacing them to a frame rate,
+ * so a {@link Mode#FREE_RACE} run can be reproduced exactly and timed without contention between threads.
+ * The game state is rendered before the first and after the last action.
+ */
+public class DeterministicReplaySokobanGame extends ReplaySokobanGame {
+
+    private final InterleavingLog.Reader schedule;
+
+    /**
+     * @param gameState       The game state.
+     * @param inputEngines    The input engines, in the same order as in the recorded game.
+     * @param renderingEngine The rendering engine.
+     * @param schedule        The recorded interleaving.
+     */
+    public DeterministicReplaySokobanGame(
+            @NotNull GameState gameState,
+            @NotNull List<? extends InputEngine> inputEngines,
+            @NotNull RenderingEngine renderingEngine,
+            @NotNull InterleavingLog.Reader schedule
+    ) {
+        super(Mode.FREE_RACE, DEFAULT_FRAME_RATE, gameState, inputEngines, renderingEngine);
+        this.schedule = schedule;
+    }
+
+    /**
+     * Processes the recorded actions, then closes the input engines.
+     *
+     * @throws UncheckedIOException  If the interleaving log cannot be read.
+     * @throws IllegalStateException If the interleaving log does not match the input engines.
+     */
+    @Override
+    public void run() {
+        try {
+            replay();
+        } finally {
+            closeInputEngines();
+        }
+    }
+
+    private void replay() {
+        final var finished = new boolean[inputEngines.size()];
+        renderingEngine.message(GAME_READY_MESSAGE);
+        render();
+        try {
+            for (var index = schedule.next(); index != InterleavingLog.END; index = schedule.next()) {
+                if (index >= finished.length || finished[index]) {
+                    throw new IllegalStateException("Interleaving log does not match the input engines");
+                }
+                // The log only records processed actions, so wait for the engine to have one ready.
+                var action = inputEngines.get(index).fetchAction();
+                for (int idle = 0; action instanceof Wait; action = inputEngines.get(index).fetchAction()) {
+                    idle = FramePacer.backOff(idle);
+                }
+                final var result = processAction(action);
+                if (result instanceof ActionResult.Failed failed) {
+                    renderingEngine.message(failed.getReason());
+                }
+                if (action instanceof Exit) {
+                    finished[index] = true;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        render();
+        renderingEngine.message(GAME_EXIT_MESSAGE);
+        if (state.isWin()) {
+            renderingEngine.message(WIN_MESSAGE);
+        }
+    }
+
+    private void render() {
+        synchronized (state) {
+            renderingEngine.message(state.getUndoQuota()
+                    .map(it -> String.format(UNDO_QUOTA_TEMPLATE, it))
+                    .orElse(UNDO_QUOTA_UNLIMITED));
+            renderingEngine.render(state);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package hk.ust.comp3021.replay;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Text encoded as UTF-8 into a reusable direct buffer, to be written to a channel with as few calls as possible.
+ * ASCII characters, which make up the frames of the game, are copied without going through a {@link CharsetEncoder}.
+ * The buffer grows to fit everything appended between two writes.
+ */
+final class FrameBuffer {
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    /**
+     * Maximum number of bytes a UTF-8 encoder writes for a single char.
+     */
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    private static final int ASCII_LIMIT = 0x80;
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final byte[] digits = new byte[String.valueOf(Integer.MIN_VALUE).length()];
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+
+    /**
+     * @return The number of bytes appended since the last write.
+     */
+    int size() {
+        return buffer.position();
+    }
+
+    @NotNull FrameBuffer append(char c) {
+        if (c < ASCII_LIMIT) {
+            ensureRemaining(1);
+            buffer.put((byte) c);
+            return this;
+        }
+        return encode(CharBuffer.wrap(new char[]{c}));
+    }
+
+    @NotNull FrameBuffer append(char @NotNull [] chars, int offset, int length) {
+        ensureRemaining(length);
+        for (int i = offset; i < offset + length; i++) {
+            if (chars[i] >= ASCII_LIMIT) {
+                return encode(CharBuffer.wrap(chars, i, offset + length - i));
+            }
+            buffer.put((byte) chars[i]);
+        }
+        return this;
+    }
+
+    @NotNull FrameBuffer append(@NotNull CharSequence chars) {
+        ensureRemaining(chars.length());
+        for (int i = 0; i < chars.length(); i++) {
+            final var c = chars.charAt(i);
+            if (c >= ASCII_LIMIT) {
+                return encode(CharBuffer.wrap(chars, i, chars.length()));
+            }
+            buffer.put((byte) c);
+        }
+        return this;
+    }
+
+    /**
+     * Appends the decimal digits of a number without creating a string.
+     */
+    @NotNull FrameBuffer append(int number) {
+        if (number < 0) {
+            return append(String.valueOf(number));
+        }
+        var remaining = number;
+        var start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining > 0);
+        ensureRemaining(digits.length - start);
+        buffer.put(digits, start, digits.length - start);
+        return this;
+    }
+
+    /**
+     * Writes everything appended since the last write to the channel and empties the buffer.
+     *
+     * @param channel The channel to write to.
+     * @throws IOException If the channel cannot be written to. The buffer is emptied anyway.
+     */
+    void writeTo(@NotNull WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private @NotNull FrameBuffer encode(@NotNull CharBuffer chars) {
+        ensureRemaining(chars.remaining() * MAX_BYTES_PER_CHAR);
+        encoder.reset();
+        encoder.encode(chars, buffer, true);
+        encoder.flush(buffer);
+        return this;
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        final var grown = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
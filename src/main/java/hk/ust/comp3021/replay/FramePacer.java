@@ -0,0 +1,137 @@
+package hk.ust.comp3021.replay;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Paces frames at a fixed frame rate using {@link System#nanoTime()}, or another clock in nanoseconds.
+ * <p>
+ * Frame {@code n} is due {@code n / frameRate} seconds after the first frame, computed from that absolute start rather
+ * than by adding a rounded period to the previous frame, so the frame rate is exact on average and errors in waking up
+ * do not accumulate. A frame that starts more than a period late moves the schedule forward instead of rendering the
+ * missed frames in a burst.
+ * <p>
+ * Waiting parks the thread until shortly before the deadline and spins for the rest, since parking alone may oversleep
+ * by tens of microseconds. Threads waiting for a due frame back off from spinning to parking, so idle threads do not
+ * keep a core busy.
+ */
+final class FramePacer {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Time before a deadline at which waiting stops parking and spins instead.
+     */
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    /**
+     * Number of times {@link #backOff(int)} spins, and then yields, before parking.
+     */
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+
+    private static final long BACK_OFF_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final int frameRate;
+
+    private final LongSupplier clock;
+
+    // Start of the current schedule, and the number of frames started in it; used by the rendering thread only
+    private long anchorNanos;
+    private long frames = 0;
+
+    // When the next frame is due; the first frame is due right away
+    private volatile long nextDeadline;
+
+    /**
+     * @param frameRate Number of frames per second.
+     */
+    FramePacer(int frameRate) {
+        this(frameRate, System::nanoTime);
+    }
+
+    /**
+     * @param frameRate Number of frames per second.
+     * @param clock     The clock frames are paced by, in nanoseconds, like {@link System#nanoTime()}.
+     */
+    FramePacer(int frameRate, @NotNull LongSupplier clock) {
+        if (frameRate <= 0) {
+            throw new IllegalArgumentException("Invalid frame rate: " + frameRate);
+        }
+        this.frameRate = frameRate;
+        this.clock = clock;
+        this.nextDeadline = clock.getAsLong();
+    }
+
+    /**
+     * Marks the start of a frame and schedules the next one.
+     */
+    void startFrame() {
+        final var now = clock.getAsLong();
+        if (frames == 0) {
+            anchorNanos = now;
+        }
+        frames++;
+        var deadline = deadlineOf(frames);
+        if (deadline - now <= 0) {
+            // More than a period late: skip the missed frames, keeping the schedule.
+            frames = (now - anchorNanos) * frameRate / NANOS_PER_SECOND + 1;
+            deadline = deadlineOf(frames);
+        }
+        nextDeadline = deadline;
+    }
+
+    /**
+     * @return Whether the next frame is due, i.e. {@link #startFrame()} should be called.
+     */
+    boolean isFrameDue() {
+        return clock.getAsLong() - nextDeadline >= 0;
+    }
+
+    /**
+     * @return The time at which the next frame is due, on the clock of this pacer.
+     */
+    long getNextDeadline() {
+        return nextDeadline;
+    }
+
+    /**
+     * Waits until the next frame is due.
+     */
+    void awaitNextFrame() {
+        final var deadline = nextDeadline;
+        for (var remaining = deadline - clock.getAsLong(); remaining > 0; remaining = deadline - clock.getAsLong()) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(this, remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Waits a little while a condition another thread is about to change does not hold, first spinning, then yielding,
+     * and then parking for short periods.
+     *
+     * @param attempt Number of times the caller has backed off for the condition so far.
+     * @return The attempt to pass next time.
+     */
+    static int backOff(int attempt) {
+        if (attempt < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (attempt < YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(BACK_OFF_PARK_NANOS);
+            return attempt;
+        }
+        return attempt + 1;
+    }
+
+    private long deadlineOf(long frame) {
+        return anchorNanos + frame * NANOS_PER_SECOND / frameRate;
+    }
+}
@@ -0,0 +1,490 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.game.GameMap;
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.RenderingEngine;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A compact recording of the frames and messages rendered during a game, to be played back in the terminal later.
+ * <p>
+ * The recording consists of the magic bytes {@code SKFR}, a version byte, and a sequence of records.
+ * Every record starts with a type byte and the number of microseconds since the previous record:
+ * <ul>
+ *     <li>A keyframe holds the width and height of the map, and every character of the frame, where each row is
+ *     followed by a newline. It is written for the first frame of every map.</li>
+ *     <li>A delta holds the number of cells that changed since the previous frame, and for each of them the number of
+ *     cells skipped since the previous changed cell, and the new character.</li>
+ *     <li>A message holds the length of the UTF-8 encoded message, and its bytes.</li>
+ * </ul>
+ * All numbers and characters are unsigned LEB128 varints, so a frame in which a player pushes a box takes about
+ * a dozen bytes, however large the map is. The whole recording may be compressed with gzip.
+ */
+public final class FrameRecording {
+
+    private static final byte[] MAGIC = {'S', 'K', 'F', 'R'};
+
+    private static final byte VERSION = 1;
+
+    private static final int KEYFRAME = 0;
+
+    private static final int DELTA = 1;
+
+    private static final int MESSAGE = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Largest number of cells of a keyframe, newlines included, that a player accepts, so that a malformed header
+     * cannot make it allocate gigabytes.
+     */
+    private static final int MAX_FRAME_CELLS = 1 << 24;
+
+    private FrameRecording() {
+    }
+
+    /**
+     * A rendering engine that records frames and messages, optionally showing them on another rendering engine too.
+     * <p>
+     * Rendering only captures the players and boxes of the game state; frames are compared and written on a
+     * background thread. Rendering must never block the game while it holds the lock of the game state, so frames and
+     * messages are dropped and counted while the recording falls behind by {@link #MAX_PENDING_ITEMS} of them.
+     * Since deltas are computed against the last recorded frame, dropping frames keeps the recording consistent.
+     */
+    public static final class Recorder implements RenderingEngine, Closeable {
+
+        /**
+         * Number of frames and messages waiting to be written before further ones are dropped.
+         */
+        public static final int MAX_PENDING_ITEMS = 4096;
+
+        private static final Object END = new Object();
+
+        private final @Nullable RenderingEngine display;
+
+        private final OutputStream output;
+
+        private final BlockingQueue<Object> pending = new ArrayBlockingQueue<>(MAX_PENDING_ITEMS);
+
+        private final Thread thread;
+
+        private final long startNanos = System.nanoTime();
+
+        private final LongAdder droppedFrames = new LongAdder();
+
+        private final LongAdder droppedMessages = new LongAdder();
+
+        private volatile @Nullable IOException failure;
+
+        private volatile boolean closed = false;
+
+        // The fields below are used by the recording thread only.
+
+        private long previousMicros = 0;
+
+        // Map of the last keyframe
+        private @Nullable GameMap map;
+        private char @NotNull [] template = new char[0];
+        // The last recorded frame
+        private char @NotNull [] recorded = new char[0];
+        // The frame being recorded, which differs from the last recorded frame only in the candidate cells
+        private char @NotNull [] current = new char[0];
+        // Cells of the players and boxes of the last recorded frame
+        private int @NotNull [] dynamicCells = new int[0];
+        private int dynamicCellCount = 0;
+        private int @NotNull [] candidateCells = new int[0];
+
+        /**
+         * @param output   The stream to write the recording to. It is closed with the recorder.
+         * @param compress Whether to compress the recording with gzip.
+         * @param display  The rendering engine to show the frames and messages on as well, or null.
+         * @throws IOException If the stream fails.
+         */
+        public Recorder(@NotNull OutputStream output, boolean compress, @Nullable RenderingEngine display)
+                throws IOException {
+            this.output = new BufferedOutputStream(compress ? new GZIPOutputStream(output, BUFFER_SIZE) : output,
+                    BUFFER_SIZE);
+            this.output.write(MAGIC);
+            this.output.write(VERSION);
+            this.display = display;
+            this.thread = new Thread(this::record, "frame-recorder");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        /**
+         * Captures the players and boxes of the game state, to be recorded later.
+         * Failures of the recording are reported by {@link #close()}.
+         *
+         * @param state The current game state.
+         */
+        @Override
+        public void render(@NotNull GameState state) {
+            if (display != null) {
+                display.render(state);
+            }
+            if (!closed && failure == null
+                    && !pending.offer(new Entry(System.nanoTime(), TerminalRenderingEngine.Frame.of(state)))) {
+                droppedFrames.increment();
+            }
+        }
+
+        @Override
+        public void message(@NotNull String content) {
+            if (display != null) {
+                display.message(content);
+            }
+            if (!closed && failure == null && !pending.offer(new Entry(System.nanoTime(), content))) {
+                droppedMessages.increment();
+            }
+        }
+
+        /**
+         * @return The number of frames dropped because the recording fell behind.
+         */
+        public long getDroppedFrames() {
+            return droppedFrames.sum();
+        }
+
+        /**
+         * @return The number of messages dropped because the recording fell behind.
+         */
+        public long getDroppedMessages() {
+            return droppedMessages.sum();
+        }
+
+        /**
+         * Writes everything rendered so far and closes the stream.
+         * The display rendering engine is not closed.
+         *
+         * @throws IOException If writing the recording failed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                pending.put(END);
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            try {
+                output.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            final var error = failure;
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        private void record() {
+            try {
+                for (var item = pending.take(); item != END; item = pending.take()) {
+                    if (failure != null) {
+                        // Keep taking items so that rendering does not block; they are dropped.
+                        continue;
+                    }
+                    final var entry = (Entry) item;
+                    try {
+                        if (entry.item() instanceof TerminalRenderingEngine.Frame frame) {
+                            recordFrame(entry.nanos(), frame);
+                        } else {
+                            final var bytes = ((String) entry.item()).getBytes(StandardCharsets.UTF_8);
+                            writeHeader(MESSAGE, entry.nanos());
+                            writeVarint(output, bytes.length);
+                            output.write(bytes);
+                        }
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            } catch (InterruptedException e) {
+                failure = new InterruptedIOException();
+            }
+        }
+
+        private void recordFrame(long nanos, @NotNull TerminalRenderingEngine.Frame frame) throws IOException {
+            final var cells = frame.cells();
+            final var glyphs = frame.glyphs();
+            if (frame.map() != map) {
+                map = frame.map();
+                template = TerminalRenderingEngine.buildTemplate(frame.map(), frame.width(), frame.height());
+                recorded = template.clone();
+                for (int i = 0; i < cells.length; i++) {
+                    recorded[cells[i]] = glyphs[i];
+                }
+                current = recorded.clone();
+                dynamicCells = cells.clone();
+                dynamicCellCount = cells.length;
+                writeHeader(KEYFRAME, nanos);
+                writeVarint(output, frame.width());
+                writeVarint(output, frame.height());
+                for (final var c : recorded) {
+                    writeVarint(output, c);
+                }
+                return;
+            }
+
+            final var maxCandidates = dynamicCellCount + cells.length;
+            if (candidateCells.length < maxCandidates) {
+                candidateCells = new int[maxCandidates];
+            }
+            int candidateCount = 0;
+            for (int i = 0; i < dynamicCellCount; i++) {
+                current[dynamicCells[i]] = template[dynamicCells[i]];
+                candidateCells[candidateCount++] = dynamicCells[i];
+            }
+            if (dynamicCells.length < cells.length) {
+                dynamicCells = new int[cells.length];
+            }
+            for (int i = 0; i < cells.length; i++) {
+                current[cells[i]] = glyphs[i];
+                candidateCells[candidateCount++] = cells[i];
+                dynamicCells[i] = cells[i];
+            }
+            dynamicCellCount = cells.length;
+
+            // Keep the changed cells at the front of the candidates, in order and without duplicates.
+            Arrays.sort(candidateCells, 0, candidateCount);
+            int changedCount = 0;
+            for (int i = 0; i < candidateCount; i++) {
+                final var cell = candidateCells[i];
+                if (current[cell] != recorded[cell] && (changedCount == 0 || candidateCells[changedCount - 1] != cell)) {
+                    candidateCells[changedCount++] = cell;
+                }
+            }
+            writeHeader(DELTA, nanos);
+            writeVarint(output, changedCount);
+            int previousCell = -1;
+            for (int i = 0; i < changedCount; i++) {
+                final var cell = candidateCells[i];
+                writeVarint(output, cell - previousCell - 1);
+                writeVarint(output, current[cell]);
+                recorded[cell] = current[cell];
+                previousCell = cell;
+            }
+        }
+
+        private void writeHeader(int type, long nanos) throws IOException {
+            // Messages and frames may be captured on different threads, slightly out of order.
+            final var micros = Math.max(previousMicros, TimeUnit.NANOSECONDS.toMicros(nanos - startNanos));
+            output.write(type);
+            writeVarint(output, micros - previousMicros);
+            previousMicros = micros;
+        }
+
+        private record Entry(long nanos, @NotNull Object item) {
+        }
+    }
+
+    /**
+     * Plays back a recording made by a {@link Recorder}.
+     */
+    public static final class Player implements Closeable {
+
+        private final InputStream input;
+
+        /**
+         * @param input The stream of the recording, which may be compressed with gzip. It is closed with the player.
+         * @throws IOException If the stream fails or is not a frame recording.
+         */
+        public Player(@NotNull InputStream input) throws IOException {
+            final var buffered = new BufferedInputStream(input, BUFFER_SIZE);
+            buffered.mark(2);
+            final var magic = buffered.read() | buffered.read() << Byte.SIZE;
+            buffered.reset();
+            this.input = magic == GZIPInputStream.GZIP_MAGIC
+                    ? new BufferedInputStream(new GZIPInputStream(buffered, BUFFER_SIZE), BUFFER_SIZE)
+                    : buffered;
+            if (!Arrays.equals(this.input.readNBytes(MAGIC.length), MAGIC) || this.input.read() != VERSION) {
+                throw new IOException("Not a frame recording");
+            }
+        }
+
+        /**
+         * Writes the recorded frames and messages to a channel, waiting between them as long as during the recording
+         * divided by the speed.
+         *
+         * @param channel The channel to write to.
+         * @param mode    How frames are written. In {@link TerminalRenderingEngine.Mode#DIFFERENTIAL} mode, only the
+         *                changed cells of each frame are written.
+         * @param speed   How many times faster than recorded to play, or {@link Double#POSITIVE_INFINITY} to not wait.
+         * @return The number of frames played.
+         * @throws IOException          If the recording cannot be read or is malformed, or the channel fails.
+         * @throws InterruptedException If interrupted while waiting for the next frame.
+         */
+        public long play(@NotNull WritableByteChannel channel, @NotNull TerminalRenderingEngine.Mode mode, double speed)
+                throws IOException, InterruptedException {
+            if (!(speed > 0)) {
+                throw new IllegalArgumentException("Speed must be positive");
+            }
+            final var output = new FrameBuffer();
+            final var startNanos = System.nanoTime();
+            final var differential = mode == TerminalRenderingEngine.Mode.DIFFERENTIAL;
+            long micros = 0;
+            long frames = 0;
+            int width = 0;
+            char[] frame = null;
+            try {
+                for (var type = input.read(); type >= 0; type = input.read()) {
+                    micros += readVarint();
+                    final var waitNanos = startNanos + (long) (TimeUnit.MICROSECONDS.toNanos(micros) / speed)
+                            - System.nanoTime();
+                    if (waitNanos > 0) {
+                        output.writeTo(channel);
+                        TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    }
+                    switch (type) {
+                        case KEYFRAME -> {
+                            width = readInt();
+                            final var height = readInt();
+                            final long cells;
+                            try {
+                                cells = Math.multiplyExact(width + 1L, (long) height);
+                            } catch (ArithmeticException e) {
+                                throw new IOException("Malformed frame recording", e);
+                            }
+                            if (cells > MAX_FRAME_CELLS) {
+                                throw new IOException("Frame recording too large: " + width + "x" + height);
+                            }
+                            frame = new char[(int) cells];
+                            for (int i = 0; i < frame.length; i++) {
+                                frame[i] = (char) readInt();
+                            }
+                            if (differential) {
+                                // Paint the map at the top of the terminal, as TerminalRenderingEngine does.
+                                output.append(TerminalRenderingEngine.ESC).append('r')
+                                        .append(TerminalRenderingEngine.ESC).append('H')
+                                        .append(TerminalRenderingEngine.ESC).append("2J");
+                                output.append(frame, 0, frame.length);
+                                output.append(TerminalRenderingEngine.ESC).append(height + 1).append('r');
+                                output.append(TerminalRenderingEngine.ESC).append(height + 1).append(";1H");
+                            } else {
+                                output.append(frame, 0, frame.length);
+                            }
+                            frames++;
+                        }
+                        case DELTA -> {
+                            if (frame == null) {
+                                throw new IOException("Malformed frame recording");
+                            }
+                            appendDelta(output, frame, width, differential);
+                            frames++;
+                        }
+                        case MESSAGE -> {
+                            final var length = readInt();
+                            final var bytes = input.readNBytes(length);
+                            if (bytes.length != length) {
+                                throw new IOException("Truncated frame recording");
+                            }
+                            output.append(new String(bytes, StandardCharsets.UTF_8)).append(System.lineSeparator());
+                        }
+                        default -> throw new IOException("Malformed frame recording");
+                    }
+                }
+            } finally {
+                if (differential && frame != null) {
+                    output.append("\0337").append(TerminalRenderingEngine.ESC).append('r').append("\0338");
+                }
+                output.writeTo(channel);
+            }
+            return frames;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+
+        private void appendDelta(@NotNull FrameBuffer output, char @NotNull [] frame, int width, boolean differential)
+                throws IOException {
+            final var count = readInt();
+            if (differential && count > 0) {
+                output.append("\0337");
+            }
+            // Cell the cursor is at after the last written cell
+            int cursor = -1;
+            long cell = -1;
+            for (int i = 0; i < count; i++) {
+                cell += readInt() + 1L;
+                final var c = (char) readInt();
+                if (cell < 0 || cell >= frame.length) {
+                    throw new IOException("Malformed frame recording");
+                }
+                final var index = (int) cell;
+                frame[index] = c;
+                if (differential) {
+                    if (index != cursor) {
+                        output.append(TerminalRenderingEngine.ESC).append(index / (width + 1) + 1).append(';')
+                                .append(index % (width + 1) + 1).append('H');
+                    }
+                    output.append(c);
+                    cursor = index + 1;
+                }
+            }
+            if (!differential) {
+                output.append(frame, 0, frame.length);
+            } else if (count > 0) {
+                output.append("\0338");
+            }
+        }
+
+        private int readInt() throws IOException {
+            final var value = readVarint();
+            if (value > Integer.MAX_VALUE) {
+                throw new IOException("Malformed frame recording");
+            }
+            return (int) value;
+        }
+
+        private long readVarint() throws IOException {
+            var value = 0L;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                final var b = input.read();
+                if (b < 0) {
+                    throw new IOException("Truncated frame recording");
+                }
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed frame recording");
+        }
+    }
+
+    private static void writeVarint(@NotNull OutputStream output, long value) throws IOException {
+        var remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            output.write((int) (remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        output.write((int) remaining);
+    }
+}
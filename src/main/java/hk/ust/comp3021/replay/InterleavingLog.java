@@ -0,0 +1,187 @@
+package hk.ust.comp3021.replay;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A compact log of the order in which the actions of input engines are processed by a game.
+ * <p>
+ * The log consists of the magic bytes {@code SKIL}, a version byte, and runs of actions of the same input engine,
+ * each stored as two unsigned LEB128 varints: the index of the input engine, and the number of actions.
+ * Games in {@link ReplaySokobanGame.Mode#FREE_RACE} mode process batches of actions of one engine at a time, so a run
+ * usually takes two bytes for many actions.
+ */
+public final class InterleavingLog {
+
+    /**
+     * Returned by {@link Reader#next()} at the end of the log.
+     */
+    public static final int END = -1;
+
+    private static final byte[] MAGIC = {'S', 'K', 'I', 'L'};
+
+    private static final byte VERSION = 1;
+
+    private InterleavingLog() {
+    }
+
+    /**
+     * Records an interleaving.
+     * Recording is not thread-safe; games record while holding their lock.
+     */
+    public static final class Writer implements Closeable {
+
+        private final OutputStream output;
+
+        private int engine = END;
+
+        private int run = 0;
+
+        private long count = 0;
+
+        private IOException failure;
+
+        /**
+         * @param output The stream to write the log to. It is closed with the writer.
+         * @throws IOException If the stream fails.
+         */
+        public Writer(@NotNull OutputStream output) throws IOException {
+            this.output = new BufferedOutputStream(output);
+            this.output.write(MAGIC);
+            this.output.write(VERSION);
+        }
+
+        /**
+         * Appends a processed action. Failures of the stream are reported by {@link #close()}.
+         *
+         * @param engineIndex The index of the input engine of the action.
+         */
+        public void record(int engineIndex) {
+            count++;
+            if (engineIndex == engine && run < Integer.MAX_VALUE) {
+                run++;
+                return;
+            }
+            flushRun();
+            engine = engineIndex;
+            run = 1;
+        }
+
+        /**
+         * @return The number of actions recorded.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @throws IOException If writing the log failed.
+         */
+        @Override
+        public void close() throws IOException {
+            flushRun();
+            engine = END;
+            try {
+                output.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private void flushRun() {
+            if (run == 0 || failure != null) {
+                return;
+            }
+            try {
+                writeVarint(engine);
+                writeVarint(run);
+            } catch (IOException e) {
+                failure = e;
+            }
+            run = 0;
+        }
+
+        private void writeVarint(int value) throws IOException {
+            var remaining = value;
+            while ((remaining & ~0x7F) != 0) {
+                output.write((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            output.write(remaining);
+        }
+    }
+
+    /**
+     * Reads an interleaving recorded by a {@link Writer}.
+     */
+    public static final class Reader implements Closeable {
+
+        private final InputStream input;
+
+        private int engine = END;
+
+        private int remaining = 0;
+
+        /**
+         * @param input The stream of the log. It is closed with the reader.
+         * @throws IOException If the stream fails or is not an interleaving log.
+         */
+        public Reader(@NotNull InputStream input) throws IOException {
+            this.input = new BufferedInputStream(input);
+            if (!Arrays.equals(this.input.readNBytes(MAGIC.length), MAGIC) || this.input.read() != VERSION) {
+                throw new IOException("Not an interleaving log");
+            }
+        }
+
+        /**
+         * @return The index of the input engine of the next action, or {@link #END} at the end of the log.
+         * @throws IOException If the stream fails or the log is truncated.
+         */
+        public int next() throws IOException {
+            while (remaining == 0) {
+                engine = readVarint(true);
+                if (engine == END) {
+                    return END;
+                }
+                remaining = readVarint(false);
+            }
+            remaining--;
+            return engine;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+
+        private int readVarint(boolean endAllowed) throws IOException {
+            var value = 0;
+            for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+                final var b = input.read();
+                if (b < 0) {
+                    if (endAllowed && shift == 0) {
+                        return END;
+                    }
+                    throw new IOException("Truncated interleaving log");
+                }
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed interleaving log");
+        }
+    }
+}
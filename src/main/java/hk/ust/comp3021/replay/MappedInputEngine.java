@@ -0,0 +1,68 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.actions.Action;
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.Repeat;
+import hk.ust.comp3021.game.InputEngine;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An input engine that reads a binary {@link ActionLog} from a memory-mapped file.
+ * <p>
+ * Like {@link StreamInputEngine}, an {@link Exit} action is returned once the log is exhausted.
+ * The file is mapped once, so it must be smaller than 2 GiB.
+ */
+public class MappedInputEngine implements InputEngine {
+
+    private final ActionLog.Reader reader;
+
+    private final int playerId;
+
+    /**
+     * @param file The binary action log.
+     * @throws IOException If the file cannot be mapped or is not a binary action log.
+     */
+    public MappedInputEngine(@NotNull Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed.
+            this.reader = new ActionLog.Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        this.playerId = reader.getPlayerId();
+    }
+
+    /**
+     * @return The player id of the actions.
+     */
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    @Override
+    public @NotNull Action fetchAction() {
+        final var opcode = reader.next();
+        if (opcode == ActionDecoder.END) {
+            return Exit.of(-1);
+        }
+        final var action = StreamInputEngine.opcode2Action(playerId, opcode);
+        final var repeat = reader.getRepeat();
+        return repeat > 1 && opcode != ActionDecoder.EXIT ? new Repeat(action, repeat) : action;
+    }
+
+    @Override
+    public int fetchActions(int max, @NotNull Action[] out) {
+        var count = 0;
+        while (count < max) {
+            final var action = fetchAction();
+            out[count++] = action;
+            if (action instanceof Exit) {
+                break;
+            }
+        }
+        return count;
+    }
+}
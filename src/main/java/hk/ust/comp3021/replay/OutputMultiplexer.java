@@ -0,0 +1,241 @@
+package hk.ust.comp3021.replay;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Merges the output of several games into one channel, such as the standard output, on a single thread.
+ * <p>
+ * Every game writes to its own {@link #newSink() sink}, which only buffers the bytes in memory, so games never contend
+ * with each other for the channel. The merger thread collects what every sink has buffered and writes it in one large
+ * batch. Each write to a sink stays contiguous in the output, so frames of different games do not mix.
+ * A game blocks only when its sink is full because the channel cannot keep up.
+ */
+public class OutputMultiplexer implements AutoCloseable {
+
+    /**
+     * Default number of bytes a sink buffers before writing to it blocks.
+     */
+    public static final int DEFAULT_SINK_CAPACITY = 256 * 1024;
+
+    /**
+     * Time the merger waits for more output after being woken up, so that it is written in fewer, larger batches.
+     */
+    private static final long LINGER_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final WritableByteChannel channel;
+
+    private final int sinkCapacity;
+
+    private final List<Sink> sinks = new CopyOnWriteArrayList<>();
+
+    private final Thread merger;
+
+    private volatile boolean closed = false;
+
+    private volatile @Nullable IOException failure;
+
+    /**
+     * @param channel The channel to write the merged output to.
+     */
+    public OutputMultiplexer(@NotNull WritableByteChannel channel) {
+        this(channel, DEFAULT_SINK_CAPACITY);
+    }
+
+    /**
+     * @param channel      The channel to write the merged output to.
+     * @param sinkCapacity Number of bytes a sink buffers before writing to it blocks.
+     */
+    public OutputMultiplexer(@NotNull WritableByteChannel channel, int sinkCapacity) {
+        if (sinkCapacity <= 0) {
+            throw new IllegalArgumentException("sinkCapacity must be positive");
+        }
+        this.channel = channel;
+        this.sinkCapacity = sinkCapacity;
+        this.merger = new Thread(this::merge, "output-merger");
+        this.merger.setDaemon(true);
+        this.merger.start();
+    }
+
+    /**
+     * Creates a channel for the output of one game. It is not thread-safe to write to it from several threads at once
+     * without a lock, just like any channel shared by several rendering engines.
+     *
+     * @return The channel, whose output is written to the channel of this multiplexer.
+     */
+    public @NotNull WritableByteChannel newSink() {
+        if (closed) {
+            throw new IllegalStateException("Multiplexer is closed");
+        }
+        final var sink = new Sink();
+        sinks.add(sink);
+        return sink;
+    }
+
+    /**
+     * Writes everything buffered by the sinks, then stops the merger thread. The channel is not closed.
+     *
+     * @throws UncheckedIOException If the output could not be written.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(merger);
+        try {
+            merger.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        final var error = failure;
+        if (error != null) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    private void merge() {
+        final var batch = new ArrayList<ByteBuffer>();
+        final var owners = new ArrayList<Sink>();
+        while (true) {
+            // Read the flag before collecting, so that output written before closing is not left behind.
+            final var last = closed;
+            for (final var sink : sinks) {
+                final var buffer = sink.take();
+                if (buffer != null) {
+                    batch.add(buffer);
+                    owners.add(sink);
+                }
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                for (int i = 0; i < owners.size(); i++) {
+                    owners.get(i).release(batch.get(i));
+                }
+                batch.clear();
+                owners.clear();
+            }
+            if (last) {
+                return;
+            }
+            if (!hasPendingOutput()) {
+                LockSupport.park(this);
+                LockSupport.parkNanos(this, LINGER_NANOS);
+            }
+        }
+    }
+
+    private boolean hasPendingOutput() {
+        for (final var sink : sinks) {
+            if (sink.hasOutput()) {
+                return true;
+            }
+        }
+        return closed;
+    }
+
+    private void write(@NotNull List<ByteBuffer> batch) {
+        if (failure != null) {
+            // Keep taking output so that games do not block; it is dropped.
+            return;
+        }
+        try {
+            if (channel instanceof GatheringByteChannel gathering) {
+                final var buffers = batch.toArray(new ByteBuffer[0]);
+                while (buffers[buffers.length - 1].hasRemaining()) {
+                    gathering.write(buffers);
+                }
+            } else {
+                for (final var buffer : batch) {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Buffers the output of one game in one buffer while the merger writes the other.
+     */
+    private final class Sink implements WritableByteChannel {
+        // Buffer written to by the game
+        private ByteBuffer filling = ByteBuffer.allocateDirect(sinkCapacity);
+        // Buffer given back by the merger, or null while the merger is writing it
+        private @Nullable ByteBuffer spare = ByteBuffer.allocateDirect(sinkCapacity);
+
+        @Override
+        public synchronized int write(@NotNull ByteBuffer source) throws IOException {
+            final var size = source.remaining();
+            while (filling.remaining() < size) {
+                final var error = failure;
+                if (error != null) {
+                    throw error;
+                }
+                if (filling.position() == 0) {
+                    // A single write larger than the capacity
+                    filling = ByteBuffer.allocateDirect(size);
+                    break;
+                }
+                LockSupport.unpark(merger);
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            filling.put(source);
+            LockSupport.unpark(merger);
+            return size;
+        }
+
+        private synchronized boolean hasOutput() {
+            return filling.position() > 0;
+        }
+
+        /**
+         * @return The buffered output, ready to be written, or null if nothing is buffered.
+         */
+        private synchronized @Nullable ByteBuffer take() {
+            if (filling.position() == 0 || spare == null) {
+                return null;
+            }
+            final var output = filling;
+            filling = spare;
+            spare = null;
+            notifyAll();
+            return output.flip();
+        }
+
+        private synchronized void release(@NotNull ByteBuffer buffer) {
+            spare = buffer.clear();
+            notifyAll();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
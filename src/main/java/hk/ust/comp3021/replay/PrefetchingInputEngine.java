@@ -0,0 +1,256 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.actions.Action;
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.game.InputEngine;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An input engine that reads ahead from another input engine on a background thread.
+ * <p>
+ * Actions are fetched from the wrapped engine as fast as it produces them, into a bounded single-producer
+ * single-consumer ring buffer, so {@link #fetchAction()} returns from memory unless the wrapped engine falls behind.
+ * Reading stops after the first {@link Exit}, which is what the wrapped engine returns at the end of its input;
+ * afterwards, this engine keeps returning that {@link Exit}.
+ * <p>
+ * The background thread is a daemon thread; it waits while the buffer is full, and ends after the first
+ * {@link Exit} or once {@link #close()} is called, which also closes the wrapped engine.
+ * Both threads park until the other one signals them, so an idle engine does not wake up any thread.
+ * Only one thread may fetch from this engine at a time.
+ */
+public class PrefetchingInputEngine implements InputEngine {
+
+    /**
+     * Default number of actions read ahead.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final ThreadFactory DEFAULT_THREAD_FACTORY = runnable -> {
+        final var thread = new Thread(runnable, "input-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    };
+
+    private final InputEngine delegate;
+
+    private final AtomicReferenceArray<Action> ring;
+
+    private final int mask;
+
+    /**
+     * Number of actions written by the producer. Written with a volatile store before reading
+     * {@link #waitingConsumer}, so that a consumer going to park either sees the action or is unparked.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Number of actions taken by the consumer. Written with a volatile store before reading
+     * {@link #producerWaiting}, so that a producer going to park either sees the free slot or is unparked.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    private final Thread producer;
+
+    private volatile @Nullable Thread waitingConsumer;
+
+    private volatile boolean producerWaiting = false;
+
+    private volatile boolean finished = false;
+
+    private volatile boolean closed = false;
+
+    private volatile @Nullable RuntimeException failure;
+
+    private final LongAdder stallNanos = new LongAdder();
+
+    private final LongAdder stalls = new LongAdder();
+
+    private final AtomicLong maxDepth = new AtomicLong();
+
+    // Only accessed by the consumer.
+    private @Nullable Action last;
+
+    /**
+     * Statistics of the read-ahead.
+     *
+     * @param queueDepth    The number of actions currently read ahead.
+     * @param maxQueueDepth The maximum number of actions read ahead so far.
+     * @param fetched       The number of actions taken from the read-ahead buffer.
+     * @param stalls        The number of fetches that had to wait for the wrapped engine.
+     * @param stallNanos    The total time spent waiting for the wrapped engine, in nanoseconds.
+     */
+    public record Metrics(int queueDepth, int maxQueueDepth, long fetched, long stalls, long stallNanos) {
+    }
+
+    /**
+     * Starts reading ahead on a daemon thread with the default capacity.
+     *
+     * @param delegate The engine to read from.
+     */
+    public PrefetchingInputEngine(@NotNull InputEngine delegate) {
+        this(delegate, DEFAULT_CAPACITY, DEFAULT_THREAD_FACTORY);
+    }
+
+    /**
+     * Starts reading ahead.
+     *
+     * @param delegate      The engine to read from.
+     * @param capacity      The maximum number of actions read ahead, rounded up to a power of two.
+     * @param threadFactory The factory of the background thread.
+     */
+    public PrefetchingInputEngine(@NotNull InputEngine delegate, int capacity, @NotNull ThreadFactory threadFactory) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        final var size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.delegate = delegate;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.producer = threadFactory.newThread(this::produce);
+        this.producer.start();
+    }
+
+    private void produce() {
+        try {
+            while (!closed) {
+                final var action = delegate.fetchAction();
+                final var index = tail.get();
+                while (index - head.get() > mask) {
+                    if (closed) {
+                        return;
+                    }
+                    producerWaiting = true;
+                    if (index - head.get() > mask && !closed) {
+                        LockSupport.park(this);
+                    }
+                    producerWaiting = false;
+                }
+                ring.lazySet((int) (index & mask), action);
+                tail.set(index + 1);
+                maxDepth.accumulateAndGet(index + 1 - head.get(), Math::max);
+                LockSupport.unpark(waitingConsumer);
+                if (action instanceof Exit) {
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            finished = true;
+            LockSupport.unpark(waitingConsumer);
+        }
+    }
+
+    /**
+     * @return The next action read ahead, waiting for the wrapped engine if none is available.
+     * @throws RuntimeException The exception thrown by the wrapped engine, once the actions before it are fetched.
+     */
+    @Override
+    public @NotNull Action fetchAction() {
+        final var index = head.get();
+        if (index == tail.get()) {
+            if (!awaitAction(index)) {
+                return endOfInput();
+            }
+        }
+        return take(index);
+    }
+
+    /**
+     * Fetches the actions already read ahead, waiting only for the first one.
+     *
+     * @param max The maximum number of actions to fetch, at most the length of {@code out}.
+     * @param out The array to store the actions in.
+     * @return The number of actions stored.
+     */
+    @Override
+    public int fetchActions(int max, @NotNull Action[] out) {
+        if (max <= 0) {
+            return 0;
+        }
+        var index = head.get();
+        if (index == tail.get() && !awaitAction(index)) {
+            out[0] = endOfInput();
+            return 1;
+        }
+        final var available = tail.get();
+        var count = 0;
+        while (count < max && index < available) {
+            final var action = take(index++);
+            out[count++] = action;
+            if (action instanceof Exit) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stops reading ahead and closes the wrapped engine, so a read blocked in it returns. Actions already read ahead
+     * can still be fetched.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(producer);
+        delegate.close();
+    }
+
+    /**
+     * @return The statistics of the read-ahead.
+     */
+    public @NotNull Metrics getMetrics() {
+        final var consumed = head.get();
+        return new Metrics((int) (tail.get() - consumed), (int) maxDepth.get(), consumed, stalls.sum(), stallNanos.sum());
+    }
+
+    /**
+     * Waits until the producer writes the action at the index.
+     *
+     * @return False if the producer ended without writing it.
+     */
+    private boolean awaitAction(long index) {
+        final var start = System.nanoTime();
+        stalls.increment();
+        waitingConsumer = Thread.currentThread();
+        try {
+            while (index == tail.get()) {
+                if (finished) {
+                    return index != tail.get();
+                }
+                LockSupport.park(this);
+            }
+            return true;
+        } finally {
+            waitingConsumer = null;
+            stallNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private Action take(long index) {
+        final var slot = (int) (index & mask);
+        final var action = ring.get(slot);
+        ring.lazySet(slot, null);
+        head.set(index + 1);
+        if (producerWaiting) {
+            LockSupport.unpark(producer);
+        }
+        last = action;
+        return action;
+    }
+
+    private Action endOfInput() {
+        final var error = failure;
+        if (error != null) {
+            throw error;
+        }
+        return last instanceof Exit ? last : Exit.of(-1);
+    }
+}
@@ -1,15 +1,22 @@
 package hk.ust.comp3021.replay;
 
 
+import hk.ust.comp3021.actions.Action;
 import hk.ust.comp3021.actions.ActionResult;
 import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.Wait;
 import hk.ust.comp3021.game.AbstractSokobanGame;
 import hk.ust.comp3021.game.GameState;
 import hk.ust.comp3021.game.InputEngine;
 import hk.ust.comp3021.game.RenderingEngine;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
 
 import static hk.ust.comp3021.utils.StringResources.*;
@@ -46,14 +53,30 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
     protected final Mode mode;
     /**
      * Indicated the frame rate of the rendering engine (in FPS).
+     * {@link #UNTHROTTLED} processes actions as fast as possible and renders only the initial and the final state.
      */
     protected final int frameRate;
 
+    /**
+     * Frame rate of a game that is not throttled by rendering, e.g. to measure the throughput of the game.
+     */
+    public static final int UNTHROTTLED = 0;
+
+    /**
+     * Interval at which the rendering engine thread of an unthrottled game checks whether the game has ended.
+     */
+    private static final long UNTHROTTLED_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
     /**
      * Default frame rate.
      */
     protected static final int DEFAULT_FRAME_RATE = 60;
 
+    /**
+     * Maximum number of actions fetched and processed at once in {@link Mode#FREE_RACE} mode.
+     */
+    protected static final int FREE_RACE_BATCH_SIZE = 32;
+
     /**
      * The list of input engines to fetch inputs.
      */
@@ -69,7 +92,7 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
      * Each input engine corresponds to an action file and will produce actions from the action file.
      *
      * @param mode            The mode of the game.
-     * @param frameRate       Rendering fps.
+     * @param frameRate       Rendering fps, or {@link #UNTHROTTLED}.
      * @param gameState       The game state.
      * @param inputEngines    the input engines.
      * @param renderingEngine the rendering engine.
@@ -84,13 +107,15 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
         super(gameState);
         if (inputEngines.size() == 0)
             throw new IllegalArgumentException("No input engine specified");
+        if (frameRate < 0)
+            throw new IllegalArgumentException("Invalid frame rate: " + frameRate);
         this.mode = mode;
         this.frameRate = frameRate;
         this.renderingEngine = renderingEngine;
         this.inputEngines = inputEngines;
 
         // Added code: initialized value and array
-        this.sleepTime = 1000 / frameRate;
+        this.framePacer = frameRate == UNTHROTTLED ? null : new FramePacer(frameRate);
         this.hasInputEnginesFinished = new boolean[this.inputEngines.size()];
     }
 
@@ -110,8 +135,8 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
 
     // Constants
 
-    // Compute number of milliseconds to delay to fulfill FPS requirement
-    final long sleepTime;
+    // Schedule of frames to fulfill FPS requirement, or null if the game is unthrottled
+    private final @Nullable FramePacer framePacer;
 
     // Concurrency information
 
@@ -119,8 +144,67 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
     private int inputEngineIndex = 0;
     // List of whether each input engine has finished
     private final boolean[] hasInputEnginesFinished;
-    // Previous render start timestamp
-    private long previousRenderStart;
+    // Whether the initial state has been rendered, which input engines of an unthrottled game wait for
+    private volatile boolean initialStateRendered;
+    // Recorder of the order of processed actions, written under the lock of the game state
+    private @Nullable InterleavingLog.Writer interleavingRecorder;
+    // Whether frames of an unchanged game state are skipped, and how often one is rendered anyway (0 for never)
+    private boolean skipUnchangedFrames;
+    private long heartbeatNanos;
+    // Number of processed actions, and of those that failed, updated under the lock of the game state
+    private long processedActionCount;
+    private long failedActionCount;
+
+    /**
+     * Records the index of the input engine of every processed action, in the order they are processed.
+     * The recording can be replayed by a {@link DeterministicReplaySokobanGame}.
+     * The recorder is not closed by the game.
+     *
+     * @param recorder The recorder, or null to stop recording. Must be set before {@link #run()}.
+     */
+    public void setInterleavingRecorder(@Nullable InterleavingLog.Writer recorder) {
+        this.interleavingRecorder = recorder;
+    }
+
+    /**
+     * Skips rendering frames in which the game state has not changed since the last rendered frame,
+     * according to {@link GameState#getVersion()}, so that idle periods cost neither rendering nor output.
+     * The initial and the final state are always rendered.
+     *
+     * @param heartbeat Interval after which an unchanged frame is rendered anyway, or null to never render one.
+     *                  Must be set before {@link #run()}.
+     */
+    public void enableFrameSkipping(@Nullable Duration heartbeat) {
+        this.skipUnchangedFrames = true;
+        this.heartbeatNanos = heartbeat == null ? 0 : heartbeat.toNanos();
+    }
+
+    /**
+     * @return The number of actions processed so far, including failed actions and exits.
+     */
+    public long getProcessedActionCount() {
+        synchronized (state) {
+            return processedActionCount;
+        }
+    }
+
+    /**
+     * @return The number of processed actions that failed so far.
+     */
+    public long getFailedActionCount() {
+        synchronized (state) {
+            return failedActionCount;
+        }
+    }
+
+    /**
+     * @return Whether the game has been won.
+     */
+    public boolean isWin() {
+        synchronized (state) {
+            return state.isWin();
+        }
+    }
 
     /**
      * @return True when the game should stop running.
@@ -149,10 +233,13 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
     private class InputEngineRunnable implements Runnable {
         private final int index;
         private final InputEngine inputEngine;
+        // Actions fetched at once; in ROUND_ROBIN mode, a turn is a single action
+        private final Action[] batch;
 
         private InputEngineRunnable(int index, @NotNull InputEngine inputEngine) {
             this.index = index;
             this.inputEngine = inputEngine;
+            this.batch = new Action[Mode.FREE_RACE.equals(mode) ? FREE_RACE_BATCH_SIZE : 1];
         }
 
         @Override
@@ -172,37 +259,64 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
                 }
             };
 
+            // Number of times this thread has waited in a row, to back off from spinning to parking
+            int idle = 0;
+            // Number of Wait actions fetched in a row, to back off while the input engine has no action ready
+            int waits = 0;
+
             // Game loop
             while (!shouldStop()) {
                 // If finished all valid Actions, skip Thread entirely
                 if (hasInputEnginesFinished[this.index]) {
                     finishActionProcessingHandler.run();
-                    Thread.yield();
+                    idle = FramePacer.backOff(idle);
                     continue;
                 }
 
                 // Await own turn to run
                 // No other engines are allowed to execute concurrently
-                // Force input engines to concede control to rendering engine to fulfill FPS requirement
-                while ((System.currentTimeMillis() - previousRenderStart >= sleepTime)
-                        || (Mode.ROUND_ROBIN.equals(mode) && this.index != inputEngineIndex)) {
-                    Thread.yield();
+                // Force input engines to concede control to rendering engine to fulfill FPS requirement;
+                // an unthrottled game only waits for the initial state to be rendered
+                // Stop waiting once the game ends, since the rendering engine stops rendering by then
+                while (!shouldStop()
+                        && ((framePacer == null ? !initialStateRendered : framePacer.isFrameDue())
+                        || (Mode.ROUND_ROBIN.equals(mode) && this.index != inputEngineIndex))) {
+                    idle = FramePacer.backOff(idle);
                 }
+                idle = 0;
 
                 // If game has not been won
                 if (!state.isWin()) {
-                    // Fetch and process Action from this player
-                    final var action = inputEngine.fetchAction();
+                    // Fetch and process a batch of Actions from this player under a single lock acquisition
+                    var count = inputEngine.fetchActions(batch.length, batch);
+                    if (count == 0) {
+                        batch[0] = inputEngine.fetchAction();
+                        count = 1;
+                    }
+                    waits = batch[0] instanceof Wait ? FramePacer.backOff(waits) : 0;
                     synchronized (state) {
-                        final var result = processAction(action);
-                        if (result instanceof ActionResult.Failed failed) {
-                            renderingEngine.message(failed.getReason());
+                        for (int i = 0; i < count; i++) {
+                            final var action = batch[i];
+                            batch[i] = null;
+                            if (hasInputEnginesFinished[this.index] || (i > 0 && state.isWin())
+                                    || action instanceof Wait) {
+                                continue;
+                            }
+                            final var result = processAction(action);
+                            processedActionCount++;
+                            if (interleavingRecorder != null) {
+                                interleavingRecorder.record(this.index);
+                            }
+                            if (result instanceof ActionResult.Failed failed) {
+                                failedActionCount++;
+                                renderingEngine.message(failed.getReason());
+                            }
+                            if (action instanceof Exit) {
+                                // Should not continue to fetch actions after first Exit of player
+                                hasInputEnginesFinished[this.index] = true;
+                            }
                         }
                     }
-                    if (action instanceof Exit) {
-                        // Should not continue to fetch actions after first Exit of player
-                        hasInputEnginesFinished[this.index] = true;
-                    }
 
                     // Pass control to other engines
                     finishActionProcessingHandler.run();
@@ -228,12 +342,27 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
         public void run() {
             // DONE: modify this method to implement the requirements.
 
-            // Helper lambda function: render map and undo quota
-            Runnable renderMapAndUndo = () -> {
+            // Version of the game state last rendered, and when, to skip frames of an unchanged state
+            final var lastRendered = new long[]{-1, 0};
+
+            // Helper lambda function: render map and undo quota; a frame is skipped unless forced
+            Consumer<Boolean> renderMapAndUndo = force -> {
                 // Disallow concurrent updates to game state during rendering
                 synchronized (state) {
-                    // Update previous render finish timestamp
-                    previousRenderStart = System.currentTimeMillis();
+                    // Schedule the next frame
+                    if (framePacer != null) {
+                        framePacer.startFrame();
+                    }
+
+                    if (skipUnchangedFrames) {
+                        final var now = System.nanoTime();
+                        if (!force && state.getVersion() == lastRendered[0]
+                                && (heartbeatNanos == 0 || now - lastRendered[1] < heartbeatNanos)) {
+                            return;
+                        }
+                        lastRendered[0] = state.getVersion();
+                        lastRendered[1] = now;
+                    }
 
                     // Render undo quota
                     final var undoQuotaMessage = state.getUndoQuota()
@@ -242,27 +371,34 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
                     renderingEngine.message(undoQuotaMessage);
                     // Render game map
                     renderingEngine.render(state);
+                    initialStateRendered = true;
                 }
             };
 
             // Render game start
             renderingEngine.message(GAME_READY_MESSAGE);
 
-            // Game loop
-            do {
-                // Perform rendering
-                if (!state.isWin()) {
-                    renderMapAndUndo.run();
+            if (framePacer == null) {
+                // Render the initial state, which lets input engines start, and wait for the game to end
+                renderMapAndUndo.accept(true);
+                while (!shouldStop()) {
+                    LockSupport.parkNanos(UNTHROTTLED_POLL_NANOS);
                 }
+            } else {
+                // Game loop
+                do {
+                    // Perform rendering
+                    if (!state.isWin()) {
+                        renderMapAndUndo.accept(lastRendered[0] < 0);
+                    }
 
-                // Wait up to sleep time to render to fulfill FPS requirement
-                while (System.currentTimeMillis() - previousRenderStart < sleepTime) {
-                    Thread.yield();
-                }
-            } while (!shouldStop());
+                    // Wait until the next frame is due to fulfill FPS requirement
+                    framePacer.awaitNextFrame();
+                } while (!shouldStop());
+            }
 
             // Render final game state
-            renderMapAndUndo.run();
+            renderMapAndUndo.accept(true);
             // Render game exit
             renderingEngine.message(GAME_EXIT_MESSAGE);
             // Render win message
@@ -276,9 +412,18 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
      * Start the game.
      * This method should spawn new threads for each input engine and the rendering engine.
      * This method should wait for all threads to finish before return.
+     * The input engines are closed once the game ends.
      */
     @Override
     public void run() {
+        try {
+            runThreads();
+        } finally {
+            closeInputEngines();
+        }
+    }
+
+    private void runThreads() {
         // DONE
 
         // Spawn new thread for rendering engine
@@ -313,4 +458,24 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
         }
     }
 
+    /**
+     * Closes all input engines, even if closing one of them fails.
+     */
+    protected void closeInputEngines() {
+        RuntimeException failure = null;
+        for (final var inputEngine : inputEngines) {
+            try {
+                inputEngine.close();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
 }
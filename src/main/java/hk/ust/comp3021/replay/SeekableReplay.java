@@ -0,0 +1,390 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.game.AbstractSokobanGame;
+import hk.ust.comp3021.game.GameMap;
+import hk.ust.comp3021.game.GameState;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A replay of action files that can jump to any action without processing all the actions before it.
+ * <p>
+ * Actions are processed in the order of {@link ReplaySokobanGame.Mode#ROUND_ROBIN} mode, the only order that does not
+ * depend on thread scheduling.
+ * A first pass ({@link #index()}) records a keyframe every {@code interval} actions: a {@link GameState.Snapshot}
+ * together with the byte offset of the next action in each action file.
+ * {@link #seek(long)} then restores the last keyframe before the action and processes at most {@code interval - 1}
+ * actions from there.
+ * The keyframes can be saved to a file next to the first action file and loaded by later runs.
+ * <p>
+ * Only text action files are supported, since seeking relies on byte offsets into the files.
+ */
+public class SeekableReplay extends AbstractSokobanGame implements Closeable {
+
+    /**
+     * Default number of actions between keyframes.
+     */
+    public static final int DEFAULT_INTERVAL = 10_000;
+
+    /**
+     * Extension appended to the name of the first action file to name the keyframe file.
+     */
+    public static final String INDEX_EXTENSION = ".seek";
+
+    private static final byte[] MAGIC = {'S', 'K', 'S', 'I'};
+
+    /**
+     * Version of the keyframe file; files of other versions are ignored, as if the action files had changed.
+     * Version 2 writes the undo history of each keyframe as a difference from the previous one.
+     */
+    private static final byte VERSION = 2;
+
+    private final List<Path> actionFiles;
+
+    private final int interval;
+
+    private final int[] playerIds;
+
+    private final List<Keyframe> keyframes = new ArrayList<>();
+
+    private final StreamInputEngine[] engines;
+
+    private final FileChannel[] channels;
+
+    /**
+     * Offset in each file at which its engine started reading.
+     */
+    private final long[] baseOffsets;
+
+    private final boolean[] finished;
+
+    private int turn = 0;
+
+    private long position = 0;
+
+    private long actionCount = -1;
+
+    /**
+     * The state of the replay before an action.
+     *
+     * @param action   The number of actions processed before.
+     * @param turn     The index of the action file to take the next turn.
+     * @param finished Whether each action file has reached its first {@link Exit}.
+     * @param offsets  The offset of the next action in each action file.
+     * @param snapshot The game state.
+     */
+    private record Keyframe(long action, int turn, boolean[] finished, long[] offsets, GameState.Snapshot snapshot) {
+    }
+
+    /**
+     * Opens a replay positioned before the first action.
+     *
+     * @param map         The game map.
+     * @param actionFiles The text action files, in the order of their turns.
+     * @param interval    The number of actions between keyframes.
+     * @throws IOException If an action file cannot be read.
+     */
+    public SeekableReplay(@NotNull GameMap map, @NotNull List<Path> actionFiles, int interval) throws IOException {
+        super(new GameState(map));
+        if (actionFiles.isEmpty()) {
+            throw new IllegalArgumentException("No action file specified");
+        }
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Invalid interval: " + interval);
+        }
+        this.actionFiles = List.copyOf(actionFiles);
+        this.interval = interval;
+        final var count = actionFiles.size();
+        this.playerIds = new int[count];
+        this.engines = new StreamInputEngine[count];
+        this.channels = new FileChannel[count];
+        this.baseOffsets = new long[count];
+        this.finished = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            if (ActionLog.isBinary(actionFiles.get(i))) {
+                throw new IllegalArgumentException("Binary action logs cannot be seeked: " + actionFiles.get(i));
+            }
+            channels[i] = FileChannel.open(actionFiles.get(i), StandardOpenOption.READ);
+            engines[i] = new StreamInputEngine(Channels.newInputStream(channels[i]));
+            playerIds[i] = engines[i].getPlayerId();
+        }
+        keyframes.add(keyframe());
+    }
+
+    /**
+     * Processes all actions from the current position, recording a keyframe every {@code interval} actions.
+     *
+     * @return The total number of actions of the replay.
+     * @throws IOException If an action file cannot be read.
+     */
+    public long index() throws IOException {
+        if (actionCount >= 0) {
+            return actionCount;
+        }
+        final var last = keyframes.get(keyframes.size() - 1);
+        if (position < last.action()) {
+            restore(last);
+        }
+        recordKeyframe();
+        while (step()) {
+            recordKeyframe();
+        }
+        actionCount = position;
+        return actionCount;
+    }
+
+    /**
+     * Moves the replay to right after the given number of actions, or to the end of the replay if it is shorter.
+     * Seeking beyond the actions indexed so far processes all actions in between.
+     *
+     * @param action The number of actions to have processed.
+     * @return The number of actions processed, which is less than {@code action} only at the end of the replay.
+     * @throws IOException If an action file cannot be read.
+     */
+    public long seek(long action) throws IOException {
+        if (action < 0) {
+            throw new IllegalArgumentException("Invalid action: " + action);
+        }
+        final var keyframe = keyframes.get((int) Math.min(action / interval, keyframes.size() - 1));
+        if (position > action || position < keyframe.action()) {
+            restore(keyframe);
+        }
+        while (position < action && step()) {
+            recordKeyframe();
+        }
+        if (position < action) {
+            actionCount = position;
+        }
+        return position;
+    }
+
+    /**
+     * @return The number of actions processed so far.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return The total number of actions, or -1 if the replay has not been indexed to its end.
+     */
+    public long getActionCount() {
+        return actionCount;
+    }
+
+    /**
+     * @return The game state after the actions processed so far.
+     */
+    public @NotNull GameState getState() {
+        return state;
+    }
+
+    /**
+     * @return The file the keyframes are saved to, next to the first action file.
+     */
+    public @NotNull Path getIndexFile() {
+        final var first = actionFiles.get(0);
+        return first.resolveSibling(first.getFileName() + INDEX_EXTENSION);
+    }
+
+    /**
+     * Writes the keyframes to {@link #getIndexFile()}.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    public void save() throws IOException {
+        final var file = getIndexFile();
+        final var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                output.write(MAGIC);
+                output.writeByte(VERSION);
+                output.writeInt(interval);
+                output.writeLong(actionCount);
+                output.writeInt(actionFiles.size());
+                for (int i = 0; i < actionFiles.size(); i++) {
+                    output.writeLong(Files.size(actionFiles.get(i)));
+                    output.writeLong(Files.getLastModifiedTime(actionFiles.get(i)).toMillis());
+                    output.writeInt(playerIds[i]);
+                }
+                output.writeInt(keyframes.size());
+                GameState.Snapshot previous = null;
+                for (final var keyframe : keyframes) {
+                    output.writeLong(keyframe.action());
+                    output.writeInt(keyframe.turn());
+                    for (int i = 0; i < actionFiles.size(); i++) {
+                        output.writeBoolean(keyframe.finished()[i]);
+                        output.writeLong(keyframe.offsets()[i]);
+                    }
+                    keyframe.snapshot().write(output, previous);
+                    previous = keyframe.snapshot();
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Reads the keyframes saved by {@link #save()} with the same interval.
+     * The keyframes are ignored if any action file changed since they were saved.
+     *
+     * @return True if the keyframes were loaded.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public boolean load() throws IOException {
+        final var file = getIndexFile();
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            final var magic = new byte[MAGIC.length];
+            input.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a replay index: " + file);
+            }
+            if (input.readByte() != VERSION || input.readInt() != interval) {
+                return false;
+            }
+            final var count = input.readLong();
+            if (input.readInt() != actionFiles.size()) {
+                return false;
+            }
+            for (int i = 0; i < actionFiles.size(); i++) {
+                if (input.readLong() != Files.size(actionFiles.get(i))
+                        || input.readLong() != Files.getLastModifiedTime(actionFiles.get(i)).toMillis()
+                        || input.readInt() != playerIds[i]) {
+                    return false;
+                }
+            }
+            final var loaded = new ArrayList<Keyframe>();
+            final var keyframeCount = input.readInt();
+            GameState.Snapshot previous = null;
+            for (int k = 0; k < keyframeCount; k++) {
+                final var action = input.readLong();
+                final var keyframeTurn = input.readInt();
+                final var keyframeFinished = new boolean[actionFiles.size()];
+                final var offsets = new long[actionFiles.size()];
+                for (int i = 0; i < actionFiles.size(); i++) {
+                    keyframeFinished[i] = input.readBoolean();
+                    offsets[i] = input.readLong();
+                }
+                if (action != (long) k * interval || keyframeTurn < 0 || keyframeTurn >= actionFiles.size()) {
+                    throw new IOException("Malformed replay index: " + file);
+                }
+                previous = GameState.Snapshot.read(input, previous);
+                loaded.add(new Keyframe(action, keyframeTurn, keyframeFinished, offsets, previous));
+            }
+            if (loaded.isEmpty()) {
+                throw new IOException("Malformed replay index: " + file);
+            }
+            keyframes.clear();
+            keyframes.addAll(loaded);
+            actionCount = count;
+            restore(keyframes.get(0));
+            return true;
+        } catch (EOFException e) {
+            throw new IOException("Truncated replay index: " + file, e);
+        }
+    }
+
+    /**
+     * Processes all remaining actions.
+     */
+    @Override
+    public void run() {
+        try {
+            index();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (final var channel : channels) {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * @return True when every action file reached its first {@link Exit} or the game is won.
+     */
+    @Override
+    protected boolean shouldStop() {
+        for (final var done : finished) {
+            if (!done) {
+                return state.isWin();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Processes the action of the next turn.
+     *
+     * @return False if the replay has ended.
+     */
+    private boolean step() {
+        if (shouldStop()) {
+            return false;
+        }
+        while (finished[turn]) {
+            turn = (turn + 1) % engines.length;
+        }
+        final var action = engines[turn].fetchAction();
+        processAction(action);
+        if (action instanceof Exit) {
+            finished[turn] = true;
+        }
+        turn = (turn + 1) % engines.length;
+        position++;
+        return true;
+    }
+
+    private Keyframe keyframe() {
+        final var offsets = new long[engines.length];
+        for (int i = 0; i < engines.length; i++) {
+            offsets[i] = baseOffsets[i] + engines[i].getOffset();
+        }
+        return new Keyframe(position, turn, finished.clone(), offsets, state.snapshot());
+    }
+
+    private void restore(Keyframe keyframe) throws IOException {
+        state.restore(keyframe.snapshot());
+        for (int i = 0; i < engines.length; i++) {
+            channels[i].position(keyframe.offsets()[i]);
+            baseOffsets[i] = keyframe.offsets()[i];
+            engines[i] = new StreamInputEngine(Channels.newInputStream(channels[i]), playerIds[i]);
+        }
+        System.arraycopy(keyframe.finished(), 0, finished, 0, finished.length);
+        turn = keyframe.turn();
+        position = keyframe.action();
+    }
+
+    private void recordKeyframe() {
+        if (position == (long) keyframes.size() * interval) {
+            keyframes.add(keyframe());
+        }
+    }
+}
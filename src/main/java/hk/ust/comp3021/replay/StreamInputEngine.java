@@ -5,18 +5,24 @@ import hk.ust.comp3021.game.InputEngine;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+
+import static hk.ust.comp3021.utils.StringResources.INVALID_INPUT_MESSAGE;
 
 /**
  * An input engine that fetches actions from terminal input.
+ * <p>
+ * The input is decoded by an {@link ActionDecoder}, which skips lines that do not denote an action.
+ * An action followed by a repeat count, e.g. {@code L25}, is fetched as one {@link Repeat} action; a line with an
+ * invalid count is fetched as an {@link InvalidInput}.
  */
 public class StreamInputEngine implements InputEngine {
 
     /**
-     * The {@link Scanner} for reading input from the terminal.
+     * The decoder of the input stream.
      */
-    private final Scanner terminalScanner;
+    private final ActionDecoder decoder;
+
+    private final InputStream stream;
 
     private final int playerId;
 
@@ -24,8 +30,22 @@ public class StreamInputEngine implements InputEngine {
      * @param fileStream The stream for reading the input file.
      */
     public StreamInputEngine(@NotNull InputStream fileStream) {
-        this.terminalScanner = new Scanner(fileStream);
-        this.playerId = Integer.parseInt(terminalScanner.nextLine());
+        this.stream = fileStream;
+        this.decoder = new ActionDecoder(fileStream);
+        this.playerId = decoder.readPlayerId();
+    }
+
+    /**
+     * Continues reading an action file from the middle.
+     *
+     * @param fileStream The stream for reading the input file, positioned after the player id line or at an offset
+     *                   returned by {@link #getOffset()}.
+     * @param playerId   The player id in the first line of the file.
+     */
+    public StreamInputEngine(@NotNull InputStream fileStream, int playerId) {
+        this.stream = fileStream;
+        this.decoder = new ActionDecoder(fileStream);
+        this.playerId = playerId;
     }
 
     /**
@@ -37,34 +57,94 @@ public class StreamInputEngine implements InputEngine {
      */
     @Override
     public @NotNull Action fetchAction() {
-        try {
-            while (true) {
-                var inputLine = terminalScanner.nextLine();
-                final var move = inputLine.charAt(0);
-                try {
-                    return char2Action(playerId, move);
-                } catch (IllegalArgumentException ignored) {
-                }
+        final var opcode = decoder.next();
+        if (opcode == ActionDecoder.END) {
+            return Exit.of(-1);
+        }
+        if (opcode == ActionDecoder.INVALID) {
+            return new InvalidInput(playerId, INVALID_INPUT_MESSAGE);
+        }
+        final var action = opcode2Action(playerId, opcode);
+        final var repeat = decoder.getRepeat();
+        return repeat > 1 && opcode != ActionDecoder.EXIT ? new Repeat(action, repeat) : action;
+    }
+
+    /**
+     * Fetches the actions already available in the stream, blocking only for the first one.
+     * The batch ends after an {@link Exit} action, including the one returned at the end of the stream.
+     *
+     * @param max The maximum number of actions to fetch, at most the length of {@code out}.
+     * @param out The array to store the actions in.
+     * @return The number of actions stored.
+     */
+    @Override
+    public int fetchActions(int max, @NotNull Action[] out) {
+        var count = 0;
+        while (count < max && (count == 0 || decoder.hasBufferedInput())) {
+            final var action = fetchAction();
+            out[count++] = action;
+            if (action instanceof Exit) {
+                break;
             }
-        } catch (NoSuchElementException e) {
-            return new Exit(-1);
+        }
+        return count;
+    }
+
+    /**
+     * Closes the input stream. Fetching afterwards returns an {@link Exit}, as at the end of the stream.
+     *
+     * @throws UncheckedIOException If the stream cannot be closed.
+     */
+    @Override
+    public void close() {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
+    /**
+     * @return The player id of the actions.
+     */
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * @return The number of bytes of the stream consumed by the actions fetched so far.
+     */
+    public long getOffset() {
+        return decoder.getOffset();
+    }
+
     /**
      * @param playerId The ID of the player.
      * @param s        The character denoting the action.
      * @return The corresponding action.
      */
     public static Action char2Action(int playerId, char s) {
-        return switch (s) {
-            case 'H', 'h' -> new Move.Left(playerId);
-            case 'J', 'j' -> new Move.Down(playerId);
-            case 'K', 'k' -> new Move.Up(playerId);
-            case 'L', 'l' -> new Move.Right(playerId);
-            case 'U', 'u' -> new Undo(playerId);
-            case 'E', 'e' -> new Exit(playerId);
-            default -> throw new IllegalArgumentException(String.valueOf(s));
+        final var opcode = ActionDecoder.opcodeOf(s);
+        if (opcode < 0) {
+            throw new IllegalArgumentException(String.valueOf(s));
+        }
+        return opcode2Action(playerId, opcode);
+    }
+
+    /**
+     * @param playerId The ID of the player.
+     * @param opcode   The opcode of the action, as decoded by {@link ActionDecoder}.
+     * @return The corresponding action, shared by all callers.
+     */
+    public static Action opcode2Action(int playerId, int opcode) {
+        return switch (opcode) {
+            case ActionDecoder.LEFT -> Move.Left.of(playerId);
+            case ActionDecoder.DOWN -> Move.Down.of(playerId);
+            case ActionDecoder.UP -> Move.Up.of(playerId);
+            case ActionDecoder.RIGHT -> Move.Right.of(playerId);
+            case ActionDecoder.UNDO -> Undo.of(playerId);
+            case ActionDecoder.EXIT -> Exit.of(playerId);
+            default -> throw new IllegalArgumentException("Invalid opcode: " + opcode);
         };
     }
 }
@@ -1,52 +1,526 @@
 package hk.ust.comp3021.replay;
 
 import hk.ust.comp3021.entities.Box;
-import hk.ust.comp3021.entities.Empty;
 import hk.ust.comp3021.entities.Player;
 import hk.ust.comp3021.entities.Wall;
+import hk.ust.comp3021.game.GameMap;
 import hk.ust.comp3021.game.GameState;
 import hk.ust.comp3021.game.Position;
 import hk.ust.comp3021.game.RenderingEngine;
+import hk.ust.comp3021.utils.ShouldNotReachException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 
 /**
  * A rendering engine that prints to the terminal.
+ * <p>
+ * Output is encoded into a reusable byte buffer, which is handed to the underlying channel or stream once per frame.
+ * When writing to a channel, messages are held back and written together with the next frame.
  */
-public class TerminalRenderingEngine implements RenderingEngine {
+public class TerminalRenderingEngine implements RenderingEngine, AutoCloseable {
 
-    private final PrintStream outputSteam;
+    /**
+     * How frames are written to the terminal.
+     */
+    public enum Mode {
+        /**
+         * Every frame prints the whole map, below the previous output.
+         */
+        FULL,
+
+        /**
+         * The map is painted once at the top of the terminal, and every following frame only rewrites the cells that
+         * changed, using ANSI cursor movements. Messages scroll in the region below the map.
+         * The map is painted again when another map is rendered or after {@link #invalidate()}.
+         * Painting clears the terminal, so messages written while no map is painted are held back and written below
+         * the map once it is painted.
+         */
+        DIFFERENTIAL,
+    }
+
+    /**
+     * A fixed-size window of the map, which follows one player or the centroid of all players.
+     * The window is kept inside the map, and shrinks to the map when the map is smaller.
+     *
+     * @param width    Number of columns of the window.
+     * @param height   Number of rows of the window.
+     * @param playerId The id of the player to follow, or {@link #ALL_PLAYERS} to follow the centroid of all players.
+     */
+    public record Viewport(int width, int height, int playerId) {
+        /**
+         * Player id of a viewport that follows the centroid of all players.
+         */
+        public static final int ALL_PLAYERS = -1;
+
+        public Viewport {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("Viewport size must be positive");
+            }
+            if (playerId < ALL_PLAYERS) {
+                throw new IllegalArgumentException("Invalid player id " + playerId);
+            }
+        }
+    }
+
+    /**
+     * The players and boxes of a game state, captured so that they can be rendered later, on another thread.
+     * Capturing takes time proportional to the number of players and boxes only.
+     */
+    public static final class Frame {
+        private final GameMap map;
+        private final int width;
+        private final int height;
+        // Index of the cell of each player and box in a rendered frame, where rows end with a newline
+        private final int[] cells;
+        private final char[] glyphs;
+
+        private Frame(@NotNull GameMap map, int width, int height, int @NotNull [] cells, char @NotNull [] glyphs) {
+            this.map = map;
+            this.width = width;
+            this.height = height;
+            this.cells = cells;
+            this.glyphs = glyphs;
+        }
+
+        /**
+         * Captures the players and boxes of a game state.
+         * Must be called while holding the lock the game state is modified under.
+         *
+         * @param state The game state.
+         * @return The captured frame, which does not change with the game state.
+         */
+        public static @NotNull Frame of(@NotNull GameState state) {
+            final var width = state.getMapMaxWidth();
+            final var positions = state.getMovablePositions();
+            final var cells = new int[positions.size()];
+            final var glyphs = new char[positions.size()];
+            for (int i = 0; i < cells.length; i++) {
+                final var position = positions.get(i);
+                cells[i] = position.y() * (width + 1) + position.x();
+                glyphs[i] = switch (state.getEntity(position)) {
+                    case Box b -> (char) (b.getPlayerId() + 'a');
+                    case Player p -> (char) (p.getId() + 'A');
+                    case null, default -> throw new ShouldNotReachException();
+                };
+            }
+            return new Frame(state.getGameMap(), width, state.getMapMaxHeight(), cells, glyphs);
+        }
+
+        @NotNull GameMap map() {
+            return map;
+        }
+
+        int width() {
+            return width;
+        }
+
+        int height() {
+            return height;
+        }
+
+        int @NotNull [] cells() {
+            return cells;
+        }
+
+        char @NotNull [] glyphs() {
+            return glyphs;
+        }
+    }
+
+    static final String ESC = "\033[";
+
+    /**
+     * Unchanged cells between two changed cells of a row are rewritten instead of moving the cursor over them
+     * when there are at most this many, since a cursor movement takes more bytes.
+     */
+    private static final int MAX_REWRITTEN_GAP = 4;
+
+    private final WritableByteChannel channel;
+
+    // Stream under the channel, flushed on close, or null when writing to a channel directly
+    private final @Nullable PrintStream outputSteam;
+
+    private final boolean coalesceMessages;
+
+    private final Mode mode;
+
+    private final FrameBuffer output = new FrameBuffer();
+
+    // Map the static layer was built for
+    private @Nullable GameMap templateMap;
+    private int width;
+    private int height;
+    // Walls, destinations, floor and void of the map, row by row, each row followed by a newline
+    private char @NotNull [] template = new char[0];
+    // The template with players and boxes drawn over it, updated in place
+    private char @NotNull [] frame = new char[0];
+    // Indices into the frame of the cells of players and boxes, which are the only ones that differ from the template
+    private int @NotNull [] dynamicCells = new int[0];
+    private int dynamicCellCount;
+    // Cells to compare against the previous frame, i.e. the dynamic cells of the previous and the current frame
+    private int @NotNull [] candidateCells = new int[0];
+
+    private @Nullable Viewport viewport;
+    // Part of the frame that is written, which is the whole frame without a viewport
+    private int windowX;
+    private int windowY;
+    private int windowWidth;
+    private int windowHeight;
+
+    // Window last written in DIFFERENTIAL mode, rows followed by a newline, or null when it should be painted again
+    private char @Nullable [] previousFrame;
+
+    // Messages written in DIFFERENTIAL mode before the map is painted, which painting would erase
+    private final StringBuilder heldMessages = new StringBuilder();
 
     /**
      * @param outputSteam The {@link PrintStream} to write the output to.
      */
     public TerminalRenderingEngine(@NotNull PrintStream outputSteam) {
+        this(outputSteam, Mode.FULL);
+    }
+
+    /**
+     * @param outputSteam The {@link PrintStream} to write the output to.
+     * @param mode        How frames are written. {@link Mode#DIFFERENTIAL} needs a terminal that understands ANSI
+     *                    escape sequences.
+     */
+    public TerminalRenderingEngine(@NotNull PrintStream outputSteam, @NotNull Mode mode) {
+        this(Channels.newChannel(outputSteam), outputSteam, false, mode);
+    }
+
+    /**
+     * Creates a rendering engine that writes to a channel, such as a {@link java.nio.channels.FileChannel} of the
+     * standard output. Messages are written together with the next frame, or by {@link #flush()} or {@link #close()}.
+     *
+     * @param channel The channel to write the output to. Writes from several rendering engines sharing the channel
+     *                do not interleave within a frame if the channel writes each buffer at once.
+     * @param mode    How frames are written.
+     */
+    public TerminalRenderingEngine(@NotNull WritableByteChannel channel, @NotNull Mode mode) {
+        this(channel, null, true, mode);
+    }
+
+    private TerminalRenderingEngine(@NotNull WritableByteChannel channel,
+                                    @Nullable PrintStream outputSteam,
+                                    boolean coalesceMessages,
+                                    @NotNull Mode mode) {
+        this.channel = channel;
         this.outputSteam = outputSteam;
+        this.coalesceMessages = coalesceMessages;
+        this.mode = mode;
     }
 
+    /**
+     * Renders the game state.
+     * Walls and destinations are drawn once per map; every frame only draws the players and boxes again,
+     * so the work done per frame, besides writing a full frame in {@link Mode#FULL} mode,
+     * grows with the number of players and boxes rather than with the size of the map.
+     * With a {@link Viewport}, only the cells of the window are written or compared.
+     *
+     * @param state The current game state.
+     * @throws UncheckedIOException If the output cannot be written.
+     */
     @Override
     public void render(@NotNull GameState state) {
-        final var builder = new StringBuilder();
-        for (int y = 0; y < state.getMapMaxHeight(); y++) {
-            for (int x = 0; x < state.getMapMaxWidth(); x++) {
-                final var entity = state.getEntity(Position.of(x, y));
-                final var charToPrint = switch (entity) {
+        render(Frame.of(state));
+    }
+
+    /**
+     * Renders a captured frame.
+     *
+     * @param captured The frame captured from the game state.
+     * @throws UncheckedIOException If the output cannot be written.
+     */
+    public synchronized void render(@NotNull Frame captured) {
+        final var candidateCount = updateFrame(captured);
+        final var windowMoved = updateWindow(captured);
+        if (mode == Mode.DIFFERENTIAL) {
+            appendDifference(candidateCount, windowMoved);
+        } else {
+            appendWindow();
+        }
+        writeOutput();
+    }
+
+    /**
+     * Renders only a window of the map from the next frame on.
+     *
+     * @param viewport The window to render, or null to render the whole map.
+     */
+    public synchronized void setViewport(@Nullable Viewport viewport) {
+        this.viewport = viewport;
+        previousFrame = null;
+    }
+
+    /**
+     * @throws UncheckedIOException If the output cannot be written.
+     */
+    @Override
+    public synchronized void message(@NotNull String content) {
+        if (mode == Mode.DIFFERENTIAL && previousFrame == null) {
+            heldMessages.append(content).append(System.lineSeparator());
+            return;
+        }
+        output.append(content).append(System.lineSeparator());
+        if (!coalesceMessages) {
+            writeOutput();
+        }
+    }
+
+    /**
+     * Writes the messages held back since the last frame.
+     * In {@link Mode#DIFFERENTIAL} mode, messages written before the map is painted still wait for the map.
+     *
+     * @throws UncheckedIOException If the output cannot be written.
+     */
+    public synchronized void flush() {
+        writeOutput();
+    }
+
+    /**
+     * Paints the whole map on the next frame, e.g. after the terminal has been resized or cleared.
+     */
+    public void invalidate() {
+        previousFrame = null;
+    }
+
+    /**
+     * Gives the whole terminal back to scrolling output if frames have been written in {@link Mode#DIFFERENTIAL}
+     * mode, and moves the cursor below the last output.
+     * Messages held back, even those waiting for the map to be painted, are written first.
+     * The output stream or channel is not closed.
+     *
+     * @throws UncheckedIOException If the output cannot be written.
+     */
+    @Override
+    public synchronized void close() {
+        if (previousFrame != null) {
+            // Resetting the scroll region homes the cursor, so keep it where the last message ended.
+            output.append("\0337").append(ESC).append('r').append("\0338");
+            previousFrame = null;
+        }
+        output.append(heldMessages);
+        heldMessages.setLength(0);
+        writeOutput();
+        if (outputSteam != null) {
+            outputSteam.flush();
+        }
+    }
+
+    private void writeOutput() {
+        if (output.size() == 0) {
+            return;
+        }
+        try {
+            output.writeTo(channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Erases the players and boxes of the previous frame and draws the current ones.
+     *
+     * @return The number of candidate cells that may have changed since the previous frame.
+     */
+    private int updateFrame(@NotNull Frame captured) {
+        if (captured.map != templateMap) {
+            templateMap = captured.map;
+            width = captured.width;
+            height = captured.height;
+            template = buildTemplate(captured.map, width, height);
+            frame = template.clone();
+            dynamicCellCount = 0;
+            previousFrame = null;
+        }
+        final var maxCandidates = dynamicCellCount + captured.cells.length;
+        if (candidateCells.length < maxCandidates) {
+            candidateCells = new int[maxCandidates];
+        }
+        if (dynamicCells.length < captured.cells.length) {
+            dynamicCells = Arrays.copyOf(dynamicCells, captured.cells.length);
+        }
+        int candidateCount = 0;
+        for (int i = 0; i < dynamicCellCount; i++) {
+            final var cell = dynamicCells[i];
+            frame[cell] = template[cell];
+            candidateCells[candidateCount++] = cell;
+        }
+        dynamicCellCount = 0;
+        for (int i = 0; i < captured.cells.length; i++) {
+            final var cell = captured.cells[i];
+            frame[cell] = captured.glyphs[i];
+            dynamicCells[dynamicCellCount++] = cell;
+            candidateCells[candidateCount++] = cell;
+        }
+        return candidateCount;
+    }
+
+    /**
+     * Builds the part of a frame that never changes during a game: walls, destinations, floor and void.
+     * Players and boxes are left out, since their cells are drawn on every frame.
+     */
+    static char @NotNull [] buildTemplate(@NotNull GameMap map, int width, int height) {
+        final var destinations = map.getDestinations();
+        final var template = new char[(width + 1) * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final var position = Position.of(x, y);
+                template[y * (width + 1) + x] = switch (map.getEntity(position)) {
                     case Wall ignored -> '#';
-                    case Box b -> (char) (b.getPlayerId() + 'a');
-                    case Player p -> (char) (p.getId() + 'A');
-                    case Empty ignored -> state.getDestinations().contains(new Position(x, y)) ? '@' : '.';
                     case null -> ' ';
+                    default -> destinations.contains(position) ? '@' : '.';
                 };
-                builder.append(charToPrint);
             }
-            builder.append('\n');
+            template[y * (width + 1) + width] = '\n';
         }
-        outputSteam.print(builder);
+        return template;
     }
 
-    @Override
-    public void message(@NotNull String content) {
-        outputSteam.println(content);
+    /**
+     * Moves the window so that it is centered on the followed players, as far as the map allows.
+     * The window stays where it is while none of the followed players are on the map.
+     *
+     * @return Whether the window moved or changed size.
+     */
+    private boolean updateWindow(@NotNull Frame captured) {
+        final var followed = viewport;
+        final int newWidth;
+        final int newHeight;
+        int newX = windowX;
+        int newY = windowY;
+        if (followed == null) {
+            newWidth = width;
+            newHeight = height;
+        } else {
+            newWidth = Math.min(followed.width(), width);
+            newHeight = Math.min(followed.height(), height);
+            long sumX = 0;
+            long sumY = 0;
+            int count = 0;
+            for (int i = 0; i < captured.cells.length; i++) {
+                // Players are drawn in upper case, boxes in lower case.
+                final var glyph = captured.glyphs[i];
+                if (glyph < 'a' && (followed.playerId() == Viewport.ALL_PLAYERS || glyph - 'A' == followed.playerId())) {
+                    sumX += captured.cells[i] % (width + 1);
+                    sumY += captured.cells[i] / (width + 1);
+                    count++;
+                }
+            }
+            if (count > 0) {
+                newX = (int) (sumX / count) - newWidth / 2;
+                newY = (int) (sumY / count) - newHeight / 2;
+            }
+        }
+        newX = Math.max(0, Math.min(newX, width - newWidth));
+        newY = Math.max(0, Math.min(newY, height - newHeight));
+        final var moved = newX != windowX || newY != windowY || newWidth != windowWidth || newHeight != windowHeight;
+        windowX = newX;
+        windowY = newY;
+        windowWidth = newWidth;
+        windowHeight = newHeight;
+        return moved;
+    }
+
+    private boolean isWholeFrame() {
+        return windowWidth == width && windowHeight == height;
+    }
+
+    private void appendWindow() {
+        if (isWholeFrame()) {
+            output.append(frame, 0, frame.length);
+            return;
+        }
+        for (int y = windowY; y < windowY + windowHeight; y++) {
+            output.append(frame, y * (width + 1) + windowX, windowWidth).append('\n');
+        }
+    }
+
+    private char @NotNull [] copyWindow() {
+        if (isWholeFrame()) {
+            return frame.clone();
+        }
+        final var copy = new char[(windowWidth + 1) * windowHeight];
+        for (int y = 0; y < windowHeight; y++) {
+            System.arraycopy(frame, (windowY + y) * (width + 1) + windowX, copy, y * (windowWidth + 1), windowWidth);
+            copy[y * (windowWidth + 1) + windowWidth] = '\n';
+        }
+        return copy;
+    }
+
+    private void appendDifference(int candidateCount, boolean windowMoved) {
+        final var previous = previousFrame;
+        if (previous == null || previous.length != (windowWidth + 1) * windowHeight) {
+            // Clear the terminal, paint the map at the top, and let messages scroll below it.
+            output.append(ESC).append('r').append(ESC).append('H').append(ESC).append("2J");
+            appendWindow();
+            output.append(ESC).append(windowHeight + 1).append('r');
+            output.append(ESC).append(windowHeight + 1).append(";1H");
+            output.append(heldMessages);
+            heldMessages.setLength(0);
+            previousFrame = copyWindow();
+        } else if (windowMoved) {
+            // Every cell of the window may show another cell of the map now.
+            final var windowCells = windowWidth * windowHeight;
+            if (candidateCells.length < windowCells) {
+                candidateCells = new int[windowCells];
+            }
+            int count = 0;
+            for (int y = windowY; y < windowY + windowHeight; y++) {
+                for (int x = windowX; x < windowX + windowWidth; x++) {
+                    candidateCells[count++] = y * (width + 1) + x;
+                }
+            }
+            appendChangedCells(previous, count);
+        } else {
+            appendChangedCells(previous, candidateCount);
+        }
+    }
+
+    /**
+     * Appends the cursor movements and characters that turn the previous window into the current one,
+     * between saving and restoring the cursor position of the message region, and updates the previous window.
+     * Candidate cells outside the window are skipped.
+     */
+    private void appendChangedCells(char @NotNull [] previous, int candidateCount) {
+        Arrays.sort(candidateCells, 0, candidateCount);
+        var changed = false;
+        // Cell the cursor is at after the last written cell, or -1 if it is not in a row of the window
+        int cursor = -1;
+        for (int i = 0; i < candidateCount; i++) {
+            final var cell = candidateCells[i];
+            final var row = cell / (width + 1) - windowY;
+            final var column = cell % (width + 1) - windowX;
+            if (row < 0 || row >= windowHeight || column < 0 || column >= windowWidth) {
+                continue;
+            }
+            final var screenCell = row * (windowWidth + 1) + column;
+            if (frame[cell] == previous[screenCell]) {
+                continue;
+            }
+            if (!changed) {
+                output.append("\0337");
+                changed = true;
+            }
+            if (cursor >= 0 && cell / (width + 1) == cursor / (width + 1) && cell - cursor <= MAX_REWRITTEN_GAP) {
+                output.append(frame, cursor, cell - cursor);
+            } else {
+                output.append(ESC).append(row + 1).append(';').append(column + 1).append('H');
+            }
+            output.append(frame[cell]);
+            previous[screenCell] = frame[cell];
+            cursor = cell + 1;
+        }
+        if (changed) {
+            output.append("\0338");
+        }
     }
 }
@@ -0,0 +1,483 @@
+package hk.ust.comp3021.solver;
+
+import hk.ust.comp3021.entities.Box;
+import hk.ust.comp3021.entities.Entity;
+import hk.ust.comp3021.entities.Player;
+import hk.ust.comp3021.entities.Wall;
+import hk.ust.comp3021.game.GameMap;
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.Position;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * A compact, array-backed copy of a Sokoban board used by the solvers.
+ * <p>
+ * Cells are addressed by their index {@code y * width + x}.
+ * Positions without any entity (outside the closed boundary) are treated as walls.
+ * <p>
+ * A board is mutable so that plans can be simulated cheaply; use {@link #copy()} before mutating a shared board.
+ */
+public final class Board {
+
+    /**
+     * Maximum number of players supported by the game.
+     */
+    public static final int MAX_PLAYERS = 26;
+
+    /**
+     * Direction index of moving left.
+     */
+    public static final int LEFT = 0;
+
+    /**
+     * Direction index of moving down.
+     */
+    public static final int DOWN = 1;
+
+    /**
+     * Direction index of moving up.
+     */
+    public static final int UP = 2;
+
+    /**
+     * Direction index of moving right.
+     */
+    public static final int RIGHT = 3;
+
+    /**
+     * Action file characters of each direction, indexed by direction index.
+     */
+    private static final char[] DIRECTION_CHARS = {'H', 'J', 'K', 'L'};
+
+    private final int width;
+
+    private final int height;
+
+    private final boolean[] walls;
+
+    private final boolean[] destinations;
+
+    private final int[] boxOwners;
+
+    private final int[] playerCells;
+
+    private Board(int width, int height, boolean[] walls, boolean[] destinations, int[] boxOwners, int[] playerCells) {
+        this.width = width;
+        this.height = height;
+        this.walls = walls;
+        this.destinations = destinations;
+        this.boxOwners = boxOwners;
+        this.playerCells = playerCells;
+    }
+
+    /**
+     * Creates a board from the initial layout of a game map.
+     *
+     * @param map The game map.
+     * @return The board.
+     */
+    public static @NotNull Board of(@NotNull GameMap map) {
+        return of(map.getMaxWidth(), map.getMaxHeight(), map::getEntity, map.getDestinations()::contains);
+    }
+
+    /**
+     * Creates a board from the current layout of a running game.
+     * Callers are responsible for holding the lock of the game state if it may be modified concurrently.
+     *
+     * @param state The game state.
+     * @return The board.
+     */
+    public static @NotNull Board of(@NotNull GameState state) {
+        return of(state.getMapMaxWidth(), state.getMapMaxHeight(), state::getEntity, state.getDestinations()::contains);
+    }
+
+    private static Board of(int width,
+                            int height,
+                            Function<Position, Entity> entities,
+                            Predicate<Position> isDestination) {
+        final var size = width * height;
+        final var walls = new boolean[size];
+        final var destinations = new boolean[size];
+        final var boxOwners = new int[size];
+        final var playerCells = new int[MAX_PLAYERS];
+        Arrays.fill(boxOwners, -1);
+        Arrays.fill(playerCells, -1);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final var cell = y * width + x;
+                final var position = Position.of(x, y);
+                final var entity = entities.apply(position);
+                if (entity == null || entity instanceof Wall) {
+                    walls[cell] = true;
+                } else if (entity instanceof Box box) {
+                    boxOwners[cell] = box.getPlayerId();
+                } else if (entity instanceof Player player) {
+                    playerCells[player.getId()] = cell;
+                }
+                destinations[cell] = isDestination.test(position);
+            }
+        }
+        return new Board(width, height, walls, destinations, boxOwners, playerCells);
+    }
+
+    /**
+     * @return A deep copy of this board.
+     */
+    public @NotNull Board copy() {
+        return new Board(width, height, walls, destinations, boxOwners.clone(), playerCells.clone());
+    }
+
+    /**
+     * @return The width of the board.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The height of the board.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The number of cells of the board.
+     */
+    public int size() {
+        return walls.length;
+    }
+
+    /**
+     * @param cell The cell index.
+     * @return True if the cell is a wall or outside the boundary.
+     */
+    public boolean isWall(int cell) {
+        return walls[cell];
+    }
+
+    /**
+     * @param cell The cell index.
+     * @return True if the cell is a box destination.
+     */
+    public boolean isDestination(int cell) {
+        return destinations[cell];
+    }
+
+    /**
+     * @param cell The cell index.
+     * @return The id of the player owning the box at the cell, or -1 if there is no box.
+     */
+    public int getBoxOwner(int cell) {
+        return boxOwners[cell];
+    }
+
+    /**
+     * @param playerId The player id.
+     * @return The cell of the player, or -1 if the player is not on the board.
+     */
+    public int getPlayerCell(int playerId) {
+        return playerCells[playerId];
+    }
+
+    /**
+     * @param cell The cell index.
+     * @return The id of the player standing on the cell, or -1 if there is none.
+     */
+    public int getPlayerAt(int cell) {
+        for (int id = 0; id < MAX_PLAYERS; id++) {
+            if (playerCells[id] == cell) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The ids of all players on the board in ascending order.
+     */
+    public int @NotNull [] getPlayerIds() {
+        return IntStream.range(0, MAX_PLAYERS).filter(id -> playerCells[id] >= 0).toArray();
+    }
+
+    /**
+     * @param playerId The player id.
+     * @return The cells of all boxes owned by the player in ascending order.
+     */
+    public int @NotNull [] getBoxCells(int playerId) {
+        return IntStream.range(0, boxOwners.length).filter(c -> boxOwners[c] == playerId).toArray();
+    }
+
+    /**
+     * @param cell The cell index.
+     * @return True if no wall, box or player occupies the cell.
+     */
+    public boolean isFree(int cell) {
+        return !walls[cell] && boxOwners[cell] < 0 && getPlayerAt(cell) < 0;
+    }
+
+    /**
+     * @param playerId The player id.
+     * @return True if all boxes of the player are on destinations.
+     */
+    public boolean isSolvedFor(int playerId) {
+        for (int cell = 0; cell < boxOwners.length; cell++) {
+            if (boxOwners[cell] == playerId && !destinations[cell]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return True if all boxes are on destinations, i.e. the game is won.
+     */
+    public boolean isSolved() {
+        for (int cell = 0; cell < boxOwners.length; cell++) {
+            if (destinations[cell] && boxOwners[cell] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param cell      The cell index.
+     * @param direction The direction index.
+     * @return The index of the neighbouring cell in the direction.
+     */
+    public int neighbour(int cell, int direction) {
+        return cell + delta(direction);
+    }
+
+    /**
+     * @param direction The direction index.
+     * @return The index offset of moving one step in the direction.
+     */
+    public int delta(int direction) {
+        return switch (direction) {
+            case LEFT -> -1;
+            case DOWN -> width;
+            case UP -> -width;
+            case RIGHT -> 1;
+            default -> throw new IllegalArgumentException("Invalid direction: " + direction);
+        };
+    }
+
+    /**
+     * @param direction The direction index.
+     * @return The action file character of the direction.
+     */
+    public static char directionChar(int direction) {
+        return DIRECTION_CHARS[direction];
+    }
+
+    /**
+     * @param c An action file character.
+     * @return The direction index of the character, or -1 if it is not a move.
+     */
+    public static int directionOf(char c) {
+        for (int direction = 0; direction < DIRECTION_CHARS.length; direction++) {
+            if (DIRECTION_CHARS[direction] == c) {
+                return direction;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves a player one step following the rules of the game.
+     *
+     * @param playerId  The player to move.
+     * @param direction The direction index.
+     * @return True if the move succeeded; false if the game would reject it and the board is left unchanged.
+     */
+    public boolean move(int playerId, int direction) {
+        final var from = playerCells[playerId];
+        final var to = neighbour(from, direction);
+        if (walls[to] || getPlayerAt(to) >= 0) {
+            return false;
+        }
+        final var owner = boxOwners[to];
+        if (owner >= 0) {
+            final var boxTo = neighbour(to, direction);
+            if (owner != playerId || !isFree(boxTo)) {
+                return false;
+            }
+            boxOwners[boxTo] = owner;
+            boxOwners[to] = -1;
+        }
+        playerCells[playerId] = to;
+        return true;
+    }
+
+    /**
+     * Finds a direction in which the game would reject a move of the player, so that the move can be used to wait a turn.
+     *
+     * @param playerId The player id.
+     * @return The direction index, or -1 if every direction would change the board.
+     */
+    public int findBlockedDirection(int playerId) {
+        final var from = playerCells[playerId];
+        var fallback = -1;
+        for (int direction = 0; direction < DIRECTION_CHARS.length; direction++) {
+            final var to = neighbour(from, direction);
+            if (walls[to]) {
+                return direction;
+            }
+            final var owner = boxOwners[to];
+            if (getPlayerAt(to) >= 0 || (owner >= 0 && (owner != playerId || !isFree(neighbour(to, direction))))) {
+                fallback = fallback < 0 ? direction : fallback;
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Identifies the region a player can walk in without pushing any box.
+     * Other players are walked through, since they keep moving, so the region only changes when boxes do.
+     *
+     * @param playerId The player id.
+     * @return The smallest cell reachable by the player.
+     */
+    public int getRegion(int playerId) {
+        final var start = playerCells[playerId];
+        final var visited = new boolean[walls.length];
+        final var queue = new int[walls.length];
+        var head = 0;
+        var tail = 0;
+        var region = start;
+        visited[start] = true;
+        queue[tail++] = start;
+        while (head < tail) {
+            final var cell = queue[head++];
+            region = Math.min(region, cell);
+            for (int direction = 0; direction < DIRECTION_CHARS.length; direction++) {
+                final var next = neighbour(cell, direction);
+                if (!visited[next] && !walls[next] && boxOwners[next] < 0) {
+                    visited[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return region;
+    }
+
+    /**
+     * @return The parts of the board that never change, i.e. its size, walls and destinations.
+     */
+    public @NotNull Layout getLayout() {
+        return new Layout(width, walls, destinations);
+    }
+
+    /**
+     * The parts of a board that never change. Two layouts are equal if their cells are, not just their hashes.
+     */
+    public static final class Layout {
+        private final int width;
+        private final boolean[] walls;
+        private final boolean[] destinations;
+        private final int hash;
+
+        private Layout(int width, boolean[] walls, boolean[] destinations) {
+            // The arrays are shared with the board, which never mutates them.
+            this.width = width;
+            this.walls = walls;
+            this.destinations = destinations;
+            this.hash = 31 * (31 * width + Arrays.hashCode(walls)) + Arrays.hashCode(destinations);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Layout layout
+                    && hash == layout.hash
+                    && width == layout.width
+                    && Arrays.equals(walls, layout.walls)
+                    && Arrays.equals(destinations, layout.destinations);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Finds a shortest walk of a player to the target cell without pushing any box.
+     *
+     * @param playerId The player to walk.
+     * @param target   The target cell.
+     * @return The direction indices of the walk, or null if the target is unreachable.
+     */
+    public int @Nullable [] findPath(int playerId, int target) {
+        final var start = playerCells[playerId];
+        if (start == target) {
+            return new int[0];
+        }
+        final var previous = new int[walls.length];
+        Arrays.fill(previous, -1);
+        previous[start] = start;
+        final var queue = new int[walls.length];
+        var head = 0;
+        var tail = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            final var cell = queue[head++];
+            for (int direction = 0; direction < DIRECTION_CHARS.length; direction++) {
+                final var next = neighbour(cell, direction);
+                if (previous[next] >= 0 || !isFree(next)) {
+                    continue;
+                }
+                previous[next] = cell;
+                if (next == target) {
+                    return tracePath(previous, start, target);
+                }
+                queue[tail++] = next;
+            }
+        }
+        return null;
+    }
+
+    private int[] tracePath(int[] previous, int start, int target) {
+        var length = 0;
+        for (int cell = target; cell != start; cell = previous[cell]) {
+            length++;
+        }
+        final var path = new int[length];
+        for (int cell = target; cell != start; cell = previous[cell]) {
+            path[--length] = directionBetween(previous[cell], cell);
+        }
+        return path;
+    }
+
+    private int directionBetween(int from, int to) {
+        for (int direction = 0; direction < DIRECTION_CHARS.length; direction++) {
+            if (neighbour(from, direction) == to) {
+                return direction;
+            }
+        }
+        throw new IllegalArgumentException("Cells are not adjacent");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Board board)) return false;
+        return width == board.width
+                && Arrays.equals(boxOwners, board.boxOwners)
+                && Arrays.equals(playerCells, board.playerCells)
+                && Arrays.equals(walls, board.walls)
+                && Arrays.equals(destinations, board.destinations);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(boxOwners) + Arrays.hashCode(playerCells);
+    }
+}
@@ -0,0 +1,233 @@
+package hk.ust.comp3021.solver;
+
+import hk.ust.comp3021.game.GameMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * A multi-player solver using prioritised planning.
+ * <p>
+ * Players are planned one after another in a priority order.
+ * Each player may only push its own boxes, so the plan of a player only needs to treat the other players and their
+ * boxes as obstacles standing where the earlier plans left them.
+ * The plans are then scheduled in round-robin order: in each round, the player whose plan is running performs its
+ * next move, and every other player waits by bumping into an obstacle, which the game rejects without changing the
+ * state.
+ * <p>
+ * Several priority orders are tried in parallel on the common fork-join pool, and plans of players on identical boards
+ * are shared between orders.
+ * The solution of the earliest successful order is returned.
+ */
+public class CooperativeSolver {
+
+    /**
+     * Default maximum number of priority orders to try.
+     */
+    public static final int DEFAULT_MAX_ORDERS = 64;
+
+    private static final int EXHAUSTIVE_ORDER_PLAYERS = 4;
+
+    private final PushSolver pushSolver;
+
+    private final Duration timeLimit;
+
+    private final int maxOrders;
+
+    /**
+     * Create a solver with the given time limit and the default settings.
+     *
+     * @param timeLimit The time limit of one {@link #solve(GameMap)} call.
+     */
+    public CooperativeSolver(@NotNull Duration timeLimit) {
+        this(new PushSolver(), timeLimit, DEFAULT_MAX_ORDERS);
+    }
+
+    /**
+     * @param pushSolver The solver used to plan each player.
+     * @param timeLimit  The time limit of one {@link #solve(GameMap)} call.
+     * @param maxOrders  The maximum number of priority orders to try.
+     */
+    public CooperativeSolver(@NotNull PushSolver pushSolver, @NotNull Duration timeLimit, int maxOrders) {
+        this.pushSolver = pushSolver;
+        this.timeLimit = timeLimit;
+        this.maxOrders = maxOrders;
+    }
+
+    /**
+     * Solves a game map.
+     *
+     * @param map The game map.
+     * @return The solution, or null if none was found within the time limit.
+     */
+    public @Nullable Solution solve(@NotNull GameMap map) {
+        final var deadline = System.nanoTime() + timeLimit.toNanos();
+        final var board = Board.of(map);
+        final var orders = candidateOrders(board.getPlayerIds());
+        final var solutions = new AtomicReferenceArray<Solution>(orders.size());
+        final var best = new AtomicInteger(Integer.MAX_VALUE);
+        final var plans = new ConcurrentHashMap<PlanKey, int[]>();
+        IntStream.range(0, orders.size()).parallel().forEach(i -> {
+            if (best.get() < i || System.nanoTime() - deadline > 0) {
+                return;
+            }
+            final var solution = solveInOrder(board, orders.get(i), deadline, () -> best.get() < i, plans);
+            if (solution != null && solution.isWinning(map)) {
+                solutions.set(i, solution);
+                best.accumulateAndGet(i, Math::min);
+            }
+        });
+        return best.get() == Integer.MAX_VALUE ? null : solutions.get(best.get());
+    }
+
+    /**
+     * A player to plan for on a board, used to share plans between priority orders.
+     */
+    private record PlanKey(Board board, int playerId) {
+    }
+
+    /**
+     * The moves of a player while all other players wait.
+     */
+    private record Phase(int playerId, int[] moves) {
+    }
+
+    private @Nullable Solution solveInOrder(Board initial,
+                                            int[] order,
+                                            long deadline,
+                                            BooleanSupplier cancelled,
+                                            Map<PlanKey, int[]> plans) {
+        final var board = initial.copy();
+        final var phases = new ArrayList<Phase>();
+        for (final var playerId : order) {
+            if (board.isSolvedFor(playerId)) {
+                continue;
+            }
+            final var key = new PlanKey(board.copy(), playerId);
+            var moves = plans.get(key);
+            if (moves == null) {
+                final var pushes = pushSolver.solve(board, playerId, deadline, cancelled);
+                if (pushes == null) {
+                    return null;
+                }
+                moves = PushSolver.toMoves(board.copy(), playerId, pushes);
+                if (moves == null) {
+                    return null;
+                }
+                plans.putIfAbsent(key, moves);
+            }
+            for (final var move : moves) {
+                board.move(playerId, move);
+            }
+            phases.add(new Phase(playerId, moves));
+        }
+        if (!board.isSolved()) {
+            return null;
+        }
+        return schedule(initial, phases);
+    }
+
+    /**
+     * Interleaves the plans in round-robin order, letting idle players wait by bumping into obstacles.
+     *
+     * @param initial The initial board.
+     * @param phases  The plans of the players in priority order.
+     * @return The solution, or null if some idle player has no way to wait.
+     */
+    private @Nullable Solution schedule(Board initial, List<Phase> phases) {
+        final var board = initial.copy();
+        final var players = board.getPlayerIds();
+        final var actions = new HashMap<Integer, StringBuilder>();
+        for (final var playerId : players) {
+            actions.put(playerId, new StringBuilder());
+        }
+        var phase = 0;
+        var step = 0;
+        while (!board.isSolved() && phase < phases.size()) {
+            for (final var playerId : players) {
+                if (board.isSolved()) {
+                    break;
+                }
+                final var builder = actions.get(playerId);
+                if (phase < phases.size() && phases.get(phase).playerId() == playerId) {
+                    final var moves = phases.get(phase).moves();
+                    board.move(playerId, moves[step]);
+                    builder.append(Board.directionChar(moves[step]));
+                    if (++step == moves.length) {
+                        phase++;
+                        step = 0;
+                    }
+                } else {
+                    final var direction = board.findBlockedDirection(playerId);
+                    if (direction < 0) {
+                        return null;
+                    }
+                    builder.append(Board.directionChar(direction));
+                }
+            }
+        }
+        if (!board.isSolved()) {
+            return null;
+        }
+        final var result = new HashMap<Integer, String>();
+        actions.forEach((playerId, builder) -> result.put(playerId, builder.toString()));
+        return new Solution(result);
+    }
+
+    /**
+     * @param players The player ids.
+     * @return Priority orders to try, starting with the ascending order.
+     */
+    private List<int[]> candidateOrders(int[] players) {
+        final var orders = new LinkedHashSet<List<Integer>>();
+        final var base = Arrays.stream(players).boxed().toList();
+        if (players.length <= EXHAUSTIVE_ORDER_PLAYERS) {
+            permutations(new ArrayList<>(base), 0, orders);
+        } else {
+            for (int shift = 0; shift < players.length; shift++) {
+                final var rotated = new ArrayList<>(base);
+                Collections.rotate(rotated, -shift);
+                orders.add(rotated);
+                final var reversed = new ArrayList<>(rotated);
+                Collections.reverse(reversed);
+                orders.add(reversed);
+            }
+            final var random = new Random(players.length);
+            for (int attempt = 0; attempt < maxOrders && orders.size() < maxOrders; attempt++) {
+                final var shuffled = new ArrayList<>(base);
+                Collections.shuffle(shuffled, random);
+                orders.add(shuffled);
+            }
+        }
+        return orders.stream()
+                .limit(maxOrders)
+                .map(order -> order.stream().mapToInt(Integer::intValue).toArray())
+                .toList();
+    }
+
+    private static void permutations(List<Integer> order, int fixed, LinkedHashSet<List<Integer>> result) {
+        if (fixed == order.size()) {
+            result.add(List.copyOf(order));
+            return;
+        }
+        for (int i = fixed; i < order.size(); i++) {
+            Collections.swap(order, fixed, i);
+            permutations(order, fixed + 1, result);
+            Collections.swap(order, fixed, i);
+        }
+    }
+}
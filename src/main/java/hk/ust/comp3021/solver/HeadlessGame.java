@@ -0,0 +1,79 @@
+package hk.ust.comp3021.solver;
+
+import hk.ust.comp3021.actions.Action;
+import hk.ust.comp3021.actions.ActionResult;
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.game.AbstractSokobanGame;
+import hk.ust.comp3021.game.GameMap;
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.InputEngine;
+import hk.ust.comp3021.replay.StreamInputEngine;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A game without rendering engine, used to check actions against the actual rules of the game.
+ * <p>
+ * The game is either {@link #run() run} from its input engine, or driven directly by the caller with
+ * {@link #apply(Action)}, e.g. to inspect the game state between actions.
+ */
+public class HeadlessGame extends AbstractSokobanGame {
+
+    @NotNull
+    private final InputEngine inputEngine;
+
+    /**
+     * Creates a game driven by the caller. Running it returns right away, since it has no input.
+     *
+     * @param map The game map.
+     */
+    public HeadlessGame(@NotNull GameMap map) {
+        this(map, Exit::new);
+    }
+
+    /**
+     * @param map         The game map.
+     * @param inputEngine The engine {@link #run()} takes the actions from.
+     */
+    public HeadlessGame(@NotNull GameMap map, @NotNull InputEngine inputEngine) {
+        super(new GameState(map));
+        this.inputEngine = inputEngine;
+    }
+
+    /**
+     * @param action The action to perform.
+     * @return The result of the action.
+     */
+    public @NotNull ActionResult apply(@NotNull Action action) {
+        return processAction(action);
+    }
+
+    /**
+     * @param playerId The player performing the action.
+     * @param action   The action character.
+     * @return The result of the action.
+     */
+    public @NotNull ActionResult apply(int playerId, char action) {
+        return apply(StreamInputEngine.char2Action(playerId, action));
+    }
+
+    /**
+     * @return The current state of the game. It is changed by the actions applied afterwards.
+     */
+    public @NotNull GameState getState() {
+        return state;
+    }
+
+    public boolean isWin() {
+        return state.isWin();
+    }
+
+    /**
+     * Applies the actions of the input engine until the game is won or an {@link Exit} is fetched.
+     */
+    @Override
+    public void run() {
+        while (!shouldStop()) {
+            apply(inputEngine.fetchAction());
+        }
+    }
+}
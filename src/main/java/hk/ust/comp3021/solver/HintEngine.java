@@ -0,0 +1,318 @@
+package hk.ust.comp3021.solver;
+
+import hk.ust.comp3021.actions.Move;
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.replay.StreamInputEngine;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A service recommending the next move of a player within a fixed latency budget.
+ * <p>
+ * Plans are cached by the part of the board they depend on: the region the player can walk in, the boxes of the
+ * player and the boxes of other players.
+ * When a hint is the push itself, the layout right after the push is cached too, so following the hints keeps hitting
+ * the cache without simulating the whole plan up front, and a push by another player only invalidates the entries
+ * containing the moved box.
+ * Other players are not part of the key, not even as obstacles of the region, since they keep moving; a cached plan
+ * whose next step they block is searched again.
+ * The budget is checked before every expansion of the search. When a search does not finish within the budget, no
+ * hint is given and the search continues in the background, on a few threads dedicated to hint searches, to fill the
+ * cache for the next call.
+ */
+public class HintEngine {
+
+    /**
+     * Default latency budget of one hint.
+     */
+    public static final Duration DEFAULT_LATENCY_BUDGET = Duration.ofMillis(5);
+
+    /**
+     * Default maximum number of cached layouts.
+     */
+    public static final int DEFAULT_CACHE_CAPACITY = 100_000;
+
+    /**
+     * Time budget of a search continued in the background.
+     */
+    public static final Duration BACKGROUND_BUDGET = Duration.ofSeconds(10);
+
+    /**
+     * Number of background searches waiting for a thread before further ones are dropped.
+     */
+    private static final int MAX_QUEUED_SEARCHES = 64;
+
+    /**
+     * Executor of the engines created without one. Background searches are CPU-bound and may take the whole
+     * {@link #BACKGROUND_BUDGET}, so they run on a few threads of their own rather than on the common fork-join pool,
+     * which parallel streams and other tasks of the game rely on.
+     */
+    private static final ExecutorService SEARCH_EXECUTOR = newSearchExecutor();
+
+    private final PushSolver solver;
+
+    private final Duration latencyBudget;
+
+    private final Executor executor;
+
+    private final Map<Key, Hint> cache;
+
+    private final Set<Key> searching = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private final LongAdder totalLatency = new LongAdder();
+
+    private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Statistics of the hints given so far.
+     *
+     * @param hits              Number of hints answered from the cache.
+     * @param misses            Number of hints that needed a search.
+     * @param timeouts          Number of searches that did not finish within the budget.
+     * @param totalLatencyNanos Sum of the latencies of all hints, in nanoseconds.
+     * @param maxLatencyNanos   Maximum latency of a hint, in nanoseconds.
+     */
+    public record Metrics(long hits, long misses, long timeouts, long totalLatencyNanos, long maxLatencyNanos) {
+
+        /**
+         * @return The ratio of hints answered from the cache.
+         */
+        public double hitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        /**
+         * @return The mean latency of a hint, in nanoseconds.
+         */
+        public long averageLatencyNanos() {
+            return hits + misses == 0 ? 0 : totalLatencyNanos / (hits + misses);
+        }
+    }
+
+    /**
+     * The part of a board a plan depends on.
+     */
+    private record Key(Board.Layout layout, int region, int[] boxes, int[] obstacles) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key
+                    && region == key.region
+                    && layout.equals(key.layout)
+                    && Arrays.equals(boxes, key.boxes)
+                    && Arrays.equals(obstacles, key.obstacles);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * layout.hashCode() + region) + Arrays.hashCode(boxes)) + Arrays.hashCode(obstacles);
+        }
+    }
+
+    /**
+     * The pushes remaining from a cached layout.
+     */
+    private record Hint(List<PushSolver.Push> pushes, int offset) {
+    }
+
+    /**
+     * Create a hint engine with the given latency budget and the default settings.
+     *
+     * @param latencyBudget The latency budget of one hint.
+     */
+    public HintEngine(@NotNull Duration latencyBudget) {
+        this(new PushSolver(), latencyBudget, DEFAULT_CACHE_CAPACITY, SEARCH_EXECUTOR);
+    }
+
+    /**
+     * @param solver        The solver used for planning.
+     * @param latencyBudget The latency budget of one hint.
+     * @param cacheCapacity The maximum number of cached layouts. The least recently used ones are evicted first.
+     * @param executor      The executor running searches that exceed the budget. Searches it rejects are dropped.
+     */
+    public HintEngine(@NotNull PushSolver solver, @NotNull Duration latencyBudget, int cacheCapacity, @NotNull Executor executor) {
+        this.solver = solver;
+        this.latencyBudget = latencyBudget;
+        this.executor = executor;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Hint> eldest) {
+                return size() > cacheCapacity;
+            }
+        };
+    }
+
+    /**
+     * Recommends the next move of a player.
+     * The engine synchronizes on the game state while reading it.
+     *
+     * @param state    The game state.
+     * @param playerId The player to give the hint to.
+     * @return The recommended move, or {@link Optional#empty()} if all boxes of the player are on destinations, or if
+     * no plan is found within the latency budget.
+     */
+    public @NotNull Optional<Move> nextMove(@NotNull GameState state, int playerId) {
+        final var start = System.nanoTime();
+        try {
+            final Board board;
+            synchronized (state) {
+                board = Board.of(state);
+            }
+            if (board.getPlayerCell(playerId) < 0) {
+                return Optional.empty();
+            }
+            return Optional.ofNullable(hint(board, playerId, start + latencyBudget.toNanos()));
+        } finally {
+            final var latency = System.nanoTime() - start;
+            totalLatency.add(latency);
+            maxLatency.accumulate(latency);
+        }
+    }
+
+    /**
+     * @return The statistics of the hints given so far.
+     */
+    public @NotNull Metrics getMetrics() {
+        return new Metrics(hits.sum(), misses.sum(), timeouts.sum(), totalLatency.sum(), maxLatency.get());
+    }
+
+    private @Nullable Move hint(Board board, int playerId, long deadline) {
+        final var key = keyOf(board, playerId);
+        final var cached = lookup(key);
+        if (cached != null) {
+            final var path = pathTo(board, playerId, cached);
+            if (path != null) {
+                hits.increment();
+                return firstMove(board, playerId, cached, path);
+            }
+        }
+        misses.increment();
+        final var pushes = solver.solve(board, playerId, deadline);
+        if (pushes == null) {
+            if (System.nanoTime() - deadline > 0) {
+                timeouts.increment();
+                searchInBackground(board, playerId, key);
+            }
+            return null;
+        }
+        final var hint = new Hint(pushes, 0);
+        store(key, hint);
+        final var path = pathTo(board, playerId, hint);
+        return path == null ? null : firstMove(board, playerId, hint, path);
+    }
+
+    /**
+     * @return The moves to the cell the next push starts from, or null if the cell is not reachable.
+     * An empty array is returned if no push remains.
+     */
+    private static int @Nullable [] pathTo(Board board, int playerId, Hint hint) {
+        if (hint.offset() == hint.pushes().size()) {
+            return new int[0];
+        }
+        final var push = hint.pushes().get(hint.offset());
+        if (!board.isFree(push.boxCell() + board.delta(push.direction()))) {
+            return null;
+        }
+        return board.findPath(playerId, push.boxCell() - board.delta(push.direction()));
+    }
+
+    /**
+     * @return The first move of the path, or the next push if the path is empty. In that case, the layout after the
+     * push is cached as well.
+     */
+    private @Nullable Move firstMove(Board board, int playerId, Hint hint, int[] path) {
+        if (hint.offset() == hint.pushes().size()) {
+            return null;
+        }
+        final int direction;
+        if (path.length > 0) {
+            direction = path[0];
+        } else {
+            direction = hint.pushes().get(hint.offset()).direction();
+            final var pushed = board.copy();
+            pushed.move(playerId, direction);
+            store(keyOf(pushed, playerId), new Hint(hint.pushes(), hint.offset() + 1));
+        }
+        return (Move) StreamInputEngine.char2Action(playerId, Board.directionChar(direction));
+    }
+
+    private void searchInBackground(Board board, int playerId, Key key) {
+        if (!searching.add(key)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    final var pushes = solver.solve(board, playerId, System.nanoTime() + BACKGROUND_BUDGET.toNanos());
+                    if (pushes != null) {
+                        store(key, new Hint(pushes, 0));
+                    }
+                } finally {
+                    searching.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Too many searches are waiting; a later miss on the same layout searches again.
+            searching.remove(key);
+        }
+    }
+
+    private static ExecutorService newSearchExecutor() {
+        final var threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        final var executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(MAX_QUEUED_SEARCHES), runnable -> {
+            final var thread = new Thread(runnable, "hint-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private void store(Key key, Hint hint) {
+        synchronized (cache) {
+            cache.put(key, hint);
+        }
+    }
+
+    private @Nullable Hint lookup(Key key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private static Key keyOf(Board board, int playerId) {
+        final var obstacles = new int[board.size()];
+        var count = 0;
+        for (int cell = 0; cell < board.size(); cell++) {
+            final var owner = board.getBoxOwner(cell);
+            if (owner >= 0 && owner != playerId) {
+                obstacles[count++] = cell;
+            }
+        }
+        return new Key(board.getLayout(), board.getRegion(playerId), board.getBoxCells(playerId),
+                Arrays.copyOf(obstacles, count));
+    }
+}
@@ -0,0 +1,174 @@
+package hk.ust.comp3021.solver;
+
+import hk.ust.comp3021.game.GameMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.TreeMap;
+
+/**
+ * A fingerprint of a game map that is the same for all rotations and mirror images of the map.
+ * <p>
+ * The map is encoded in each of its 8 orientations, and the smallest encoding is taken as the canonical one.
+ * The fingerprint remembers the orientation of the fingerprinted map relative to the canonical one, so that solutions
+ * can be converted between the two with {@link #toCanonical(Solution)} and {@link #fromCanonical(Solution)}.
+ * <p>
+ * Walls and positions outside the boundary are not distinguished, and the undo limit is ignored, since neither
+ * affects the solutions of a map.
+ */
+public final class MapFingerprint {
+
+    private static final int SYMMETRIES = 8;
+
+    private static final int TRANSPOSE = 4;
+
+    private static final int FLIP_X = 2;
+
+    private static final int FLIP_Y = 1;
+
+    private static final int[] DX = {-1, 0, 0, 1};
+
+    private static final int[] DY = {0, 1, -1, 0};
+
+    private final String hash;
+
+    private final int symmetry;
+
+    private MapFingerprint(String hash, int symmetry) {
+        this.hash = hash;
+        this.symmetry = symmetry;
+    }
+
+    /**
+     * Computes the fingerprint of a game map.
+     *
+     * @param map The game map.
+     * @return The fingerprint.
+     */
+    public static @NotNull MapFingerprint of(@NotNull GameMap map) {
+        final var board = Board.of(map);
+        int[] best = null;
+        var bestSymmetry = 0;
+        for (int symmetry = 0; symmetry < SYMMETRIES; symmetry++) {
+            final var encoding = encode(board, symmetry);
+            if (best == null || Arrays.compare(encoding, best) < 0) {
+                best = encoding;
+                bestSymmetry = symmetry;
+            }
+        }
+        final var bytes = ByteBuffer.allocate(best.length * Integer.BYTES);
+        bytes.asIntBuffer().put(best);
+        try {
+            final var digest = MessageDigest.getInstance("SHA-256").digest(bytes.array());
+            return new MapFingerprint(HexFormat.of().formatHex(digest), bestSymmetry);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The hexadecimal hash of the canonical orientation of the map.
+     */
+    public @NotNull String getHash() {
+        return hash;
+    }
+
+    /**
+     * @param solution A solution of the fingerprinted map.
+     * @return The same solution for the canonical orientation of the map.
+     */
+    public @NotNull Solution toCanonical(@NotNull Solution solution) {
+        return transform(solution, false);
+    }
+
+    /**
+     * @param solution A solution of the canonical orientation of the map.
+     * @return The same solution for the fingerprinted map.
+     */
+    public @NotNull Solution fromCanonical(@NotNull Solution solution) {
+        return transform(solution, true);
+    }
+
+    private Solution transform(Solution solution, boolean inverse) {
+        final var chars = new char[DX.length];
+        for (int direction = 0; direction < DX.length; direction++) {
+            var dx = DX[direction];
+            var dy = DY[direction];
+            if ((symmetry & TRANSPOSE) != 0) {
+                final var swap = dx;
+                dx = dy;
+                dy = swap;
+            }
+            if ((symmetry & FLIP_X) != 0) {
+                dx = -dx;
+            }
+            if ((symmetry & FLIP_Y) != 0) {
+                dy = -dy;
+            }
+            final var transformed = directionOf(dx, dy);
+            if (inverse) {
+                chars[transformed] = Board.directionChar(direction);
+            } else {
+                chars[direction] = Board.directionChar(transformed);
+            }
+        }
+        final var actions = new TreeMap<Integer, String>();
+        for (final var entry : solution.getActions().entrySet()) {
+            final var builder = new StringBuilder(entry.getValue());
+            for (int i = 0; i < builder.length(); i++) {
+                final var direction = Board.directionOf(builder.charAt(i));
+                if (direction >= 0) {
+                    builder.setCharAt(i, chars[direction]);
+                }
+            }
+            actions.put(entry.getKey(), builder.toString());
+        }
+        return new Solution(actions);
+    }
+
+    private static int directionOf(int dx, int dy) {
+        for (int direction = 0; direction < DX.length; direction++) {
+            if (DX[direction] == dx && DY[direction] == dy) {
+                return direction;
+            }
+        }
+        throw new IllegalArgumentException();
+    }
+
+    /**
+     * Encodes the board as seen in one of its orientations.
+     */
+    private static int[] encode(Board board, int symmetry) {
+        final var transposed = (symmetry & TRANSPOSE) != 0;
+        final var width = transposed ? board.getHeight() : board.getWidth();
+        final var height = transposed ? board.getWidth() : board.getHeight();
+        final var encoding = new int[2 + width * height];
+        encoding[0] = width;
+        encoding[1] = height;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final var sourceX = (symmetry & FLIP_X) != 0 ? width - 1 - x : x;
+                final var sourceY = (symmetry & FLIP_Y) != 0 ? height - 1 - y : y;
+                final var cell = transposed
+                        ? sourceX * board.getWidth() + sourceY
+                        : sourceY * board.getWidth() + sourceX;
+                encoding[2 + y * width + x] = encodeCell(board, cell);
+            }
+        }
+        return encoding;
+    }
+
+    private static int encodeCell(Board board, int cell) {
+        if (board.isWall(cell)) {
+            return 1;
+        }
+        return 2
+                | (board.isDestination(cell) ? 4 : 0)
+                | ((board.getBoxOwner(cell) + 1) << 3)
+                | ((board.getPlayerAt(cell) + 1) << 8);
+    }
+}
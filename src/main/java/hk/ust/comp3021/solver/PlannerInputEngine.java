@@ -0,0 +1,268 @@
+package hk.ust.comp3021.solver;
+
+import hk.ust.comp3021.actions.Action;
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.Move;
+import hk.ust.comp3021.actions.Wait;
+import hk.ust.comp3021.entities.Box;
+import hk.ust.comp3021.entities.Empty;
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.InputEngine;
+import hk.ust.comp3021.game.Position;
+import hk.ust.comp3021.replay.StreamInputEngine;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An input engine that plays one player automatically by planning on the live game state.
+ * <p>
+ * Plans are computed by a {@link PushSolver} on a background executor, starting as soon as the engine is created.
+ * {@link #fetchAction()} never blocks the game: while no plan is ready, it returns a {@link Wait} action, which the game
+ * skips without counting it as a failed action. The engine exits after repeated planning failures.
+ * <p>
+ * Before each move, the engine checks the move against the current game state.
+ * When other players get in the way, it first tries to re-route the walks between the remaining pushes,
+ * and only searches a new plan from scratch if the remaining pushes are no longer possible.
+ * An {@link Exit} is returned once all boxes of the player are on destinations, or if no plan can be found.
+ * <p>
+ * Each engine plans for its own player only, so several engines on the same game may compete for the same
+ * destinations; use {@link CooperativeSolver} for a coordinated plan.
+ */
+public class PlannerInputEngine implements InputEngine {
+
+    /**
+     * Default time budget of one planning run.
+     */
+    public static final Duration DEFAULT_PLANNING_BUDGET = Duration.ofSeconds(5);
+
+    private static final int MAX_RETRIES = 3;
+
+    private static final int MAX_PLANNING_FAILURES = 3;
+
+    /**
+     * Executor of the engines created without one. Planning is CPU-bound and may take the whole budget, so it does not
+     * run on the common fork-join pool, which parallel streams and other tasks of the game rely on.
+     */
+    private static final ExecutorService PLANNING_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        final var thread = new Thread(runnable, "planner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final GameState state;
+
+    private final int playerId;
+
+    private final PushSolver solver;
+
+    private final Duration planningBudget;
+
+    private final Executor executor;
+
+    private final AtomicReference<Plan> readyPlan = new AtomicReference<>();
+
+    private final AtomicBoolean planning = new AtomicBoolean(false);
+
+    private final AtomicInteger planningFailures = new AtomicInteger(0);
+
+    // The fields below are only accessed by the thread fetching actions.
+
+    private @Nullable Plan plan;
+
+    private int step;
+
+    private int retries;
+
+    private @Nullable Position lastFrom;
+
+    private @Nullable Position lastTo;
+
+    /**
+     * A plan of moves together with the pushes it performs.
+     *
+     * @param pushes   The pushes.
+     * @param moves    The direction indices of the moves.
+     * @param ordinals For each move, the index of the push it leads to.
+     * @param isPush   For each move, whether it pushes a box.
+     */
+    private record Plan(List<PushSolver.Push> pushes, int[] moves, int[] ordinals, boolean[] isPush) {
+
+        private static Plan of(Board board, int playerId, List<PushSolver.Push> pushes, int[] moves) {
+            final var ordinals = new int[moves.length];
+            final var isPush = new boolean[moves.length];
+            final var simulation = board.copy();
+            var ordinal = 0;
+            for (int i = 0; i < moves.length; i++) {
+                final var next = simulation.neighbour(simulation.getPlayerCell(playerId), moves[i]);
+                isPush[i] = simulation.getBoxOwner(next) == playerId;
+                ordinals[i] = ordinal;
+                ordinal += isPush[i] ? 1 : 0;
+                simulation.move(playerId, moves[i]);
+            }
+            return new Plan(pushes, moves, ordinals, isPush);
+        }
+    }
+
+    /**
+     * Create an engine planning with the default budget on a thread pool shared by the planners.
+     *
+     * @param state    The game state to play on. The engine synchronizes on it while reading.
+     * @param playerId The player to play.
+     */
+    public PlannerInputEngine(@NotNull GameState state, int playerId) {
+        this(state, playerId, new PushSolver(), DEFAULT_PLANNING_BUDGET, PLANNING_EXECUTOR);
+    }
+
+    /**
+     * @param state          The game state to play on. The engine synchronizes on it while reading.
+     * @param playerId       The player to play.
+     * @param solver         The solver used for planning.
+     * @param planningBudget The time budget of one planning run.
+     * @param executor       The executor running the planning.
+     */
+    public PlannerInputEngine(@NotNull GameState state,
+                              int playerId,
+                              @NotNull PushSolver solver,
+                              @NotNull Duration planningBudget,
+                              @NotNull Executor executor) {
+        this.state = state;
+        this.playerId = playerId;
+        this.solver = solver;
+        this.planningBudget = planningBudget;
+        this.executor = executor;
+        requestPlan(null);
+    }
+
+    @Override
+    public @NotNull Action fetchAction() {
+        while (true) {
+            final var adopted = readyPlan.getAndSet(null);
+            if (adopted != null) {
+                plan = adopted;
+                step = 0;
+                retries = 0;
+                lastFrom = null;
+            }
+            final var current = plan;
+            if (current == null) {
+                if (planningFailures.get() >= MAX_PLANNING_FAILURES) {
+                    return new Exit(playerId);
+                }
+                requestPlan(null);
+                return Wait.of(playerId);
+            }
+            final Action action;
+            synchronized (state) {
+                action = nextMove(current);
+            }
+            if (action != null) {
+                return action;
+            }
+        }
+    }
+
+    /**
+     * @return The next move of the plan, or null if a new plan has been requested.
+     */
+    private @Nullable Action nextMove(@NotNull Plan current) {
+        final var position = state.getPlayerPositionById(playerId);
+        if (position == null) {
+            return new Exit(playerId);
+        }
+        if (lastFrom != null && position.equals(lastFrom)) {
+            // The last move was rejected, for instance because another player got in the way, so try it again.
+            if (++retries > MAX_RETRIES) {
+                return replan(current.pushes().subList(current.ordinals()[step - 1], current.pushes().size()));
+            }
+            step--;
+        } else if (lastFrom != null && !position.equals(lastTo)) {
+            return replan(null);
+        } else {
+            retries = 0;
+        }
+        if (step == current.moves().length) {
+            lastFrom = null;
+            if (Board.of(state).isSolvedFor(playerId)) {
+                return new Exit(playerId);
+            }
+            return replan(null);
+        }
+        final var move = (Move) StreamInputEngine.char2Action(playerId, Board.directionChar(current.moves()[step]));
+        final var next = move.nextPosition(position);
+        final var entity = state.getEntity(next);
+        final var isValid = current.isPush()[step]
+                ? entity instanceof Box box && box.getPlayerId() == playerId
+                && state.getEntity(move.nextPosition(next)) instanceof Empty
+                : entity instanceof Empty;
+        if (!isValid) {
+            return replan(current.pushes().subList(current.ordinals()[step], current.pushes().size()));
+        }
+        lastFrom = position;
+        lastTo = next;
+        step++;
+        return move;
+    }
+
+    /**
+     * Drops the current plan and requests a new one.
+     *
+     * @param remaining The pushes still to perform, to be re-routed if possible; null to plan from scratch.
+     * @return Null, for {@link #nextMove(Plan)} to return.
+     */
+    private @Nullable Action replan(@Nullable List<PushSolver.Push> remaining) {
+        plan = null;
+        lastFrom = null;
+        requestPlan(remaining);
+        return null;
+    }
+
+    private void requestPlan(@Nullable List<PushSolver.Push> remaining) {
+        if (!planning.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                final var next = plan(remaining);
+                if (next == null) {
+                    planningFailures.incrementAndGet();
+                } else {
+                    planningFailures.set(0);
+                    readyPlan.set(next);
+                }
+            } finally {
+                planning.set(false);
+            }
+        });
+    }
+
+    private @Nullable Plan plan(@Nullable List<PushSolver.Push> remaining) {
+        final Board board;
+        synchronized (state) {
+            board = Board.of(state);
+        }
+        if (board.getPlayerCell(playerId) < 0) {
+            return null;
+        }
+        if (remaining != null) {
+            final var moves = PushSolver.toMoves(board.copy(), playerId, remaining);
+            if (moves != null) {
+                return Plan.of(board, playerId, remaining, moves);
+            }
+        }
+        final var pushes = solver.solve(board, playerId, System.nanoTime() + planningBudget.toNanos());
+        if (pushes == null) {
+            return null;
+        }
+        final var moves = PushSolver.toMoves(board.copy(), playerId, pushes);
+        return moves == null ? null : Plan.of(board, playerId, pushes, moves);
+    }
+}
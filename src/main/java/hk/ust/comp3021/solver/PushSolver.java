@@ -0,0 +1,352 @@
+package hk.ust.comp3021.solver;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A single-player Sokoban solver.
+ * <p>
+ * It plans the pushes of the boxes owned by one player while every wall, other player and box of other players is
+ * treated as a fixed obstacle.
+ * The search is a weighted A* over box layouts, where the heuristic is the sum of the push distances of each box to
+ * its nearest reachable destination.
+ * Layouts with a box on a dead cell or in a frozen 2x2 block are pruned.
+ */
+public class PushSolver {
+
+    /**
+     * Default upper bound of the number of distinct layouts explored in one search.
+     */
+    public static final int DEFAULT_MAX_STATES = 1_000_000;
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final int HEURISTIC_WEIGHT = 3;
+
+    private final int maxStates;
+
+    /**
+     * A push of a box by one cell.
+     *
+     * @param boxCell   The cell of the box before the push.
+     * @param direction The direction index of the push.
+     */
+    public record Push(int boxCell, int direction) {
+    }
+
+    /**
+     * Create a solver exploring at most {@link #DEFAULT_MAX_STATES} layouts per search.
+     */
+    public PushSolver() {
+        this(DEFAULT_MAX_STATES);
+    }
+
+    /**
+     * @param maxStates Upper bound of the number of distinct layouts explored in one search.
+     */
+    public PushSolver(int maxStates) {
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * Plans the pushes that bring all boxes of a player onto destinations.
+     *
+     * @param board    The board.
+     * @param playerId The player to plan for.
+     * @param deadline The {@link System#nanoTime()} after which the search gives up.
+     * @return The pushes in order, or null if no plan was found.
+     */
+    public @Nullable List<Push> solve(@NotNull Board board, int playerId, long deadline) {
+        return solve(board, playerId, deadline, () -> false);
+    }
+
+    /**
+     * Plans the pushes that bring all boxes of a player onto destinations.
+     *
+     * @param board     The board.
+     * @param playerId  The player to plan for.
+     * @param deadline  The {@link System#nanoTime()} after which the search gives up.
+     * @param cancelled Polled before every expansion; the search gives up once it returns true.
+     * @return The pushes in order, or null if no plan was found.
+     */
+    public @Nullable List<Push> solve(@NotNull Board board, int playerId, long deadline, @NotNull BooleanSupplier cancelled) {
+        if (board.getPlayerCell(playerId) < 0) {
+            return null;
+        }
+        return new Search(board, playerId).run(deadline, cancelled);
+    }
+
+    /**
+     * Converts pushes into the moves of the player, walking to each box along a shortest path.
+     * The board is updated as the moves are performed.
+     *
+     * @param board    The board to perform the moves on.
+     * @param playerId The player performing the moves.
+     * @param pushes   The pushes.
+     * @return The direction indices of the moves, or null if the pushes cannot be performed on the board.
+     */
+    public static int @Nullable [] toMoves(@NotNull Board board, int playerId, @NotNull List<Push> pushes) {
+        final var moves = new ArrayList<Integer>();
+        for (final var push : pushes) {
+            final var direction = push.direction();
+            final var path = board.findPath(playerId, push.boxCell() - board.delta(direction));
+            if (path == null) {
+                return null;
+            }
+            for (final var step : path) {
+                board.move(playerId, step);
+                moves.add(step);
+            }
+            if (board.getBoxOwner(push.boxCell()) != playerId || !board.move(playerId, direction)) {
+                return null;
+            }
+            moves.add(direction);
+        }
+        return moves.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * A search node holding a box layout and the cell of the player right after the push that produced it.
+     */
+    private record Node(int[] boxes, int player, @Nullable Node parent, @Nullable Push push, int cost, int estimate) {
+    }
+
+    /**
+     * Key of a visited layout. The player is normalised to the smallest cell of its reachable region.
+     */
+    private record Key(int[] boxes, int region) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key && region == key.region && Arrays.equals(boxes, key.boxes);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(boxes) + region;
+        }
+    }
+
+    /**
+     * State of one search run.
+     */
+    private final class Search {
+        private final Board board;
+
+        private final boolean[] blocked;
+
+        private final boolean[] goals;
+
+        private final int[] distances;
+
+        private final boolean[] boxAt;
+
+        private final int[] reached;
+
+        private final int[] queue;
+
+        private final int[] initialBoxes;
+
+        private final int initialPlayer;
+
+        private int stamp = 0;
+
+        private Search(Board board, int playerId) {
+            this.board = board;
+            final var size = board.size();
+            this.blocked = new boolean[size];
+            this.goals = new boolean[size];
+            for (int cell = 0; cell < size; cell++) {
+                final var owner = board.getBoxOwner(cell);
+                blocked[cell] = board.isWall(cell) || (owner >= 0 && owner != playerId);
+            }
+            for (final var id : board.getPlayerIds()) {
+                if (id != playerId) {
+                    blocked[board.getPlayerCell(id)] = true;
+                }
+            }
+            for (int cell = 0; cell < size; cell++) {
+                goals[cell] = board.isDestination(cell) && !blocked[cell];
+            }
+            this.distances = pullDistances();
+            this.boxAt = new boolean[size];
+            this.reached = new int[size];
+            this.queue = new int[size];
+            this.initialBoxes = board.getBoxCells(playerId);
+            this.initialPlayer = board.getPlayerCell(playerId);
+        }
+
+        /**
+         * @return For each cell, the minimum number of pushes needed to bring a box there onto a goal,
+         * ignoring other boxes.
+         */
+        private int[] pullDistances() {
+            final var result = new int[blocked.length];
+            Arrays.fill(result, UNREACHABLE);
+            final var pending = new int[blocked.length];
+            var head = 0;
+            var tail = 0;
+            for (int cell = 0; cell < blocked.length; cell++) {
+                if (goals[cell]) {
+                    result[cell] = 0;
+                    pending[tail++] = cell;
+                }
+            }
+            while (head < tail) {
+                final var cell = pending[head++];
+                for (int direction = 0; direction < 4; direction++) {
+                    final var delta = board.delta(direction);
+                    final var previous = cell - delta;
+                    if (blocked[previous] || result[previous] != UNREACHABLE || blocked[previous - delta]) {
+                        continue;
+                    }
+                    result[previous] = result[cell] + 1;
+                    pending[tail++] = previous;
+                }
+            }
+            return result;
+        }
+
+        private @Nullable List<Push> run(long deadline, BooleanSupplier cancelled) {
+            var goalCount = 0;
+            for (final var goal : goals) {
+                goalCount += goal ? 1 : 0;
+            }
+            if (goalCount < initialBoxes.length) {
+                return null;
+            }
+            final var initialEstimate = estimate(initialBoxes);
+            if (initialEstimate == UNREACHABLE) {
+                return null;
+            }
+            final var open = new PriorityQueue<>(Comparator
+                    .comparingInt((Node n) -> n.cost() + HEURISTIC_WEIGHT * n.estimate())
+                    .thenComparingInt(Node::estimate));
+            final var visited = new HashSet<Key>();
+            open.add(new Node(initialBoxes, initialPlayer, null, null, 0, initialEstimate));
+            while (!open.isEmpty()) {
+                // Checked before every expansion, whose reachability search costs far more than reading the clock.
+                if (System.nanoTime() - deadline > 0 || cancelled.getAsBoolean()) {
+                    return null;
+                }
+                final var node = open.poll();
+                if (node.estimate() == 0) {
+                    return tracePushes(node);
+                }
+                for (final var box : node.boxes()) {
+                    boxAt[box] = true;
+                }
+                final var region = explore(node.player());
+                if (visited.add(new Key(node.boxes(), region))) {
+                    if (visited.size() > maxStates) {
+                        return null;
+                    }
+                    expand(node, open);
+                }
+                for (final var box : node.boxes()) {
+                    boxAt[box] = false;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Marks all cells reachable by the player with the current stamp.
+         *
+         * @return The smallest reachable cell.
+         */
+        private int explore(int start) {
+            stamp++;
+            var head = 0;
+            var tail = 0;
+            var region = start;
+            queue[tail++] = start;
+            reached[start] = stamp;
+            while (head < tail) {
+                final var cell = queue[head++];
+                region = Math.min(region, cell);
+                for (int direction = 0; direction < 4; direction++) {
+                    final var next = board.neighbour(cell, direction);
+                    if (reached[next] != stamp && !blocked[next] && !boxAt[next]) {
+                        reached[next] = stamp;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+            return region;
+        }
+
+        private void expand(Node node, PriorityQueue<Node> open) {
+            final var boxes = node.boxes();
+            for (int i = 0; i < boxes.length; i++) {
+                final var box = boxes[i];
+                for (int direction = 0; direction < 4; direction++) {
+                    final var delta = board.delta(direction);
+                    final var target = box + delta;
+                    if (reached[box - delta] != stamp || blocked[target] || boxAt[target]
+                            || distances[target] == UNREACHABLE) {
+                        continue;
+                    }
+                    boxAt[box] = false;
+                    boxAt[target] = true;
+                    final var frozen = isFrozen(target);
+                    boxAt[target] = false;
+                    boxAt[box] = true;
+                    if (frozen) {
+                        continue;
+                    }
+                    final var next = boxes.clone();
+                    next[i] = target;
+                    Arrays.sort(next);
+                    open.add(new Node(next, box, node, new Push(box, direction), node.cost() + 1, estimate(next)));
+                }
+            }
+        }
+
+        /**
+         * @return True if the box at the cell is part of a 2x2 block of boxes and obstacles with a box off goal.
+         */
+        private boolean isFrozen(int cell) {
+            final var horizontal = new int[]{board.delta(Board.LEFT), board.delta(Board.RIGHT)};
+            final var vertical = new int[]{board.delta(Board.UP), board.delta(Board.DOWN)};
+            for (final var dx : horizontal) {
+                for (final var dy : vertical) {
+                    final var block = new int[]{cell, cell + dx, cell + dy, cell + dx + dy};
+                    if (Arrays.stream(block).allMatch(c -> blocked[c] || boxAt[c])
+                            && Arrays.stream(block).anyMatch(c -> boxAt[c] && !goals[c])) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private int estimate(int[] boxes) {
+            var sum = 0;
+            for (final var box : boxes) {
+                if (distances[box] == UNREACHABLE) {
+                    return UNREACHABLE;
+                }
+                sum += distances[box];
+            }
+            return sum;
+        }
+
+        private List<Push> tracePushes(Node node) {
+            final var pushes = new ArrayList<Push>();
+            for (var current = node; current.push() != null; current = current.parent()) {
+                pushes.add(current.push());
+            }
+            Collections.reverse(pushes);
+            return pushes;
+        }
+    }
+}
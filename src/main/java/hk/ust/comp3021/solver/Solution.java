@@ -0,0 +1,100 @@
+package hk.ust.comp3021.solver;
+
+import hk.ust.comp3021.game.GameMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A solution of a multi-player game, holding the actions of every player.
+ * <p>
+ * The actions of all players have the same length and are meant to be replayed in
+ * {@link hk.ust.comp3021.replay.ReplaySokobanGame.Mode#ROUND_ROBIN} mode with the action files ordered by ascending
+ * player id, which is the order of {@link #getActions()}.
+ */
+public final class Solution {
+
+    private final SortedMap<Integer, String> actions;
+
+    /**
+     * @param actions The action characters (as read by {@link hk.ust.comp3021.replay.StreamInputEngine}) of each player,
+     *                keyed by player id.
+     */
+    public Solution(@NotNull Map<Integer, String> actions) {
+        this.actions = Collections.unmodifiableSortedMap(new TreeMap<>(actions));
+    }
+
+    /**
+     * @return The action characters of each player, keyed by player id in ascending order.
+     */
+    public @NotNull @Unmodifiable SortedMap<Integer, String> getActions() {
+        return actions;
+    }
+
+    /**
+     * @return The number of rounds needed to replay the solution.
+     */
+    public int getRounds() {
+        return actions.values().stream().mapToInt(String::length).max().orElse(0);
+    }
+
+    /**
+     * Checks the solution by replaying it in round-robin order with the rules of the game.
+     *
+     * @param map The game map the solution is for.
+     * @return True if the replay wins the game.
+     */
+    public boolean isWinning(@NotNull GameMap map) {
+        final var game = new HeadlessGame(map);
+        for (int round = 0; round < getRounds() && !game.isWin(); round++) {
+            for (final var entry : actions.entrySet()) {
+                if (round < entry.getValue().length() && !game.isWin()) {
+                    game.apply(entry.getKey(), entry.getValue().charAt(round));
+                }
+            }
+        }
+        return game.isWin();
+    }
+
+    /**
+     * Writes one action file per player, in the format read by {@link hk.ust.comp3021.replay.StreamInputEngine}.
+     * The files are named {@code actions<player id>.txt}.
+     *
+     * @param directory The directory to write to.
+     * @return The written files, in the order they should be passed to the game.
+     * @throws IOException If a file cannot be written.
+     */
+    public @NotNull List<Path> writeActionFiles(@NotNull Path directory) throws IOException {
+        Files.createDirectories(directory);
+        final var files = new ArrayList<Path>();
+        for (final var entry : actions.entrySet()) {
+            final var file = directory.resolve(String.format("actions%d.txt", entry.getKey()));
+            Files.writeString(file, toActionFile(entry.getKey(), entry.getValue()));
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * @param playerId The player id.
+     * @param actions  The action characters.
+     * @return The content of an action file performing the actions, ending with an exit.
+     */
+    public static @NotNull String toActionFile(int playerId, @NotNull String actions) {
+        final var builder = new StringBuilder(actions.length() * 2 + 8);
+        builder.append(playerId).append('\n');
+        for (int i = 0; i < actions.length(); i++) {
+            builder.append(actions.charAt(i)).append('\n');
+        }
+        return builder.append('E').append('\n').toString();
+    }
+}
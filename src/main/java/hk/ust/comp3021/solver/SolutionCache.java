@@ -0,0 +1,185 @@
+package hk.ust.comp3021.solver;
+
+import hk.ust.comp3021.game.GameMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * A persistent cache of solutions, keyed by the {@link MapFingerprint} of the solved map.
+ * <p>
+ * Solutions are stored in the canonical orientation of their map, so a rotated or mirrored copy of a solved map hits
+ * the cache as well.
+ * Each solution is a file named after the fingerprint hash in the cache directory.
+ * The cache holds at most a fixed number of solutions and evicts the least recently used one first; the
+ * recency is kept in the modification time of the files, so it is preserved across runs.
+ */
+public final class SolutionCache {
+
+    /**
+     * Default maximum number of cached solutions.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final String EXTENSION = ".sol";
+
+    private final Path directory;
+
+    private final int capacity;
+
+    private final LinkedHashMap<String, Path> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Opens a cache directory, creating it if it does not exist.
+     *
+     * @param directory The cache directory.
+     * @param capacity  The maximum number of cached solutions.
+     * @throws IOException If the directory cannot be created or listed.
+     */
+    public SolutionCache(@NotNull Path directory, int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid cache capacity: " + capacity);
+        }
+        this.directory = directory;
+        this.capacity = capacity;
+        Files.createDirectories(directory);
+        try (var files = Files.list(directory)) {
+            files.filter(it -> it.getFileName().toString().endsWith(EXTENSION))
+                    .sorted(Comparator.comparing(SolutionCache::lastModified))
+                    .forEachOrdered(it -> {
+                        final var name = it.getFileName().toString();
+                        entries.put(name.substring(0, name.length() - EXTENSION.length()), it);
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        evict();
+    }
+
+    /**
+     * Looks up the solution of a map.
+     *
+     * @param map The game map.
+     * @return The cached solution for the map in its own orientation, or null if there is none.
+     * @throws IOException If the cached solution cannot be read.
+     */
+    public synchronized @Nullable Solution get(@NotNull GameMap map) throws IOException {
+        final var fingerprint = MapFingerprint.of(map);
+        final var file = entries.get(fingerprint.getHash());
+        if (file == null) {
+            return null;
+        }
+        final var solution = read(file);
+        if (solution == null) {
+            entries.remove(fingerprint.getHash());
+            Files.deleteIfExists(file);
+            return null;
+        }
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        return fingerprint.fromCanonical(solution);
+    }
+
+    /**
+     * Stores the solution of a map, evicting the least recently used solution if the cache is full.
+     *
+     * @param map      The game map.
+     * @param solution The solution of the map in its own orientation.
+     * @throws IOException If the solution cannot be written.
+     */
+    public synchronized void put(@NotNull GameMap map, @NotNull Solution solution) throws IOException {
+        final var fingerprint = MapFingerprint.of(map);
+        final var file = directory.resolve(fingerprint.getHash() + EXTENSION);
+        final var temporary = Files.createTempFile(directory, fingerprint.getHash(), ".tmp");
+        try {
+            Files.writeString(temporary, write(fingerprint.toCanonical(solution)));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        entries.put(fingerprint.getHash(), file);
+        evict();
+    }
+
+    /**
+     * Looks up the solution of a map, solving and storing it on a miss.
+     *
+     * @param map    The game map.
+     * @param solver The solver to use on a miss, returning null if the map cannot be solved.
+     * @return The solution for the map in its own orientation, or null if it is not cached and cannot be solved.
+     * @throws IOException If the cache cannot be read or written.
+     */
+    public @Nullable Solution getOrSolve(@NotNull GameMap map,
+                                         @NotNull Function<GameMap, @Nullable Solution> solver) throws IOException {
+        final var cached = get(map);
+        if (cached != null) {
+            return cached;
+        }
+        final var solution = solver.apply(map);
+        if (solution != null) {
+            put(map, solution);
+        }
+        return solution;
+    }
+
+    /**
+     * @return The number of cached solutions.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evict() throws IOException {
+        final var iterator = entries.entrySet().iterator();
+        while (entries.size() > capacity && iterator.hasNext()) {
+            final var eldest = iterator.next();
+            iterator.remove();
+            Files.deleteIfExists(eldest.getValue());
+        }
+    }
+
+    /**
+     * Each line of a solution file holds a player id and the action characters of the player, separated by a space.
+     */
+    private static String write(Solution solution) {
+        final var builder = new StringBuilder();
+        for (final var entry : solution.getActions().entrySet()) {
+            builder.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static @Nullable Solution read(Path file) throws IOException {
+        final Map<Integer, String> actions = new TreeMap<>();
+        for (final var line : Files.readAllLines(file)) {
+            final var separator = line.indexOf(' ');
+            if (separator < 0) {
+                return null;
+            }
+            try {
+                actions.put(Integer.parseInt(line.substring(0, separator)), line.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return actions.isEmpty() ? null : new Solution(actions);
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
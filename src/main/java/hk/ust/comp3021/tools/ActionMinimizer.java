@@ -0,0 +1,360 @@
+package hk.ust.comp3021.tools;
+
+import hk.ust.comp3021.actions.Action;
+import hk.ust.comp3021.actions.ActionResult;
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.Move;
+import hk.ust.comp3021.actions.Repeat;
+import hk.ust.comp3021.actions.Undo;
+import hk.ust.comp3021.entities.Box;
+import hk.ust.comp3021.entities.Empty;
+import hk.ust.comp3021.game.GameMap;
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.InputEngine;
+import hk.ust.comp3021.game.Position;
+import hk.ust.comp3021.replay.ActionLog;
+import hk.ust.comp3021.replay.MappedInputEngine;
+import hk.ust.comp3021.replay.StreamInputEngine;
+import hk.ust.comp3021.solver.HeadlessGame;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A minimiser of action files.
+ * <p>
+ * An action file is replayed alone against its map, i.e. other players stay still, until its first {@link Exit} or
+ * until the game is won. The minimised file reaches the same final game state, including the undo quota, and the same
+ * outcome:
+ * <ul>
+ * <li>Failed actions, such as wall bumps and blocked pushes, are dropped.</li>
+ * <li>The walk of the player between two pushes is replaced by a shortest walk, which drops loops and back-and-forth
+ * moves; undos that only take back walking are dropped with them.</li>
+ * <li>If undo is unlimited, a push taken back by an undo is dropped together with the undo.</li>
+ * </ul>
+ * The result is verified by replaying it; if it does not reach the same state, only failed actions are dropped.
+ * <p>
+ * Files of a corpus are minimised in parallel on a work-stealing {@link ForkJoinPool}, walking the corpus like
+ * {@link CorpusValidator}.
+ * Shortening one file changes the interleaving of a multi-player replay, so the files are meant to be replayed alone or
+ * in {@link hk.ust.comp3021.replay.ReplaySokobanGame.Mode#FREE_RACE} mode.
+ */
+public class ActionMinimizer {
+
+    /**
+     * Extension of the action files to minimise in a corpus.
+     */
+    public static final String ACTION_EXTENSION = ".txt";
+
+    private static final char[] MOVE_CHARS = {'H', 'J', 'K', 'L'};
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Result of minimising one action file.
+     *
+     * @param file             The action file.
+     * @param error            The reason the file could not be minimised, or null if it was minimised.
+     * @param originalActions  The number of single-step actions processed in the original file.
+     * @param minimizedActions The number of actions in the minimised file.
+     * @param win              Whether the file wins the game.
+     */
+    public record Result(@NotNull Path file, @Nullable String error, long originalActions, long minimizedActions,
+                         boolean win) {
+    }
+
+    /**
+     * Totals of a minimisation run.
+     *
+     * @param files            The number of action files.
+     * @param failed           The number of files that could not be minimised.
+     * @param originalActions  The total number of actions processed in the original files.
+     * @param minimizedActions The total number of actions in the minimised files.
+     * @param wallMillis       The wall time of the run, in milliseconds.
+     */
+    public record Summary(long files, long failed, long originalActions, long minimizedActions, long wallMillis) {
+    }
+
+    /**
+     * @param pool The pool to minimise on.
+     */
+    public ActionMinimizer(@NotNull ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Minimises all action files in a directory tree, writing them to the same relative paths in another tree.
+     *
+     * @param map        The map of the action files.
+     * @param inputRoot  The root directory of the action files.
+     * @param outputRoot The root directory of the minimised files.
+     * @return The totals of the run.
+     * @throws IOException          If the directory tree cannot be walked or a minimised file cannot be written.
+     * @throws InterruptedException If interrupted while waiting for the results.
+     */
+    public @NotNull Summary minimizeAll(@NotNull GameMap map, @NotNull Path inputRoot, @NotNull Path outputRoot)
+            throws IOException, InterruptedException {
+        final var start = System.nanoTime();
+        final var files = new LongAdder();
+        final var failed = new LongAdder();
+        final var originalActions = new LongAdder();
+        final var minimizedActions = new LongAdder();
+        CorpusWalk.forEachFile(pool, inputRoot, ACTION_EXTENSION, file -> {
+            final var result = minimize(map, file, outputRoot.resolve(inputRoot.relativize(file).toString()));
+            files.increment();
+            if (result.error() != null) {
+                failed.increment();
+            }
+            originalActions.add(result.originalActions());
+            minimizedActions.add(result.minimizedActions());
+        });
+        return new Summary(files.sum(), failed.sum(), originalActions.sum(), minimizedActions.sum(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Minimises one action file.
+     *
+     * @param map    The map of the action file.
+     * @param input  The action file, in the text or the binary {@link ActionLog} format.
+     * @param output The file to write the minimised text action file to.
+     * @return The result; files that cannot be read are reported in {@link Result#error()} and not written.
+     * @throws IOException If the minimised file cannot be written.
+     */
+    public @NotNull Result minimize(@NotNull GameMap map, @NotNull Path input, @NotNull Path output)
+            throws IOException {
+        final Minimized minimized;
+        try {
+            if (ActionLog.isBinary(input)) {
+                final var engine = new MappedInputEngine(input);
+                minimized = minimize(map, engine.getPlayerId(), engine);
+            } else {
+                try (var stream = Files.newInputStream(input)) {
+                    final var engine = new StreamInputEngine(stream);
+                    minimized = minimize(map, engine.getPlayerId(), engine);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            final var message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            return new Result(input, message, 0, 0, false);
+        }
+        final var parent = output.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        final var text = new StringBuilder().append(minimized.playerId()).append('\n');
+        for (final var action : minimized.actions()) {
+            text.append(action).append('\n');
+        }
+        Files.writeString(output, text);
+        return new Result(input, null, minimized.originalActions(), minimized.actions().size(), minimized.win());
+    }
+
+    /**
+     * A minimised action sequence.
+     *
+     * @param playerId        The player id.
+     * @param actions         The action characters.
+     * @param originalActions The number of single-step actions processed in the original sequence.
+     * @param win             Whether the sequence wins the game.
+     */
+    record Minimized(int playerId, List<Character> actions, long originalActions, boolean win) {
+    }
+
+    /**
+     * Minimises the actions fetched from an input engine, until its first {@link Exit} or a win.
+     *
+     * @param map      The game map.
+     * @param playerId The player of the actions.
+     * @param engine   The input engine.
+     * @return The minimised actions.
+     */
+    static @NotNull Minimized minimize(@NotNull GameMap map, int playerId, @NotNull InputEngine engine) {
+        final var original = new Simulation(map, playerId);
+        for (var action = engine.fetchAction(); !(action instanceof Exit); action = engine.fetchAction()) {
+            original.process(action);
+            if (original.state().isWin()) {
+                break;
+            }
+        }
+        final var finalPosition = original.state().getPlayerPositionById(playerId);
+
+        final var replay = new Simulation(map, playerId);
+        final var actions = new ArrayList<Character>();
+        var reached = true;
+        for (final var step : original.steps) {
+            if (step.from() != null) {
+                reached = replay.walk(step.from(), actions);
+                if (!reached) {
+                    break;
+                }
+            }
+            replay.applyChar(step.action());
+            actions.add(step.action());
+        }
+        if (reached && finalPosition != null) {
+            reached = replay.walk(finalPosition, actions);
+        }
+        final var same = reached && replay.state().equals(original.state())
+                && replay.state().isWin() == original.state().isWin();
+        return new Minimized(playerId, same ? actions : original.succeeded, original.processed, original.state().isWin());
+    }
+
+    /**
+     * A push or an undo that is kept in the minimised sequence.
+     *
+     * @param from   The position of the player before a push, or null for an undo.
+     * @param action The action character.
+     */
+    private record Step(@Nullable Position from, char action) {
+    }
+
+    /**
+     * A {@link HeadlessGame} driven by the minimiser, recording the actions that have an effect.
+     */
+    private static final class Simulation {
+
+        private final HeadlessGame game;
+
+        private final GameState state;
+
+        private final int playerId;
+
+        private final boolean unlimitedUndo;
+
+        /**
+         * The pushes and undos that have an effect on the final state.
+         */
+        private final List<Step> steps = new ArrayList<>();
+
+        /**
+         * All successful single-step actions.
+         */
+        private final List<Character> succeeded = new ArrayList<>();
+
+        /**
+         * The number of checkpoints that can be undone.
+         */
+        private int depth = 0;
+
+        private long processed = 0;
+
+        private Simulation(@NotNull GameMap map, int playerId) {
+            this.game = new HeadlessGame(map);
+            this.state = game.getState();
+            this.playerId = playerId;
+            this.unlimitedUndo = state.getUndoQuota().isEmpty();
+        }
+
+        private GameState state() {
+            return state;
+        }
+
+        /**
+         * Processes an action, with a repeated action as single steps up to the first failing one.
+         */
+        private void process(@NotNull Action action) {
+            if (action instanceof Repeat repeat) {
+                for (int i = 0; i < repeat.getCount(); i++) {
+                    if (!processStep(repeat.getAction())) {
+                        return;
+                    }
+                }
+            } else {
+                processStep(action);
+            }
+        }
+
+        private boolean processStep(@NotNull Action action) {
+            processed++;
+            final var position = state.getPlayerPositionById(action.getInitiator());
+            final var isPush = action instanceof Move move && position != null
+                    && state.getEntity(move.nextPosition(position)) instanceof Box;
+            final var result = game.apply(action);
+            if (result instanceof ActionResult.Failed) {
+                return false;
+            }
+            final var c = charOf(action);
+            succeeded.add(c);
+            if (isPush) {
+                steps.add(new Step(position, c));
+                depth++;
+            } else if (action instanceof Undo && depth > 0) {
+                depth--;
+                if (unlimitedUndo) {
+                    // Undoing the last push returns to the state right after the push before it.
+                    steps.remove(steps.size() - 1);
+                } else {
+                    // Each undo of a checkpoint uses up quota, so it must be kept.
+                    steps.add(new Step(null, c));
+                }
+            }
+            return true;
+        }
+
+        private void applyChar(char c) {
+            game.apply(playerId, c);
+        }
+
+        /**
+         * Walks the player along a shortest path through empty cells.
+         *
+         * @return False if the target cannot be reached.
+         */
+        private boolean walk(@NotNull Position target, @NotNull List<Character> actions) {
+            final var start = state.getPlayerPositionById(playerId);
+            if (start == null) {
+                return false;
+            }
+            final var previous = new HashMap<Position, Position>();
+            final var moves = new HashMap<Position, Character>();
+            final var queue = new ArrayDeque<Position>();
+            previous.put(start, start);
+            queue.add(start);
+            while (!queue.isEmpty() && !previous.containsKey(target)) {
+                final var current = queue.poll();
+                for (final var c : MOVE_CHARS) {
+                    final var move = (Move) StreamInputEngine.char2Action(playerId, c);
+                    final var next = move.nextPosition(current);
+                    if (!previous.containsKey(next) && state.getEntity(next) instanceof Empty) {
+                        previous.put(next, current);
+                        moves.put(next, c);
+                        queue.add(next);
+                    }
+                }
+            }
+            if (!previous.containsKey(target)) {
+                return false;
+            }
+            final var path = new ArrayDeque<Character>();
+            for (var position = target; !position.equals(start); position = previous.get(position)) {
+                path.push(moves.get(position));
+            }
+            for (final var c : path) {
+                applyChar(c);
+                actions.add(c);
+            }
+            return true;
+        }
+
+        private static char charOf(@NotNull Action action) {
+            return switch (action) {
+                case Move.Left ignored -> 'H';
+                case Move.Down ignored -> 'J';
+                case Move.Up ignored -> 'K';
+                case Move.Right ignored -> 'L';
+                case Undo ignored -> 'U';
+                default -> throw new IllegalArgumentException("Not a single-step action: " + action);
+            };
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package hk.ust.comp3021.tools;
+
+import hk.ust.comp3021.game.GameMap;
+import hk.ust.comp3021.solver.Board;
+import hk.ust.comp3021.solver.CooperativeSolver;
+import hk.ust.comp3021.solver.PushSolver;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A batch validator of a corpus of map files.
+ * <p>
+ * Map files are parsed with {@link GameMap#parse(String)} in parallel on a work-stealing {@link ForkJoinPool}, and
+ * optionally solved with a {@link CooperativeSolver} under a time budget per map.
+ * A map the solver fails on with an exception is reported with the exception as its error, like a map that does not
+ * parse, so one bad map does not abort the run.
+ * The directory tree is walked lazily and only a bounded number of maps is in flight at a time, so the results are
+ * written to the report as they finish, and memory use does not grow with the size of the corpus.
+ */
+public class CorpusValidator {
+
+    /**
+     * Extension of the map files to validate.
+     */
+    public static final String MAP_EXTENSION = ".map";
+
+    private final ForkJoinPool pool;
+
+    private final @Nullable Duration solveBudget;
+
+    private final PushSolver pushSolver;
+
+    /**
+     * Outcome of the winnability check of a map.
+     */
+    public enum Solvability {
+        /**
+         * A solution was found.
+         */
+        SOLVABLE,
+        /**
+         * The solver gave up within the budget without finding a solution.
+         */
+        UNSOLVED,
+        /**
+         * The budget ran out before a solution was found.
+         */
+        TIMEOUT,
+        /**
+         * The check was not run, because it is disabled or the map is invalid.
+         */
+        SKIPPED,
+    }
+
+    /**
+     * Result of validating one map file.
+     *
+     * @param file        The map file.
+     * @param error       The reason the map is invalid, or null if it is valid.
+     * @param width       The width of the map, or 0 if it is invalid.
+     * @param height      The height of the map, or 0 if it is invalid.
+     * @param players     The number of players, or 0 if the map is invalid.
+     * @param boxes       The number of boxes, or 0 if the map is invalid.
+     * @param solvability The outcome of the winnability check.
+     * @param solveMillis The time spent in the winnability check, in milliseconds.
+     */
+    public record Result(@NotNull Path file,
+                         @Nullable String error,
+                         int width,
+                         int height,
+                         int players,
+                         int boxes,
+                         @NotNull Solvability solvability,
+                         long solveMillis) {
+    }
+
+    /**
+     * Totals of a validation run.
+     *
+     * @param maps       The number of validated maps.
+     * @param invalid    The number of invalid maps.
+     * @param solvable   The number of maps found solvable.
+     * @param wallMillis The wall time of the run, in milliseconds.
+     */
+    public record Summary(long maps, long invalid, long solvable, long wallMillis) {
+    }
+
+    /**
+     * @param pool        The pool to validate on.
+     * @param solveBudget The time budget of the winnability check of one map, or null to skip the check.
+     */
+    public CorpusValidator(@NotNull ForkJoinPool pool, @Nullable Duration solveBudget) {
+        this(pool, solveBudget, new PushSolver());
+    }
+
+    /**
+     * @param pool        The pool to validate on.
+     * @param solveBudget The time budget of the winnability check of one map, or null to skip the check.
+     * @param pushSolver  The solver used to plan each player in the winnability check.
+     */
+    public CorpusValidator(@NotNull ForkJoinPool pool, @Nullable Duration solveBudget, @NotNull PushSolver pushSolver) {
+        this.pool = pool;
+        this.solveBudget = solveBudget;
+        this.pushSolver = pushSolver;
+    }
+
+    /**
+     * Validates all map files in a directory tree.
+     *
+     * @param root   The root directory.
+     * @param report The report to write the results to, in order of completion.
+     * @return The totals of the run.
+     * @throws IOException          If the directory tree cannot be walked or the report cannot be written.
+     * @throws InterruptedException If interrupted while waiting for the results.
+     */
+    public @NotNull Summary validate(@NotNull Path root, @NotNull ValidationReport report)
+            throws IOException, InterruptedException {
+        final var start = System.nanoTime();
+        final var maps = new LongAdder();
+        final var invalid = new LongAdder();
+        final var solvable = new LongAdder();
+        CorpusWalk.forEachFile(pool, root, MAP_EXTENSION, file -> {
+            final var result = validate(file);
+            maps.increment();
+            if (result.error() != null) {
+                invalid.increment();
+            }
+            if (result.solvability() == Solvability.SOLVABLE) {
+                solvable.increment();
+            }
+            report.write(result);
+        });
+        return new Summary(maps.sum(), invalid.sum(), solvable.sum(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Validates one map file.
+     *
+     * @param file The map file.
+     * @return The result.
+     */
+    public @NotNull Result validate(@NotNull Path file) {
+        final GameMap map;
+        try {
+            map = GameMap.parse(Files.readString(file));
+        } catch (IOException | RuntimeException e) {
+            return failed(file, e);
+        }
+        try {
+            return check(file, map);
+        } catch (RuntimeException e) {
+            return failed(file, e);
+        }
+    }
+
+    private static @NotNull Result failed(@NotNull Path file, @NotNull Exception e) {
+        final var message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        return new Result(file, message, 0, 0, 0, 0, Solvability.SKIPPED, 0);
+    }
+
+    private @NotNull Result check(@NotNull Path file, @NotNull GameMap map) {
+        final var board = Board.of(map);
+        var boxes = 0;
+        for (int cell = 0; cell < board.size(); cell++) {
+            boxes += board.getBoxOwner(cell) >= 0 ? 1 : 0;
+        }
+        var solvability = Solvability.SKIPPED;
+        var solveMillis = 0L;
+        if (solveBudget != null) {
+            final var solveStart = System.nanoTime();
+            final var solution = new CooperativeSolver(pushSolver, solveBudget, CooperativeSolver.DEFAULT_MAX_ORDERS).solve(map);
+            final var elapsed = System.nanoTime() - solveStart;
+            solveMillis = elapsed / 1_000_000;
+            if (solution != null) {
+                solvability = Solvability.SOLVABLE;
+            } else {
+                solvability = elapsed >= solveBudget.toNanos() ? Solvability.TIMEOUT : Solvability.UNSOLVED;
+            }
+        }
+        return new Result(file, null, map.getMaxWidth(), map.getMaxHeight(), map.getPlayerIds().size(), boxes,
+                solvability, solveMillis);
+    }
+}
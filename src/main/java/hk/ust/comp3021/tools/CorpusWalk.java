@@ -0,0 +1,80 @@
+package hk.ust.comp3021.tools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Processes the files of a corpus in parallel, shared by the corpus tools.
+ * <p>
+ * The directory tree is walked lazily and only a bounded number of files is in flight at a time, so memory use does
+ * not grow with the size of the corpus. The first {@link IOException} of a file stops the walk and is thrown once the
+ * files in flight are done.
+ */
+final class CorpusWalk {
+
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    /**
+     * Work done on one file of the corpus.
+     */
+    @FunctionalInterface
+    interface FileTask {
+        /**
+         * @param file The file.
+         * @throws IOException If the run should stop with this exception.
+         */
+        void process(@NotNull Path file) throws IOException;
+    }
+
+    private CorpusWalk() {
+    }
+
+    /**
+     * Runs a task on every regular file with the given extension in a directory tree, and waits for all of them.
+     *
+     * @param pool      The pool to run the tasks on.
+     * @param root      The root directory.
+     * @param extension The extension of the files to process.
+     * @param task      The task run on each file.
+     * @throws IOException          If the directory tree cannot be walked or a task failed.
+     * @throws InterruptedException If interrupted while waiting for the tasks.
+     */
+    static void forEachFile(@NotNull ForkJoinPool pool, @NotNull Path root, @NotNull String extension,
+                            @NotNull FileTask task) throws IOException, InterruptedException {
+        final var permits = pool.getParallelism() * IN_FLIGHT_PER_THREAD;
+        final var inFlight = new Semaphore(permits);
+        final var failure = new AtomicReference<IOException>();
+        try (var files = Files.walk(root)) {
+            final var iterator = files
+                    .filter(it -> it.getFileName().toString().endsWith(extension) && Files.isRegularFile(it))
+                    .iterator();
+            while (iterator.hasNext() && failure.get() == null) {
+                final var file = iterator.next();
+                inFlight.acquire();
+                pool.execute(() -> {
+                    try {
+                        task.process(file);
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } catch (UncheckedIOException e) {
+            failure.compareAndSet(null, e.getCause());
+        } finally {
+            inFlight.acquire(permits);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package hk.ust.comp3021.tools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+
+/**
+ * A report of validated maps, written entry by entry as the results arrive.
+ * <p>
+ * Entries are flushed as soon as they are written, so an interrupted run still leaves the results so far, and memory
+ * use does not grow with the size of the corpus.
+ * The report is safe to write from multiple threads.
+ */
+public class ValidationReport implements Closeable {
+
+    /**
+     * Format of a report.
+     */
+    public enum Format {
+        /**
+         * Comma-separated values with a header line.
+         */
+        CSV,
+        /**
+         * A JSON array of objects.
+         */
+        JSON;
+
+        /**
+         * @param file The report file.
+         * @return {@link #JSON} if the file name ends with {@code .json}, {@link #CSV} otherwise.
+         */
+        public static @NotNull Format of(@NotNull Path file) {
+            return file.getFileName().toString().endsWith(".json") ? JSON : CSV;
+        }
+    }
+
+    private static final String[] COLUMNS = {"file", "error", "width", "height", "players", "boxes", "solvable", "solve_millis"};
+
+    private final Writer writer;
+
+    private final Format format;
+
+    private int entries = 0;
+
+    /**
+     * Starts a report.
+     *
+     * @param writer The writer to write to. It is closed with the report.
+     * @param format The format of the report.
+     * @throws IOException If the writer fails.
+     */
+    public ValidationReport(@NotNull Writer writer, @NotNull Format format) throws IOException {
+        this.writer = writer;
+        this.format = format;
+        writer.write(format == Format.CSV ? String.join(",", COLUMNS) + "\n" : "[");
+        writer.flush();
+    }
+
+    /**
+     * Appends the result of one map.
+     *
+     * @param result The result.
+     * @throws IOException If the writer fails.
+     */
+    public synchronized void write(@NotNull CorpusValidator.Result result) throws IOException {
+        final var values = new String[]{
+                result.file().toString(),
+                result.error() == null ? "" : result.error(),
+                String.valueOf(result.width()),
+                String.valueOf(result.height()),
+                String.valueOf(result.players()),
+                String.valueOf(result.boxes()),
+                result.solvability().name(),
+                String.valueOf(result.solveMillis()),
+        };
+        final var line = new StringBuilder();
+        if (format == Format.CSV) {
+            for (int i = 0; i < values.length; i++) {
+                line.append(i == 0 ? "" : ",").append(escapeCsv(values[i]));
+            }
+            line.append('\n');
+        } else {
+            line.append(entries == 0 ? "\n" : ",\n").append("  {");
+            for (int i = 0; i < values.length; i++) {
+                line.append(i == 0 ? "" : ", ").append('"').append(COLUMNS[i]).append("\": ");
+                // The file, the error and the solvability are strings; the other columns are numbers.
+                final var isString = i < 2 || "solvable".equals(COLUMNS[i]);
+                if (i == 1 && result.error() == null) {
+                    line.append("null");
+                } else {
+                    line.append(isString ? '"' + escapeJson(values[i]) + '"' : values[i]);
+                }
+            }
+            line.append('}');
+        }
+        entries++;
+        writer.write(line.toString());
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (format == Format.JSON) {
+            writer.write(entries == 0 ? "]\n" : "\n]\n");
+        }
+        writer.close();
+    }
+
+    private static String escapeCsv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String escapeJson(String value) {
+        final var builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final var c = value.charAt(i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                default -> {
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                }
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -13,6 +13,11 @@ public class StringResources {
 
     public static final String PLAYER_NOT_FOUND = "Player not found.";
 
+    public static final String HIT_WALL_MESSAGE = "You hit a wall.";
+    public static final String HIT_PLAYER_MESSAGE = "You hit another player.";
+    public static final String OTHERS_BOX_MESSAGE = "You cannot move other players' boxes.";
+    public static final String PUSH_FAILED_MESSAGE = "Failed to push the box.";
+
     public static final String GAME_EXIT_MESSAGE = "Game exits.";
     public static final String WIN_MESSAGE = "You win.";
 
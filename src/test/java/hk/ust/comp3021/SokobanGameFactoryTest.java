@@ -1,15 +1,23 @@
 package hk.ust.comp3021;
 
+import hk.ust.comp3021.replay.PrefetchingInputEngine;
+import hk.ust.comp3021.replay.ReplaySokobanGame;
 import hk.ust.comp3021.utils.TestKind;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class SokobanGameFactoryTest {
 
@@ -36,4 +44,63 @@ class SokobanGameFactoryTest {
         assertEquals(7, gameMap.getMaxHeight());
         assertEquals(233, gameMap.getUndoLimit().orElse(null));
     }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testLoadFromCompressedFile() throws IOException {
+        final var mapFile = tempDir.resolve("tempMap.map.gz");
+        String rectangularMap = """
+                233
+                ######
+                #A..@#
+                #....#
+                #.a..#
+                ######
+                """;
+        try (var stream = new GZIPOutputStream(Files.newOutputStream(mapFile))) {
+            stream.write(rectangularMap.getBytes(StandardCharsets.UTF_8));
+        }
+        final var gameMap = SokobanGameFactory.loadGameMap(mapFile);
+        assertEquals(6, gameMap.getMaxWidth());
+        assertEquals(5, gameMap.getMaxHeight());
+        assertEquals(233, gameMap.getUndoLimit().orElse(null));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testClosesInputEnginesWhenActionFileIsMissing() throws IOException, InterruptedException {
+        final var mapFile = tempDir.resolve("tempMap.map");
+        Files.writeString(mapFile, """
+                -1
+                ######
+                #A.a@#
+                ######
+                """);
+        // More actions than are read ahead, so the read-ahead thread waits for them to be taken.
+        final var actionFile = tempDir.resolve("actions.txt");
+        Files.writeString(actionFile, "0\n" + "L\n".repeat(10 * PrefetchingInputEngine.DEFAULT_CAPACITY));
+        final var before = prefetchThreads();
+
+        assertThrows(RuntimeException.class, () -> SokobanGameFactory.createReplayGame(mapFile.toString(),
+                ReplaySokobanGame.Mode.ROUND_ROBIN, ReplaySokobanGame.UNTHROTTLED,
+                new String[]{actionFile.toString(), tempDir.resolve("missing.txt").toString()}));
+
+        // Without closing, the read-ahead thread would wait for its actions to be taken forever.
+        for (final var thread : prefetchThreads()) {
+            if (!before.contains(thread)) {
+                thread.join(1000);
+                assertFalse(thread.isAlive());
+            }
+        }
+    }
+
+    private static Set<Thread> prefetchThreads() {
+        final var threads = new HashSet<Thread>();
+        for (final var thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("input-prefetch")) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
 }
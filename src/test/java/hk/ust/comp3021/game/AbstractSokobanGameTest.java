@@ -1,11 +1,15 @@
 package hk.ust.comp3021.game;
 
 import hk.ust.comp3021.actions.*;
+import hk.ust.comp3021.replay.StreamInputEngine;
 import hk.ust.comp3021.utils.TestHelper;
 import hk.ust.comp3021.utils.TestKind;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 import java.util.Random;
 
@@ -277,6 +281,75 @@ class AbstractSokobanGameTest {
         assertInstanceOf(ActionResult.Success.class, result);
     }
 
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRepeatStopsAtFirstFailure() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                -1
+                #######
+                #A..#.#
+                #a...@#
+                #######
+                """));
+        final var game = new SokobanGameForTesting(gameState);
+
+        final var result = game.feedActionForProcessing(new Repeat(Move.Right.of(0), 5));
+
+        assertInstanceOf(ActionResult.Failed.class, result);
+        assertEquals("You hit a wall.", ((ActionResult.Failed) result).getReason());
+        assertEquals(Position.of(3, 1), gameState.getPlayerPositionById(0));
+        assertInstanceOf(ActionResult.Success.class, game.feedActionForProcessing(new Repeat(Move.Left.of(0), 2)));
+        assertEquals(Position.of(1, 1), gameState.getPlayerPositionById(0));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRepeatStopsWhenGameIsWon() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                -1
+                ########
+                #A.a@..#
+                ########
+                """));
+        final var game = new SokobanGameForTesting(gameState);
+
+        final var result = game.feedActionForProcessing(new Repeat(Move.Right.of(0), 3));
+
+        assertInstanceOf(ActionResult.Success.class, result);
+        assertTrue(gameState.isWin());
+        assertEquals(Position.of(3, 1), gameState.getPlayerPositionById(0));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testSteadyStateDispatchDoesNotAllocate() {
+        final var rounds = 50_000;
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                -1
+                #######
+                #..A..#
+                #a...@#
+                #######
+                """));
+        final var input = "0\n" + "H\nL\nK\n?\n".repeat(rounds * 3);
+        final var inputEngine = new StreamInputEngine(new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)));
+        final var game = new SokobanGameForTesting(gameState);
+        final var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final var threadId = Thread.currentThread().getId();
+        for (int i = 0; i < rounds * 3 * 2; i++) {
+            game.feedActionForProcessing(inputEngine.fetchAction());
+        }
+
+        final var before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < rounds * 3; i++) {
+            game.feedActionForProcessing(inputEngine.fetchAction());
+        }
+        final var allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(Position.of(3, 1), gameState.getPlayerPositionById(0));
+        assertTrue(allocated < rounds, "Allocated " + allocated + " bytes");
+    }
+
     private static class SokobanGameForTesting extends AbstractSokobanGame {
 
         protected SokobanGameForTesting(GameState gameState) {
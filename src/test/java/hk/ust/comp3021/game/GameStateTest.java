@@ -7,10 +7,17 @@ import hk.ust.comp3021.utils.TestKind;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -200,6 +207,152 @@ class GameStateTest {
         assertEquals(233, gameState.getUndoQuota().orElse(null));
     }
 
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRestoreSnapshot() throws IOException {
+        final var map = TestHelper.parseGameMap("""
+            233
+            #######
+            #.Aa.@#
+            #..a.@#
+            #######
+            """
+        );
+        final var gameState = new GameState(map);
+        gameState.move(Position.of(3, 1), Position.of(4, 1));
+        gameState.move(Position.of(2, 1), Position.of(3, 1));
+        gameState.checkpoint();
+        gameState.move(Position.of(3, 1), Position.of(2, 1));
+        gameState.undo();
+        gameState.move(Position.of(2, 1), Position.of(2, 2));
+        gameState.move(Position.of(3, 2), Position.of(4, 2));
+        gameState.move(Position.of(2, 2), Position.of(3, 2));
+        gameState.checkpoint();
+        gameState.move(Position.of(3, 2), Position.of(2, 2));
+        final var snapshot = gameState.snapshot();
+        final var bytes = new ByteArrayOutputStream();
+        snapshot.write(new DataOutputStream(bytes));
+
+        final var restored = new GameState(map);
+        restored.restore(GameState.Snapshot.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+
+        assertEquals(gameState, restored);
+        assertEquals(snapshot, restored.snapshot());
+        assertEquals(gameState.getPlayerPositionById(0), restored.getPlayerPositionById(0));
+        // The restored history undoes the same way.
+        gameState.undo();
+        restored.undo();
+        assertEquals(gameState, restored);
+        assertEquals(gameState.getPlayerPositionById(0), restored.getPlayerPositionById(0));
+        assertEquals(Set.copyOf(gameState.getMovablePositions()), Set.copyOf(restored.getMovablePositions()));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testSnapshotsShareUnlimitedHistory() throws IOException {
+        final var map = TestHelper.parseGameMap("""
+            -1
+            #######
+            #.Aa.@#
+            #######
+            """
+        );
+        final var gameState = new GameState(map);
+        final var snapshots = new ArrayList<GameState.Snapshot>();
+        for (int k = 0; k < 100; k++) {
+            // Undo some of the history between snapshots, so that they share only part of it.
+            for (int i = 0; i < 3 && k > 0; i++) {
+                gameState.undo();
+            }
+            for (int i = 0; i < 13; i++) {
+                final var player = gameState.getPlayerPositionById(0);
+                gameState.move(player, Position.of(player.x() == 1 ? 2 : 1, 1));
+                gameState.checkpoint();
+            }
+            snapshots.add(gameState.snapshot());
+        }
+
+        final var bytes = new ByteArrayOutputStream();
+        final var output = new DataOutputStream(bytes);
+        GameState.Snapshot previous = null;
+        for (final var snapshot : snapshots) {
+            snapshot.write(output, previous);
+            previous = snapshot;
+        }
+        final var last = new ByteArrayOutputStream();
+        snapshots.get(snapshots.size() - 1).write(new DataOutputStream(last));
+        // Each snapshot only writes the checkpoints made since the previous one.
+        assertTrue(bytes.size() < 2 * last.size(), bytes.size() + " bytes");
+
+        final var input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        previous = null;
+        for (final var snapshot : snapshots) {
+            previous = GameState.Snapshot.read(input, previous);
+            assertEquals(snapshot, previous);
+        }
+        // The restored history undoes back to the start.
+        final var restored = new GameState(map);
+        restored.restore(previous);
+        for (int i = 0; i < 13 * 100; i++) {
+            restored.undo();
+        }
+        assertEquals(new GameState(map), restored);
+        assertEquals(Position.of(2, 1), restored.getPlayerPositionById(0));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testMovablePositionsAndVersionFollowMovesAndUndo() {
+        final var gameMap = TestHelper.parseGameMap("""
+            -1
+            #######
+            #.Aa.@#
+            #@.B.b#
+            #######
+            """
+        );
+        final var gameState = new GameState(gameMap);
+        final var initial = Set.of(Position.of(2, 1), Position.of(3, 1), Position.of(3, 2), Position.of(5, 2));
+        assertEquals(initial, Set.copyOf(gameState.getMovablePositions()));
+
+        final var initialVersion = gameState.getVersion();
+        gameState.move(Position.of(3, 1), Position.of(4, 1));
+        gameState.move(Position.of(2, 1), Position.of(3, 1));
+        final var movedVersion = gameState.getVersion();
+        gameState.checkpoint();
+        assertTrue(movedVersion > initialVersion);
+        assertEquals(movedVersion, gameState.getVersion());
+        assertEquals(Set.of(Position.of(3, 1), Position.of(4, 1), Position.of(3, 2), Position.of(5, 2)),
+                Set.copyOf(gameState.getMovablePositions()));
+
+        final var version = gameState.getVersion();
+        gameState.undo();
+        assertTrue(gameState.getVersion() > version);
+        assertEquals(initial, Set.copyOf(gameState.getMovablePositions()));
+        assertSame(gameMap, gameState.getGameMap());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRestoreSnapshotOfOtherMap() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+            233
+            ######
+            #.Aa@#
+            ######
+            """
+        ));
+        final var other = new GameState(TestHelper.parseGameMap("""
+            233
+            #######
+            #.Aa.@#
+            #######
+            """
+        ));
+
+        assertThrows(IllegalArgumentException.class, () -> gameState.restore(other.snapshot()));
+    }
+
     private Entity generateEntity(int key) {
         return switch (key % 4) {
             case 0 -> new Box(0);
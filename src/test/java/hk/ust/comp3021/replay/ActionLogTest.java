@@ -0,0 +1,128 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.actions.Action;
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.Repeat;
+import hk.ust.comp3021.utils.TestKind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActionLogTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private static List<String> describe(hk.ust.comp3021.game.InputEngine inputEngine) {
+        final var actions = new ArrayList<String>();
+        Action action;
+        do {
+            action = inputEngine.fetchAction();
+            final var count = action instanceof Repeat repeat ? repeat.getCount() : 1;
+            final var base = action instanceof Repeat repeat ? repeat.getAction() : action;
+            actions.add(base.getClass().getSimpleName() + base.getInitiator() + "x" + count);
+        } while (!(action instanceof Exit && action.getInitiator() == -1));
+        return actions;
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRoundTrip() throws IOException {
+        final var text = tempDir.resolve("actions.txt");
+        final var binary = tempDir.resolve("actions.bin");
+        final var converted = tempDir.resolve("converted.txt");
+        Files.writeString(text, "3\nH\nJ\n#junk\nK12\nL\nU\nL300\nE\nH\n");
+
+        ActionLog.convert(text, binary, false);
+        ActionLog.convert(binary, converted, false);
+
+        assertTrue(ActionLog.isBinary(binary));
+        assertFalse(ActionLog.isBinary(text));
+        assertEquals(describe(new StreamInputEngine(new FileInputStream(text.toFile()))),
+                describe(new MappedInputEngine(binary)));
+        assertEquals("3\nH\nJ\nK12\nL\nU\nL300\nE\nH\n", Files.readString(converted).replace(System.lineSeparator(), "\n"));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testMergeRuns() throws IOException {
+        final var text = "0\n" + "L\n".repeat(1000) + "H\n".repeat(3) + "E\n";
+        final var binary = tempDir.resolve("runs.bin");
+
+        try (var out = Files.newOutputStream(binary)) {
+            ActionLog.toBinary(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)), out, true);
+        }
+
+        assertTrue(Files.size(binary) < 20);
+        assertEquals(List.of("Right0x1000", "Left0x3", "Exit0x1", "Exit-1x1"), describe(new MappedInputEngine(binary)));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testSmallerThanText() throws IOException {
+        final var text = "1\n" + "H\nJ\nK\nL\n".repeat(10_000);
+        final var binary = tempDir.resolve("plain.bin");
+
+        try (var out = Files.newOutputStream(binary)) {
+            ActionLog.toBinary(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)), out, false);
+        }
+
+        assertTrue(Files.size(binary) * 5 < text.length());
+        final var inputEngine = new MappedInputEngine(binary);
+        final var batch = new Action[64];
+        var total = 0;
+        for (var count = inputEngine.fetchActions(batch.length, batch); ; count = inputEngine.fetchActions(batch.length, batch)) {
+            total += count;
+            if (batch[count - 1] instanceof Exit) {
+                break;
+            }
+        }
+        assertEquals(40_001, total);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRejectTextFile() throws IOException {
+        final var text = tempDir.resolve("actions.txt");
+        Files.writeString(text, "0\nL\n");
+
+        assertThrows(IOException.class, () -> new MappedInputEngine(text));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testMergedRunsStayWithinMaxRepeat() throws IOException {
+        final var text = "0\nL1000000\nL5\nE\n";
+        final var binary = tempDir.resolve("long.bin");
+        final var converted = tempDir.resolve("long.txt");
+
+        try (var out = Files.newOutputStream(binary)) {
+            ActionLog.toBinary(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)), out, true);
+        }
+        ActionLog.convert(binary, converted, false);
+
+        assertEquals(text, Files.readString(converted).replace(System.lineSeparator(), "\n"));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRejectInvalidRepeatCount() {
+        for (final var line : List.of("L0", "L1000001")) {
+            final var text = "0\nH\n" + line + "\n";
+            assertThrows(IOException.class, () -> ActionLog.toBinary(
+                    new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)), new ByteArrayOutputStream(), false), line);
+        }
+    }
+}
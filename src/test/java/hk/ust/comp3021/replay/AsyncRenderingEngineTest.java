@@ -0,0 +1,156 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.Position;
+import hk.ust.comp3021.utils.TestHelper;
+import hk.ust.comp3021.utils.TestKind;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncRenderingEngineTest {
+
+    private static final String MAP = """
+            -1
+            ##########
+            #A.......#
+            #.a....@.#
+            ##########
+            """;
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testOutputMatchesSynchronousRendering() {
+        for (final var mode : TerminalRenderingEngine.Mode.values()) {
+            final var expected = new CollectingChannel(0);
+            final var actual = new CollectingChannel(0);
+            final var terminalRenderingEngine = new TerminalRenderingEngine(expected, mode);
+            final var asyncRenderingEngine = new AsyncRenderingEngine(actual, mode, Integer.MAX_VALUE);
+
+            final var gameState = new GameState(TestHelper.parseGameMap(MAP));
+            for (int x = 1; x < 8; x++) {
+                terminalRenderingEngine.message("Frame " + x);
+                asyncRenderingEngine.message("Frame " + x);
+                terminalRenderingEngine.render(gameState);
+                asyncRenderingEngine.render(gameState);
+                gameState.move(Position.of(x, 1), Position.of(x + 1, 1));
+            }
+            terminalRenderingEngine.message("Done");
+            asyncRenderingEngine.message("Done");
+            terminalRenderingEngine.close();
+            asyncRenderingEngine.close();
+
+            assertEquals(expected.getContent(), actual.getContent());
+            assertEquals(0, asyncRenderingEngine.getDroppedFrames());
+        }
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testDropsOldestFramesWhenOutputIsSlow() {
+        final var channel = new CollectingChannel(20);
+        final var renderingEngine = new AsyncRenderingEngine(channel, TerminalRenderingEngine.Mode.FULL, 1);
+
+        final var gameState = new GameState(TestHelper.parseGameMap(MAP));
+        for (int x = 1; x < 8; x++) {
+            renderingEngine.render(gameState);
+            gameState.move(Position.of(x, 1), Position.of(x + 1, 1));
+        }
+        renderingEngine.render(gameState);
+        renderingEngine.message("Done");
+        renderingEngine.close();
+
+        assertTrue(renderingEngine.getDroppedFrames() > 0);
+        assertTrue(channel.getContent().endsWith("""
+                #.......A#
+                #.a....@.#
+                ##########
+                Done""" + System.lineSeparator()), channel.getContent());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    @Timeout(value = 5, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void testRenderDoesNotWaitForOutput() {
+        final var release = new CountDownLatch(1);
+        final var channel = new CollectingChannel(0) {
+            @Override
+            public int write(@NotNull ByteBuffer source) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.write(source);
+            }
+        };
+        final var renderingEngine = new AsyncRenderingEngine(channel, TerminalRenderingEngine.Mode.FULL);
+        final var gameState = new GameState(TestHelper.parseGameMap(MAP));
+
+        // Far more messages than can wait to be formatted, so rendering would block if any of them waited for room.
+        final var start = System.nanoTime();
+        for (int i = 0; i < 20_000; i++) {
+            renderingEngine.message("Undo Quota: unlimited");
+            renderingEngine.render(gameState);
+        }
+        final var elapsed = System.nanoTime() - start;
+        release.countDown();
+        renderingEngine.close();
+
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(2), elapsed + " ns");
+        assertTrue(renderingEngine.getDroppedFrames() > 0);
+        assertTrue(renderingEngine.getDroppedMessages() > 0);
+    }
+
+    private static class CollectingChannel implements WritableByteChannel {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final long delayMillis;
+
+        CollectingChannel(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public int write(@NotNull ByteBuffer source) {
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final var size = source.remaining();
+            final var array = new byte[size];
+            source.get(array);
+            synchronized (bytes) {
+                bytes.writeBytes(array);
+            }
+            return size;
+        }
+
+        String getContent() {
+            synchronized (bytes) {
+                return bytes.toString(StandardCharsets.UTF_8);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.utils.TestKind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FramePacerTest {
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testFrameRateIsExactOnAverage() {
+        // A period of 1000 / 144 ms rounded down would run at about 166 fps.
+        final var now = new AtomicLong(12_345);
+        final var pacer = new FramePacer(144, now::get);
+        for (int frame = 1; frame <= 144 * 10; frame++) {
+            pacer.startFrame();
+            assertEquals(12_345 + frame * TimeUnit.SECONDS.toNanos(1) / 144, pacer.getNextDeadline());
+            // Wake up somewhat late, but within the period.
+            now.set(pacer.getNextDeadline() + frame % 1000);
+        }
+        assertEquals(12_345 + TimeUnit.SECONDS.toNanos(10), pacer.getNextDeadline());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testAwaitsNextFrame() {
+        final var pacer = new FramePacer(144);
+        final var start = System.nanoTime();
+        for (int i = 0; i < 36; i++) {
+            pacer.startFrame();
+            pacer.awaitNextFrame();
+        }
+        final var elapsed = System.nanoTime() - start;
+        // Deadlines are never early; only a loose bound on lateness, which depends on the scheduler.
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(250), elapsed + " ns");
+        assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(1000), elapsed + " ns");
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testLateFrameSkipsMissedFrames() throws InterruptedException {
+        final var pacer = new FramePacer(100);
+        assertTrue(pacer.isFrameDue());
+        pacer.startFrame();
+        assertFalse(pacer.isFrameDue());
+
+        Thread.sleep(55);
+        assertTrue(pacer.isFrameDue());
+        pacer.startFrame();
+        assertFalse(pacer.isFrameDue());
+        final var start = System.nanoTime();
+        pacer.awaitNextFrame();
+        assertTrue(System.nanoTime() - start <= TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRejectsInvalidFrameRate() {
+        assertThrows(IllegalArgumentException.class, () -> new FramePacer(0));
+    }
+}
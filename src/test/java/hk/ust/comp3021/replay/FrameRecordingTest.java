@@ -0,0 +1,193 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.Position;
+import hk.ust.comp3021.utils.TestHelper;
+import hk.ust.comp3021.utils.TestKind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameRecordingTest {
+
+    private static final String MAP = """
+            -1
+            ##############################
+            #A.a.......................@.#
+            #............................#
+            ##############################
+            """;
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testPlaybackMatchesRenderedOutput() throws IOException, InterruptedException {
+        for (final var compress : new boolean[]{false, true}) {
+            final var rendered = new ByteArrayOutputStream();
+            final var recording = new ByteArrayOutputStream();
+            try (var recorder = new FrameRecording.Recorder(recording, compress,
+                    new TerminalRenderingEngine(new PrintStream(rendered, true, StandardCharsets.UTF_8)))) {
+                recordGame(recorder, 0);
+            }
+
+            final var played = new ByteArrayOutputStream();
+            try (var player = new FrameRecording.Player(new ByteArrayInputStream(recording.toByteArray()))) {
+                assertEquals(26, player.play(Channels.newChannel(played), TerminalRenderingEngine.Mode.FULL,
+                        Double.POSITIVE_INFINITY));
+            }
+            assertEquals(rendered.toString(StandardCharsets.UTF_8), played.toString(StandardCharsets.UTF_8));
+            assertTrue(recording.size() * 4 < rendered.size(), recording.size() + " bytes");
+        }
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testDifferentialPlaybackWritesChangedCells() throws IOException, InterruptedException {
+        final var recording = new ByteArrayOutputStream();
+        try (var recorder = new FrameRecording.Recorder(recording, false, null)) {
+            final var gameState = new GameState(TestHelper.parseGameMap(MAP));
+            recorder.render(gameState);
+            gameState.move(Position.of(3, 1), Position.of(4, 1));
+            gameState.move(Position.of(1, 1), Position.of(3, 1));
+            recorder.render(gameState);
+        }
+
+        final var played = new ByteArrayOutputStream();
+        try (var player = new FrameRecording.Player(new ByteArrayInputStream(recording.toByteArray()))) {
+            player.play(Channels.newChannel(played), TerminalRenderingEngine.Mode.DIFFERENTIAL, Double.POSITIVE_INFINITY);
+        }
+        final var output = played.toString(StandardCharsets.UTF_8);
+        assertTrue(output.contains("\033[2J#####"), output);
+        assertTrue(output.endsWith("\033[5r\033[5;1H\0337\033[2;2H.\033[2;4HAa\0338\0337\033[r\0338"), output);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testPlaybackKeepsRecordedTiming() throws IOException, InterruptedException {
+        final var recording = new ByteArrayOutputStream();
+        try (var recorder = new FrameRecording.Recorder(recording, true, null)) {
+            recordGame(recorder, 10);
+        }
+
+        final var start = System.nanoTime();
+        try (var player = new FrameRecording.Player(new ByteArrayInputStream(recording.toByteArray()))) {
+            player.play(Channels.newChannel(new ByteArrayOutputStream()), TerminalRenderingEngine.Mode.FULL, 2);
+        }
+        final var elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(25 * 10 / 2), elapsed + " ns");
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    @Timeout(value = 5, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void testRenderDoesNotWaitForStalledRecording() throws IOException, InterruptedException {
+        final var release = new CountDownLatch(1);
+        final var recording = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.write(b, off, len);
+            }
+        };
+        final var gameState = new GameState(TestHelper.parseGameMap(MAP));
+        final var rendered = new ByteArrayOutputStream();
+        try (var recorder = new FrameRecording.Recorder(recording, false, null)) {
+            // Far more frames and messages than can wait to be recorded, so rendering would block if any of them waited.
+            final var start = System.nanoTime();
+            for (int i = 0; i < 20_000; i++) {
+                recorder.message("Step " + i);
+                final var from = Position.of(1 + i % 2, 1);
+                gameState.move(from, Position.of(2 - i % 2, 1));
+                recorder.render(gameState);
+            }
+            final var elapsed = System.nanoTime() - start;
+            release.countDown();
+
+            assertTrue(elapsed < TimeUnit.SECONDS.toNanos(2), elapsed + " ns");
+            assertTrue(recorder.getDroppedFrames() > 0);
+            assertTrue(recorder.getDroppedMessages() > 0);
+            // Render the last state again until there is room for it, once the recording catches up.
+            long dropped;
+            do {
+                dropped = recorder.getDroppedFrames();
+                recorder.render(gameState);
+            } while (recorder.getDroppedFrames() != dropped);
+            new TerminalRenderingEngine(new PrintStream(rendered, true, StandardCharsets.UTF_8)).render(gameState);
+        }
+
+        // Frames after the dropped ones are still recorded against the last recorded frame.
+        final var played = new ByteArrayOutputStream();
+        try (var player = new FrameRecording.Player(new ByteArrayInputStream(recording.toByteArray()))) {
+            player.play(Channels.newChannel(played), TerminalRenderingEngine.Mode.FULL, Double.POSITIVE_INFINITY);
+        }
+        final var output = played.toString(StandardCharsets.UTF_8);
+        assertTrue(output.endsWith(rendered.toString(StandardCharsets.UTF_8)), output.substring(output.length() - 200));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRejectsOtherFiles() {
+        assertThrows(IOException.class, () -> new FrameRecording.Player(new ByteArrayInputStream(new byte[]{'S', 'K', 'I', 'L', 1})));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRejectsMalformedFrames() {
+        final var maxInt = new int[]{0xFF, 0xFF, 0xFF, 0xFF, 0x07};
+        // Keyframes whose size overflows an int, or is too large to allocate
+        assertMalformed(concat(new int[]{0, 0}, maxInt, maxInt));
+        assertMalformed(new int[]{0, 0, 0x80, 0x80, 0x40, 0x80, 0x80, 0x40});
+        // A 1x1 keyframe, then a delta whose second cell overflows an int
+        assertMalformed(concat(new int[]{0, 0, 1, 1, 'x', '\n', 1, 0, 2, 0, 'y'}, maxInt, new int[]{'z'}));
+        // A delta beyond the end of the frame
+        assertMalformed(new int[]{0, 0, 1, 1, 'x', '\n', 1, 0, 1, 2, 'y'});
+    }
+
+    private static int[] concat(int[]... parts) {
+        return Arrays.stream(parts).flatMapToInt(Arrays::stream).toArray();
+    }
+
+    private static void assertMalformed(int[] frames) {
+        final var bytes = new ByteArrayOutputStream();
+        bytes.writeBytes(new byte[]{'S', 'K', 'F', 'R', 1});
+        for (final var b : frames) {
+            bytes.write(b);
+        }
+        assertThrows(IOException.class, () -> {
+            try (var player = new FrameRecording.Player(new ByteArrayInputStream(bytes.toByteArray()))) {
+                player.play(Channels.newChannel(new ByteArrayOutputStream()), TerminalRenderingEngine.Mode.DIFFERENTIAL,
+                        Double.POSITIVE_INFINITY);
+            }
+        });
+    }
+
+    private static void recordGame(FrameRecording.Recorder recorder, long frameMillis) throws InterruptedException {
+        final var gameState = new GameState(TestHelper.parseGameMap(MAP));
+        recorder.message("Sokoban game is ready.");
+        recorder.render(gameState);
+        var player = Position.of(1, 1);
+        for (int x = 1; x <= 25; x++) {
+            Thread.sleep(frameMillis);
+            recorder.message("Step " + x);
+            final var next = Position.of(x + 1, 2);
+            gameState.move(player, next);
+            player = next;
+            recorder.render(gameState);
+        }
+    }
+}
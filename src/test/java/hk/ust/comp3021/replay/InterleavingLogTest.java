@@ -0,0 +1,143 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.RenderingEngine;
+import hk.ust.comp3021.utils.StringResources;
+import hk.ust.comp3021.utils.TestHelper;
+import hk.ust.comp3021.utils.TestKind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class InterleavingLogTest {
+
+    private static final String MAP = """
+            -1
+            ########
+            #A.a.@.#
+            #......#
+            #B.b.@.#
+            ########
+            """;
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRoundTrip() throws IOException {
+        final var random = new Random(1);
+        final var expected = new ArrayList<Integer>();
+        for (int i = 0; i < 10_000; i++) {
+            final var engine = random.nextInt(5) == 0 ? random.nextInt(300) : 1;
+            final var run = 1 + random.nextInt(40);
+            for (int k = 0; k < run; k++) {
+                expected.add(engine);
+            }
+        }
+        final var bytes = new ByteArrayOutputStream();
+        try (var writer = new InterleavingLog.Writer(bytes)) {
+            expected.forEach(writer::record);
+            assertEquals(expected.size(), writer.getCount());
+        }
+
+        final var actual = new ArrayList<Integer>();
+        try (var reader = new InterleavingLog.Reader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            for (var engine = reader.next(); engine != InterleavingLog.END; engine = reader.next()) {
+                actual.add(engine);
+            }
+        }
+        assertEquals(expected, actual);
+        assertTrue(bytes.size() < expected.size() / 4);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRejectsOtherFiles() {
+        assertThrows(IOException.class, () -> new InterleavingLog.Reader(stream("0\nL\n")));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testReplayReproducesFreeRace() throws IOException {
+        final var random = new Random(3);
+        final var actions = List.of(randomActions(random, 0), randomActions(random, 1));
+        final var map = TestHelper.parseGameMap(MAP);
+
+        final var recordedState = new GameState(map);
+        final var recordedFailures = Collections.synchronizedList(new ArrayList<String>());
+        final var game = new ReplaySokobanGame(ReplaySokobanGame.Mode.FREE_RACE, 1000, recordedState, List.of(
+                new StreamInputEngine(stream(actions.get(0))),
+                new StreamInputEngine(stream(actions.get(1)))
+        ), failureCollector(recordedFailures));
+        final var log = new ByteArrayOutputStream();
+        try (var recorder = new InterleavingLog.Writer(log)) {
+            game.setInterleavingRecorder(recorder);
+            game.run();
+        }
+
+        final var replayedState = new GameState(map);
+        final var replayedFailures = new ArrayList<String>();
+        try (var schedule = new InterleavingLog.Reader(new ByteArrayInputStream(log.toByteArray()))) {
+            new DeterministicReplaySokobanGame(replayedState, List.of(
+                    new StreamInputEngine(stream(actions.get(0))),
+                    new StreamInputEngine(stream(actions.get(1)))
+            ), failureCollector(replayedFailures), schedule).run();
+        }
+
+        assertEquals(recordedState, replayedState);
+        assertEquals(recordedFailures, replayedFailures);
+        assertFalse(replayedFailures.isEmpty());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testReplayRejectsMismatchedLog() throws IOException {
+        final var log = new ByteArrayOutputStream();
+        try (var recorder = new InterleavingLog.Writer(log)) {
+            recorder.record(0);
+            recorder.record(0);
+        }
+        final var game = new DeterministicReplaySokobanGame(new GameState(TestHelper.parseGameMap(MAP)), List.of(
+                new StreamInputEngine(stream("0\nE\n")),
+                new StreamInputEngine(stream("1\nE\n"))
+        ), mock(RenderingEngine.class), new InterleavingLog.Reader(new ByteArrayInputStream(log.toByteArray())));
+
+        assertThrows(IllegalStateException.class, game::run);
+    }
+
+    private static RenderingEngine failureCollector(List<String> failures) {
+        final var renderingEngine = mock(RenderingEngine.class);
+        doAnswer(invocation -> {
+            final String message = invocation.getArgument(0);
+            if (!message.equals(StringResources.GAME_READY_MESSAGE) && !message.equals(StringResources.GAME_EXIT_MESSAGE)
+                    && !message.equals(StringResources.WIN_MESSAGE) && !message.equals(StringResources.UNDO_QUOTA_UNLIMITED)) {
+                failures.add(message);
+            }
+            return null;
+        }).when(renderingEngine).message(anyString());
+        return renderingEngine;
+    }
+
+    private static String randomActions(Random random, int playerId) {
+        final var builder = new StringBuilder().append(playerId).append('\n');
+        for (int i = 0; i < 2000; i++) {
+            builder.append("HJKLU".charAt(random.nextInt(5))).append('\n');
+        }
+        return builder.append("E\n").toString();
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,140 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.utils.TestKind;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputMultiplexerTest {
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testKeepsWritesOfEachGameContiguousAndInOrder() throws InterruptedException {
+        final var channel = new CountingChannel(1);
+        final var multiplexer = new OutputMultiplexer(channel, 4096);
+        final var threads = new ArrayList<Thread>();
+        for (int game = 0; game < 4; game++) {
+            final var sink = multiplexer.newSink();
+            final var id = game;
+            threads.add(new Thread(() -> {
+                for (int frame = 0; frame < 500; frame++) {
+                    try {
+                        sink.write(StandardCharsets.UTF_8.encode("game " + id + " frame " + frame + "\n"));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (final var thread : threads) {
+            thread.join();
+        }
+        multiplexer.close();
+
+        final var lines = channel.getContent().lines().toList();
+        assertEquals(4 * 500, lines.size());
+        final var nextFrames = new int[4];
+        for (final var line : lines) {
+            final var words = line.split(" ");
+            assertEquals(4, words.length, line);
+            final var game = Integer.parseInt(words[1]);
+            assertEquals(nextFrames[game]++, Integer.parseInt(words[3]), line);
+        }
+        assertTrue(channel.getWrites() < lines.size() / 10, channel.getWrites() + " writes");
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRenderingEnginesShareChannel() {
+        final var channel = new CountingChannel(0);
+        final var multiplexer = new OutputMultiplexer(channel);
+        final var first = new TerminalRenderingEngine(multiplexer.newSink(), TerminalRenderingEngine.Mode.FULL);
+        final var second = new TerminalRenderingEngine(multiplexer.newSink(), TerminalRenderingEngine.Mode.FULL);
+        first.message("first");
+        second.message("second");
+        first.close();
+        second.close();
+        multiplexer.close();
+
+        final var content = channel.getContent();
+        assertTrue(content.contains("first" + System.lineSeparator()), content);
+        assertTrue(content.contains("second" + System.lineSeparator()), content);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testReportsFailureOfChannel() {
+        final var multiplexer = new OutputMultiplexer(new CountingChannel(0) {
+            @Override
+            public int write(@NotNull ByteBuffer source) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        }, 16);
+        final var sink = multiplexer.newSink();
+        assertThrows(IOException.class, () -> {
+            for (int i = 0; i < 1000; i++) {
+                sink.write(ByteBuffer.wrap(new byte[10]));
+            }
+        });
+        assertThrows(RuntimeException.class, multiplexer::close);
+    }
+
+    private static class CountingChannel implements WritableByteChannel {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final AtomicInteger writes = new AtomicInteger();
+        private final long delayMillis;
+
+        CountingChannel(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public int write(@NotNull ByteBuffer source) throws IOException {
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            writes.incrementAndGet();
+            final var size = source.remaining();
+            final var array = new byte[size];
+            source.get(array);
+            synchronized (bytes) {
+                bytes.writeBytes(array);
+            }
+            return size;
+        }
+
+        String getContent() {
+            synchronized (bytes) {
+                return bytes.toString(StandardCharsets.UTF_8);
+            }
+        }
+
+        int getWrites() {
+            return writes.get();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
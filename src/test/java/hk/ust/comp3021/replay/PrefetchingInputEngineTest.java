@@ -0,0 +1,195 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.actions.Action;
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.Move;
+import hk.ust.comp3021.game.InputEngine;
+import hk.ust.comp3021.utils.TestKind;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PrefetchingInputEngineTest {
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testDeliversActionsInOrderAndRepeatsExit() {
+        final var count = 10_000;
+        final var stream = new ByteArrayInputStream(("0\n" + "L\nH\n".repeat(count)).getBytes(StandardCharsets.UTF_8));
+
+        final var engine = new PrefetchingInputEngine(new StreamInputEngine(stream), 16, Executors.defaultThreadFactory());
+        for (int i = 0; i < count; i++) {
+            assertTrue(engine.fetchAction() instanceof Move.Right);
+            assertTrue(engine.fetchAction() instanceof Move.Left);
+        }
+
+        final var end = engine.fetchAction();
+        assertTrue(end instanceof Exit);
+        assertEquals(-1, end.getInitiator());
+        assertSame(end, engine.fetchAction());
+        final var metrics = engine.getMetrics();
+        assertEquals(2L * count + 1, metrics.fetched());
+        assertEquals(0, metrics.queueDepth());
+        assertTrue(metrics.maxQueueDepth() <= 16);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testFullBufferParksProducerUntilActionsAreTaken() throws InterruptedException {
+        final var delegate = mock(InputEngine.class);
+        when(delegate.fetchAction()).thenReturn(Move.Right.of(0));
+        final var threads = new ArrayList<Thread>();
+        final var engine = new PrefetchingInputEngine(delegate, 4, runnable -> {
+            final var thread = new Thread(runnable);
+            thread.setDaemon(true);
+            threads.add(thread);
+            return thread;
+        });
+
+        // The producer waits without a timeout, so it does not wake up while the buffer stays full.
+        final var producer = threads.get(0);
+        while (engine.getMetrics().queueDepth() < 4 || producer.getState() != Thread.State.WAITING) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(engine.fetchAction() instanceof Move.Right);
+        }
+        engine.close();
+        producer.join(1000);
+        assertFalse(producer.isAlive());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testFetchBatchStopsAtExit() throws InterruptedException {
+        final var delegate = mock(InputEngine.class);
+        when(delegate.fetchAction()).thenReturn(Move.Left.of(0), Move.Up.of(0), Exit.of(0), Move.Down.of(0));
+        final var engine = new PrefetchingInputEngine(delegate);
+        final var batch = new Action[8];
+
+        // Wait for the whole input to be read ahead.
+        while (engine.getMetrics().queueDepth() < 3) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        final var count = engine.fetchActions(batch.length, batch);
+
+        assertEquals(3, count);
+        assertTrue(batch[0] instanceof Move.Left);
+        assertTrue(batch[1] instanceof Move.Up);
+        assertTrue(batch[2] instanceof Exit);
+        assertEquals(1, engine.fetchActions(batch.length, batch));
+        assertSame(Exit.of(0), batch[0]);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRecordsStalls() {
+        final var release = new CountDownLatch(1);
+        final var delegate = mock(InputEngine.class);
+        when(delegate.fetchAction()).thenAnswer(invocation -> {
+            release.await();
+            return Exit.of(-1);
+        });
+        final var engine = new PrefetchingInputEngine(delegate);
+
+        final var releaser = new Thread(() -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        });
+        releaser.start();
+
+        assertTrue(engine.fetchAction() instanceof Exit);
+        final var metrics = engine.getMetrics();
+        assertEquals(1, metrics.stalls());
+        assertTrue(metrics.stallNanos() >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testPropagatesFailureAfterPendingActions() {
+        final var delegate = mock(InputEngine.class);
+        when(delegate.fetchAction()).thenReturn(Move.Left.of(0)).thenThrow(new IllegalStateException("broken"));
+        final var engine = new PrefetchingInputEngine(delegate);
+
+        assertTrue(engine.fetchAction() instanceof Move.Left);
+        assertThrows(IllegalStateException.class, engine::fetchAction);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testCloseUnblocksReadAndClosesStream() throws InterruptedException {
+        final var input = new BlockingStream("0\nL\n");
+        final var threads = new ArrayList<Thread>();
+        final var engine = new PrefetchingInputEngine(new StreamInputEngine(input), 16, runnable -> {
+            final var thread = new Thread(runnable);
+            threads.add(thread);
+            return thread;
+        });
+        assertTrue(engine.fetchAction() instanceof Move.Right);
+        assertTrue(input.reading.await(1, TimeUnit.SECONDS));
+
+        engine.close();
+        threads.get(0).join(1000);
+
+        assertFalse(threads.get(0).isAlive());
+        assertTrue(engine.fetchAction() instanceof Exit);
+        assertEquals(0, input.closed.getCount());
+    }
+
+    /**
+     * A stream that blocks once its content is read, until it is closed, like a pipe whose writer is idle.
+     */
+    private static final class BlockingStream extends InputStream {
+        private final ByteArrayInputStream content;
+        private final CountDownLatch reading = new CountDownLatch(1);
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        private BlockingStream(String content) {
+            this.content = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int read() throws IOException {
+            final var buffer = new byte[1];
+            return read(buffer, 0, 1) < 0 ? -1 : buffer[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte @NotNull [] buffer, int offset, int length) throws IOException {
+            if (content.available() > 0) {
+                return content.read(buffer, offset, length);
+            }
+            reading.countDown();
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            throw new IOException("Stream closed");
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package hk.ust.comp3021.replay;
 
 import hk.ust.comp3021.actions.*;
 import hk.ust.comp3021.game.*;
+import hk.ust.comp3021.utils.TestHelper;
 import hk.ust.comp3021.utils.TestKind;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.*;
@@ -198,6 +199,135 @@ class ReplaySokobanGameTest {
         final var expected = (float) timeElapsed / 1000 * fps;
         assertEquals(expected, renderTimes.size(), (float) (expected * 0.1)); // 10% error tolerance
     }
+
+    @Test
+    @Tag(TestKind.REGRESSION)
+    void testFreeRaceProcessesBatches() {
+        final var gameState = mock(GameState.class);
+        final var renderingEngine = mock(RenderingEngine.class);
+        final var actions = List.<Action>of(
+                new Move.Right(0), new Move.Down(0), new Move.Left(0), new Exit(0), new Move.Up(0)
+        );
+        final var batchSizes = new ConcurrentLinkedQueue<Integer>();
+        final var inputEngine = new InputEngine() {
+            private int next = 0;
+
+            @Override
+            public @NotNull Action fetchAction() {
+                fail("Batch fetch should be used");
+                return new Exit();
+            }
+
+            @Override
+            public int fetchActions(int max, @NotNull Action[] out) {
+                var count = 0;
+                while (count < Math.min(max, 2) && next < actions.size()) {
+                    out[count++] = actions.get(next++);
+                }
+                batchSizes.add(count);
+                return count;
+            }
+        };
+        final var processed = new ConcurrentLinkedQueue<Action>();
+        final var game = new TestGame(ReplaySokobanGame.Mode.FREE_RACE, gameState, List.of(inputEngine), renderingEngine) {
+            @Override
+            public ActionResult processAction(@NotNull Action action) {
+                processed.add(action);
+                return super.processAction(action);
+            }
+        };
+
+        game.run();
+
+        assertEquals(actions.subList(0, 4), new ArrayList<>(processed));
+        assertEquals(List.of(2, 2), new ArrayList<>(batchSizes));
+    }
+
+    @Test
+    @Tag(TestKind.REGRESSION)
+    void testFrameSkippingRendersOnlyChanges() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                -1
+                ######
+                #A..@#
+                #..a.#
+                ######
+                """));
+        final var inputEngine = mock(InputEngine.class);
+        final var renderingEngine = mock(RenderingEngine.class);
+        final var game = new TestGame(ReplaySokobanGame.Mode.FREE_RACE, 50, gameState, List.of(inputEngine), renderingEngine);
+        game.enableFrameSkipping(null);
+        when(inputEngine.fetchAction())
+                .thenAnswer(new RandomlyPausedActionProducer(190, 210, List.of(new Move.Right(0), new Move.Left(0))));
+        final var renderedPositions = new ArrayList<Position>();
+        doAnswer(invocation -> {
+            renderedPositions.add(gameState.getPlayerPositionById(0));
+            return null;
+        }).when(renderingEngine).render(any());
+
+        game.run();
+
+        // About 30 frames pass at 50 fps; only the initial state, the two moves and the final state are rendered.
+        assertTrue(renderedPositions.size() >= 2 && renderedPositions.size() <= 4, renderedPositions.toString());
+        assertEquals(Position.of(1, 1), renderedPositions.get(0));
+        assertEquals(Position.of(1, 1), renderedPositions.get(renderedPositions.size() - 1));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testClosesInputEnginesWhenGameEnds() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                -1
+                ######
+                #A.a@#
+                ######
+                """));
+        final var winner = mock(InputEngine.class);
+        final var idle = mock(InputEngine.class);
+        when(winner.fetchAction()).thenReturn(new Move.Right(0));
+        when(idle.fetchAction()).thenReturn(new InvalidInput(0, "idle"));
+        final var game = new ReplaySokobanGame(ReplaySokobanGame.Mode.ROUND_ROBIN, ReplaySokobanGame.UNTHROTTLED,
+                gameState, List.of(winner, idle), mock(RenderingEngine.class));
+
+        game.run();
+
+        assertTrue(game.isWin());
+        verify(winner).close();
+        verify(idle).close();
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    @Timeout(5)
+    void testUnthrottledGameRendersOnlyInitialAndFinalState() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                -1
+                ######
+                #A..@#
+                #..a.#
+                ######
+                """));
+        final var inputEngine = mock(InputEngine.class);
+        final var renderingEngine = mock(RenderingEngine.class);
+        final var game = new TestGame(ReplaySokobanGame.Mode.FREE_RACE, ReplaySokobanGame.UNTHROTTLED, gameState,
+                List.of(inputEngine), renderingEngine);
+        final var actions = new ArrayList<Action>();
+        for (int i = 0; i < 20_000; i++) {
+            actions.add(new Move.Right(0));
+            actions.add(new Move.Left(0));
+            actions.add(new Move.Up(0));
+        }
+        actions.add(new Exit(0));
+        final var remaining = actions.iterator();
+        when(inputEngine.fetchAction()).thenAnswer(invocation -> remaining.next());
+
+        game.run();
+
+        verify(renderingEngine, times(2)).render(any());
+        assertEquals(actions.size(), game.getProcessedActionCount());
+        assertEquals(20_000, game.getFailedActionCount());
+        assertFalse(game.isWin());
+    }
 }
 
 class TestGame extends ReplaySokobanGame {
@@ -0,0 +1,134 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.RenderingEngine;
+import hk.ust.comp3021.utils.TestHelper;
+import hk.ust.comp3021.utils.TestKind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class SeekableReplayTest {
+
+    private static final String MAP = """
+            5
+            #########
+            #A.a....#
+            #.....@.#
+            #.......#
+            #B.b..@.#
+            #########
+            """;
+
+    @TempDir
+    private Path tempDir;
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testSeekMatchesSequentialReplay() throws IOException {
+        final var map = TestHelper.parseGameMap(MAP);
+        final var files = writeRandomActionFiles(300);
+
+        try (var replay = new SeekableReplay(map, files, 7);
+             var reference = new SeekableReplay(map, files, Integer.MAX_VALUE)) {
+            final var count = replay.index();
+            assertTrue(count > 0);
+            final var random = new Random(7);
+            for (int i = 0; i < 50; i++) {
+                final var action = random.nextInt((int) count + 1);
+                assertEquals(action, replay.seek(action));
+                reference.seek(0);
+                reference.seek(action);
+                assertSameState(reference.getState(), replay.getState());
+            }
+            assertEquals(count, replay.seek(count + 100));
+        }
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testIndexedReplayEndsLikeRoundRobinGame() throws IOException {
+        final var map = TestHelper.parseGameMap(MAP);
+        final var files = writeRandomActionFiles(100);
+        final var gameState = new GameState(map);
+        final var game = new ReplaySokobanGame(ReplaySokobanGame.Mode.ROUND_ROBIN, 1000, gameState, List.of(
+                new StreamInputEngine(new FileInputStream(files.get(0).toFile())),
+                new StreamInputEngine(new FileInputStream(files.get(1).toFile()))
+        ), mock(RenderingEngine.class));
+        game.run();
+
+        try (var replay = new SeekableReplay(map, files, 16)) {
+            replay.seek(10);
+            replay.index();
+            assertSameState(gameState, replay.getState());
+        }
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testSaveAndLoad() throws IOException {
+        final var map = TestHelper.parseGameMap(MAP);
+        final var files = writeRandomActionFiles(200);
+        final GameState expected;
+        try (var replay = new SeekableReplay(map, files, 10)) {
+            replay.index();
+            replay.save();
+            replay.seek(123);
+            expected = replay.getState();
+            assertTrue(Files.isRegularFile(files.get(0).resolveSibling("p0.txt" + SeekableReplay.INDEX_EXTENSION)));
+        }
+
+        try (var replay = new SeekableReplay(map, files, 10)) {
+            assertTrue(replay.load());
+            assertTrue(replay.getActionCount() > 0);
+            replay.seek(123);
+            assertSameState(expected, replay.getState());
+        }
+        try (var replay = new SeekableReplay(map, files, 20)) {
+            assertFalse(replay.load());
+        }
+        Files.writeString(files.get(1), "\nL\n", StandardOpenOption.APPEND);
+        try (var replay = new SeekableReplay(map, files, 10)) {
+            assertFalse(replay.load());
+        }
+    }
+
+    private List<Path> writeRandomActionFiles(int length) throws IOException {
+        final var random = new Random(length);
+        final var first = tempDir.resolve("p0.txt");
+        final var second = tempDir.resolve("p1.txt");
+        Files.writeString(first, randomActions(random, 0, length) + "E\n");
+        Files.writeString(second, randomActions(random, 1, length));
+        return List.of(first, second);
+    }
+
+    private static String randomActions(Random random, int playerId, int length) {
+        final var builder = new StringBuilder().append(playerId).append('\n');
+        final var actions = "HJKLLLJJU";
+        for (int i = 0; i < length; i++) {
+            builder.append(actions.charAt(random.nextInt(actions.length())));
+            if (random.nextInt(10) == 0) {
+                builder.append(2 + random.nextInt(3));
+            }
+            builder.append(random.nextInt(20) == 0 ? "\n# comment\n" : "\n");
+        }
+        return builder.toString();
+    }
+
+    private static void assertSameState(GameState expected, GameState actual) {
+        assertEquals(expected, actual);
+        assertEquals(expected.getPlayerPositionById(0), actual.getPlayerPositionById(0));
+        assertEquals(expected.getPlayerPositionById(1), actual.getPlayerPositionById(1));
+    }
+}
@@ -1,6 +1,10 @@
 package hk.ust.comp3021.replay;
 
+import hk.ust.comp3021.actions.Action;
 import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.InvalidInput;
+import hk.ust.comp3021.actions.Move;
+import hk.ust.comp3021.actions.Repeat;
 import hk.ust.comp3021.actions.Undo;
 import hk.ust.comp3021.utils.TestKind;
 import org.junit.jupiter.api.Tag;
@@ -59,6 +63,92 @@ class StreamInputEngineTest {
         assertEquals(playerId, action.getInitiator());
     }
 
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testSkipJunkLines() {
+        final var inputStream = fixValueStream("2\r\n\r\n# comment\r\n\nx\nhello\r\nK\n");
+
+        final var inputEngine = new StreamInputEngine(inputStream);
+        final var first = inputEngine.fetchAction();
+        final var second = inputEngine.fetchAction();
+        final var third = inputEngine.fetchAction();
+
+        assertEquals("Left", first.getClass().getSimpleName());
+        assertEquals(2, first.getInitiator());
+        assertEquals("Up", second.getClass().getSimpleName());
+        assertTrue(third instanceof Exit);
+        assertEquals(-1, third.getInitiator());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testLongInput() {
+        final var count = 200_000;
+        final var inputStream = fixValueStream("0\n" + "L\n?\n".repeat(count));
+
+        final var inputEngine = new StreamInputEngine(inputStream);
+        for (int i = 0; i < count; i++) {
+            assertEquals("Right", inputEngine.fetchAction().getClass().getSimpleName());
+        }
+
+        assertTrue(inputEngine.fetchAction() instanceof Exit);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testFetchBatchStopsAtExit() {
+        final var inputStream = fixValueStream("0\nH\nJ\nE\nK\n");
+        final var batch = new Action[8];
+
+        final var inputEngine = new StreamInputEngine(inputStream);
+        final var first = inputEngine.fetchActions(batch.length, batch);
+
+        assertEquals(3, first);
+        assertEquals("Left", batch[0].getClass().getSimpleName());
+        assertEquals("Down", batch[1].getClass().getSimpleName());
+        assertTrue(batch[2] instanceof Exit);
+        assertEquals(1, inputEngine.fetchActions(1, batch));
+        assertEquals("Up", batch[0].getClass().getSimpleName());
+        assertEquals(1, inputEngine.fetchActions(batch.length, batch));
+        assertTrue(batch[0] instanceof Exit);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRepeatCount() {
+        final var inputStream = fixValueStream("1\nL25\nH1\nu3x\nE9\n");
+
+        final var inputEngine = new StreamInputEngine(inputStream);
+        final var first = inputEngine.fetchAction();
+        final var second = inputEngine.fetchAction();
+        final var third = inputEngine.fetchAction();
+        final var fourth = inputEngine.fetchAction();
+
+        assertTrue(first instanceof Repeat repeat && repeat.getCount() == 25 && repeat.getAction() instanceof Move.Right);
+        assertEquals(1, first.getInitiator());
+        assertTrue(second instanceof Move.Left);
+        assertTrue(third instanceof Repeat repeat && repeat.getCount() == 3 && repeat.getAction() instanceof Undo);
+        assertTrue(fourth instanceof Exit);
+        assertEquals(1, fourth.getInitiator());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testInvalidRepeatCount() {
+        final var inputStream = fixValueStream("1\nL0\nL1000001\nH99999999999999999999\nL1000000\nL007\n");
+
+        final var inputEngine = new StreamInputEngine(inputStream);
+
+        for (int i = 0; i < 3; i++) {
+            final var action = inputEngine.fetchAction();
+            assertTrue(action instanceof InvalidInput, action.toString());
+            assertEquals(1, action.getInitiator());
+        }
+        assertTrue(inputEngine.fetchAction() instanceof Repeat repeat && repeat.getCount() == 1_000_000);
+        assertTrue(inputEngine.fetchAction() instanceof Repeat repeat && repeat.getCount() == 7);
+        assertTrue(inputEngine.fetchAction() instanceof Exit);
+    }
+
     private InputStream fixValueStream(String content) {
         final var bytes = content.getBytes(StandardCharsets.UTF_8);
         return new ByteArrayInputStream(bytes);
@@ -1,14 +1,19 @@
 package hk.ust.comp3021.replay;
 
 import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.Position;
 import hk.ust.comp3021.utils.TestHelper;
 import hk.ust.comp3021.utils.TestKind;
+import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -55,6 +60,218 @@ class TerminalRenderingEngineTest {
         assertEquals('a', lines.get(3).charAt(1));
     }
 
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testDifferentialRenderWritesChangedCells() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                -1
+                #######
+                #A.a.@#
+                #######
+                """));
+        final var stream = new CapturingStream();
+        final var renderingEngine = new TerminalRenderingEngine(stream, TerminalRenderingEngine.Mode.DIFFERENTIAL);
+
+        renderingEngine.render(gameState);
+        final var firstFrame = stream.getContent();
+        assertTrue(firstFrame.contains("\033[2J"));
+        assertTrue(firstFrame.contains("#A.a.@#\n"));
+        assertTrue(firstFrame.endsWith("\033[4r\033[4;1H"));
+
+        renderingEngine.render(gameState);
+        assertEquals(firstFrame, stream.getContent());
+
+        gameState.move(Position.of(3, 1), Position.of(4, 1));
+        gameState.move(Position.of(1, 1), Position.of(2, 1));
+        renderingEngine.message("moved");
+        renderingEngine.render(gameState);
+        assertEquals(firstFrame + "moved" + System.lineSeparator() + "\0337\033[2;2H.A.a\0338",
+                stream.getContent());
+
+        renderingEngine.close();
+        assertTrue(stream.getContent().endsWith("\0337\033[r\0338"));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testDifferentialRenderKeepsMessagesBeforeFirstFrame() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                -1
+                #######
+                #A.a.@#
+                #######
+                """));
+        final var stream = new CapturingStream();
+        final var renderingEngine = new TerminalRenderingEngine(stream, TerminalRenderingEngine.Mode.DIFFERENTIAL);
+
+        renderingEngine.message("ready");
+        renderingEngine.flush();
+        assertEquals("", stream.getContent());
+        renderingEngine.render(gameState);
+        // Written into the scroll region below the map, after the screen is cleared.
+        assertTrue(stream.getContent().endsWith("\033[4r\033[4;1Hready" + System.lineSeparator()), stream.getContent());
+
+        final var unpainted = new CapturingStream();
+        final var closed = new TerminalRenderingEngine(unpainted, TerminalRenderingEngine.Mode.DIFFERENTIAL);
+        closed.message("bye");
+        closed.close();
+        assertEquals("bye" + System.lineSeparator(), unpainted.getContent());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testDifferentialRenderRepaintsResizedMap() {
+        final var stream = new CapturingStream();
+        final var renderingEngine = new TerminalRenderingEngine(stream, TerminalRenderingEngine.Mode.DIFFERENTIAL);
+
+        renderingEngine.render(new GameState(TestHelper.parseGameMap("""
+                -1
+                #####
+                #A@a#
+                #####
+                """)));
+        final var firstFrame = stream.getContent();
+        renderingEngine.render(new GameState(TestHelper.parseGameMap("""
+                -1
+                ######
+                #A@.a#
+                #....#
+                ######
+                """)));
+
+        final var secondFrame = stream.getContent().substring(firstFrame.length());
+        assertTrue(secondFrame.contains("\033[2J"));
+        assertTrue(secondFrame.contains("#....#\n"));
+        assertTrue(secondFrame.endsWith("\033[5r\033[5;1H"));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRenderRedrawsMovedEntities() {
+        final var map = TestHelper.parseGameMap("""
+                -1
+                ########
+                #A.a.@.#
+                #.....##
+                ########
+                """);
+        final var gameState = new GameState(map);
+        final var stream = new CapturingStream();
+        final var renderingEngine = new TerminalRenderingEngine(stream);
+        renderingEngine.render(gameState);
+
+        gameState.move(Position.of(3, 1), Position.of(3, 2));
+        gameState.move(Position.of(1, 1), Position.of(3, 1));
+        final var rendered = stream.getContent().length();
+        renderingEngine.render(gameState);
+
+        assertEquals("""
+                ########
+                #..A.@.#
+                #..a..##
+                ########
+                """, stream.getContent().substring(rendered));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testChannelCoalescesMessagesWithFrame() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                -1
+                #####
+                #A@a#
+                #####
+                """));
+        final var bytes = new ByteArrayOutputStream();
+        final var writes = new ArrayList<Integer>();
+        final var channel = Channels.newChannel(new OutputStream() {
+            @Override
+            public void write(int b) {
+                bytes.write(b);
+            }
+
+            @Override
+            public void write(byte @NotNull [] b, int off, int len) {
+                writes.add(len);
+                bytes.write(b, off, len);
+            }
+        });
+        final var renderingEngine = new TerminalRenderingEngine(channel, TerminalRenderingEngine.Mode.FULL);
+
+        renderingEngine.message("Undo Quota: \u221e");
+        renderingEngine.message("Ready");
+        assertEquals(0, bytes.size());
+        renderingEngine.render(gameState);
+        assertEquals(1, writes.size());
+        renderingEngine.message("Game exits.");
+        renderingEngine.close();
+
+        final var separator = System.lineSeparator();
+        assertEquals("Undo Quota: \u221e" + separator + "Ready" + separator + "#####\n#A@a#\n#####\n"
+                + "Game exits." + separator, bytes.toString(StandardCharsets.UTF_8));
+        assertEquals(2, writes.size());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testViewportFollowsPlayers() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                -1
+                ##############
+                #A.a......@.B#
+                #..b...@.....#
+                ##############
+                """));
+        final var stream = new CapturingStream();
+        final var renderingEngine = new TerminalRenderingEngine(stream);
+
+        renderingEngine.setViewport(new TerminalRenderingEngine.Viewport(6, 3, TerminalRenderingEngine.Viewport.ALL_PLAYERS));
+        renderingEngine.render(gameState);
+        assertEquals("""
+                ######
+                a.....
+                b...@.
+                """, stream.getContent());
+
+        renderingEngine.setViewport(new TerminalRenderingEngine.Viewport(6, 3, 1));
+        final var rendered = stream.getContent().length();
+        renderingEngine.render(gameState);
+        assertEquals("""
+                ######
+                ..@.B#
+                .....#
+                """, stream.getContent().substring(rendered));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testDifferentialViewportWritesChangedCellsOfWindow() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                -1
+                ############
+                #A.a......@#
+                ############
+                """));
+        final var stream = new CapturingStream();
+        final var renderingEngine = new TerminalRenderingEngine(stream, TerminalRenderingEngine.Mode.DIFFERENTIAL);
+        renderingEngine.setViewport(new TerminalRenderingEngine.Viewport(5, 3, 0));
+
+        renderingEngine.render(gameState);
+        final var firstFrame = stream.getContent();
+        assertTrue(firstFrame.endsWith("#####\n#A.a.\n#####\n\033[4r\033[4;1H"), firstFrame);
+
+        gameState.move(Position.of(1, 1), Position.of(2, 1));
+        renderingEngine.render(gameState);
+        final var secondFrame = stream.getContent().substring(firstFrame.length());
+        assertEquals("\0337\033[2;2H.A\0338", secondFrame);
+
+        // The window scrolls by two columns, and only the cells showing something else are written.
+        gameState.move(Position.of(2, 1), Position.of(4, 1));
+        renderingEngine.render(gameState);
+        assertEquals("\0337\033[2;1H.aA.\0338",
+                stream.getContent().substring(firstFrame.length() + secondFrame.length()));
+    }
+
     static class CapturingStream extends PrintStream {
         public CapturingStream() {
             super(new ByteArrayOutputStream());
@@ -0,0 +1,124 @@
+package hk.ust.comp3021.solver;
+
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.RenderingEngine;
+import hk.ust.comp3021.replay.ReplaySokobanGame;
+import hk.ust.comp3021.replay.StreamInputEngine;
+import hk.ust.comp3021.utils.TestHelper;
+import hk.ust.comp3021.utils.TestKind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class CooperativeSolverTest {
+
+    private static final String twoPlayerMap = """
+            -1
+            #######
+            #A.a.@#
+            #.....#
+            #B.b.@#
+            #######
+            """;
+
+    private static final String threePlayerMap = """
+            3
+            #########
+            #A.a..@.#
+            #.#.#.#.#
+            #..b.B..#
+            #.#.#.#.#
+            #@..c.C.#
+            #.....@.#
+            #########
+            """;
+
+    @TempDir
+    private Path tempDir;
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testSinglePlayer() {
+        final var gameMap = TestHelper.parseGameMap("""
+                5
+                ######
+                #Aa.@#
+                #a...#
+                #....#
+                #@...#
+                ######
+                """);
+
+        final var solution = new CooperativeSolver(Duration.ofSeconds(1)).solve(gameMap);
+
+        assertNotNull(solution);
+        assertEquals(1, solution.getActions().size());
+        assertTrue(solution.isWinning(gameMap));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testActionsHaveSameLength() {
+        final var gameMap = TestHelper.parseGameMap(threePlayerMap);
+
+        final var solution = new CooperativeSolver(Duration.ofSeconds(1)).solve(gameMap);
+
+        assertNotNull(solution);
+        assertEquals(3, solution.getActions().size());
+        assertTrue(solution.getActions().values().stream().allMatch(it -> it.length() == solution.getRounds()));
+        assertTrue(solution.isWinning(gameMap));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testUnsolvable() {
+        final var gameMap = TestHelper.parseGameMap("""
+                2
+                ########
+                #..@..@#
+                #A..a..#
+                #..a#@.#
+                #@.a#..#
+                #.b..B.#
+                ########
+                """);
+
+        assertNull(new CooperativeSolver(Duration.ofSeconds(1)).solve(gameMap));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testReplayRoundRobin() throws IOException {
+        final var gameMap = TestHelper.parseGameMap(twoPlayerMap);
+        final var solution = new CooperativeSolver(Duration.ofSeconds(1)).solve(gameMap);
+        assertNotNull(solution);
+
+        final var files = solution.writeActionFiles(tempDir);
+        assertEquals("0", Files.readAllLines(files.get(0)).get(0));
+        final var inputEngines = new ArrayList<StreamInputEngine>();
+        for (final var file : files) {
+            inputEngines.add(new StreamInputEngine(new FileInputStream(file.toFile())));
+        }
+        final var gameState = new GameState(gameMap);
+        final var game = new ReplaySokobanGame(
+                ReplaySokobanGame.Mode.ROUND_ROBIN,
+                60,
+                gameState,
+                inputEngines,
+                mock(RenderingEngine.class)
+        );
+        game.run();
+
+        assertTrue(gameState.isWin());
+    }
+}
@@ -0,0 +1,62 @@
+package hk.ust.comp3021.solver;
+
+import hk.ust.comp3021.actions.Action;
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.Move;
+import hk.ust.comp3021.game.Position;
+import hk.ust.comp3021.utils.TestHelper;
+import hk.ust.comp3021.utils.TestKind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeadlessGameTest {
+
+    private static final String MAP = """
+            -1
+            ######
+            #A.a@#
+            #....#
+            ######
+            """;
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRunStopsWhenWon() {
+        final var actions = new ArrayDeque<Action>(List.of(new Move.Right(0), new Move.Right(0), new Move.Right(0)));
+        final var game = new HeadlessGame(TestHelper.parseGameMap(MAP), actions::remove);
+
+        game.run();
+
+        assertTrue(game.isWin());
+        assertEquals(1, actions.size());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRunStopsAtExit() {
+        final var actions = new ArrayDeque<Action>(List.of(new Move.Down(0), new Exit(0), new Move.Up(0)));
+        final var game = new HeadlessGame(TestHelper.parseGameMap(MAP), actions::remove);
+
+        game.run();
+
+        assertFalse(game.isWin());
+        assertEquals(Position.of(1, 2), game.getState().getPlayerPositionById(0));
+        assertEquals(1, actions.size());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testGameDrivenByCallerHasNoInput() {
+        final var game = new HeadlessGame(TestHelper.parseGameMap(MAP));
+
+        game.run();
+        game.apply(0, 'L');
+
+        assertEquals(Position.of(2, 1), game.getState().getPlayerPositionById(0));
+    }
+}
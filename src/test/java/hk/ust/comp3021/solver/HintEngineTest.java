@@ -0,0 +1,152 @@
+package hk.ust.comp3021.solver;
+
+import hk.ust.comp3021.actions.Move;
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.Position;
+import hk.ust.comp3021.utils.TestHelper;
+import hk.ust.comp3021.utils.TestKind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HintEngineTest {
+
+    private static final String twoPlayerMap = """
+            -1
+            #######
+            #A.a.@#
+            #.....#
+            #B.b.@#
+            #######
+            """;
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testFollowingHintsHitsCache() {
+        final var gameState = new GameState(TestHelper.parseGameMap(twoPlayerMap));
+        final var hintEngine = new HintEngine(Duration.ofSeconds(1));
+
+        final var first = hintEngine.nextMove(gameState, 0);
+        assertTrue(first.isPresent());
+        assertInstanceOf(Move.Right.class, first.get());
+        gameState.move(Position.of(1, 1), Position.of(2, 1));
+        final var second = hintEngine.nextMove(gameState, 0);
+        assertTrue(second.isPresent());
+        assertInstanceOf(Move.Right.class, second.get());
+
+        final var metrics = hintEngine.getMetrics();
+        assertEquals(1, metrics.misses());
+        assertEquals(1, metrics.hits());
+        assertEquals(0, metrics.timeouts());
+        assertTrue(metrics.maxLatencyNanos() <= metrics.totalLatencyNanos());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testOtherPlayerDoesNotInvalidate() {
+        final var gameState = new GameState(TestHelper.parseGameMap(twoPlayerMap));
+        final var hintEngine = new HintEngine(Duration.ofSeconds(1));
+
+        hintEngine.nextMove(gameState, 0);
+        gameState.move(Position.of(1, 3), Position.of(1, 2));
+        hintEngine.nextMove(gameState, 0);
+
+        assertEquals(1, hintEngine.getMetrics().hits());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testOtherPlayerCuttingRegionDoesNotInvalidate() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                -1
+                #######
+                #.#####
+                #.A.a@#
+                #B.b.@#
+                #######
+                """));
+        final var hintEngine = new HintEngine(Duration.ofSeconds(1));
+
+        assertInstanceOf(Move.Right.class, hintEngine.nextMove(gameState, 0).orElseThrow());
+        // Player B cuts player A off the top left corner, which the plan does not need.
+        gameState.move(Position.of(1, 3), Position.of(1, 2));
+        assertInstanceOf(Move.Right.class, hintEngine.nextMove(gameState, 0).orElseThrow());
+
+        assertEquals(1, hintEngine.getMetrics().hits());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testTimeoutContinuesInBackground() {
+        final var gameState = new GameState(TestHelper.parseGameMap(twoPlayerMap));
+        final var tasks = new ArrayList<Runnable>();
+        final var hintEngine = new HintEngine(new PushSolver(), Duration.ZERO, 16, tasks::add);
+
+        assertTrue(hintEngine.nextMove(gameState, 0).isEmpty());
+        assertTrue(hintEngine.nextMove(gameState, 0).isEmpty());
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        final var hint = hintEngine.nextMove(gameState, 0);
+
+        assertTrue(hint.isPresent());
+        assertInstanceOf(Move.Right.class, hint.get());
+        final var metrics = hintEngine.getMetrics();
+        assertEquals(2, metrics.timeouts());
+        assertEquals(1, metrics.hits());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRejectedSearchIsSearchedAgain() {
+        final var gameState = new GameState(TestHelper.parseGameMap(twoPlayerMap));
+        final var tasks = new ArrayList<Runnable>();
+        final var rejected = new AtomicBoolean(false);
+        final var hintEngine = new HintEngine(new PushSolver(), Duration.ZERO, 16, task -> {
+            if (rejected.compareAndSet(false, true)) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(task);
+        });
+
+        assertTrue(hintEngine.nextMove(gameState, 0).isEmpty());
+        assertTrue(tasks.isEmpty());
+        assertTrue(hintEngine.nextMove(gameState, 0).isEmpty());
+        assertEquals(1, tasks.size());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testLayoutsWithSameHashDoNotShareHints() {
+        final var solvable = new GameState(TestHelper.parseGameMap("""
+                -1
+                #######
+                #A.a@.#
+                #.....#
+                #..#..#
+                #######
+                """));
+        final var unsolvable = new GameState(TestHelper.parseGameMap("""
+                -1
+                #######
+                #A.a.##
+                #.....#
+                #.@...#
+                #######
+                """));
+        final var first = Board.of(solvable).getLayout();
+        final var second = Board.of(unsolvable).getLayout();
+        assertEquals(first.hashCode(), second.hashCode());
+        assertNotEquals(first, second);
+
+        final var hintEngine = new HintEngine(Duration.ofSeconds(1));
+        assertTrue(hintEngine.nextMove(solvable, 0).isPresent());
+        assertTrue(hintEngine.nextMove(unsolvable, 0).isEmpty());
+        assertEquals(0, hintEngine.getMetrics().hits());
+    }
+}
@@ -0,0 +1,83 @@
+package hk.ust.comp3021.solver;
+
+import hk.ust.comp3021.game.GameMap;
+import hk.ust.comp3021.utils.TestHelper;
+import hk.ust.comp3021.utils.TestKind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapFingerprintTest {
+
+    static final List<String> rows = List.of(
+            "########",
+            "#A.a..@#",
+            "#......#",
+            "#..B.b.#",
+            "#.....@#",
+            "########"
+    );
+
+    static GameMap parse(List<String> rows) {
+        return TestHelper.parseGameMap("-1\n" + String.join("\n", rows) + "\n");
+    }
+
+    static List<String> rotate(List<String> rows) {
+        return IntStream.range(0, rows.get(0).length())
+                .mapToObj(x -> IntStream.range(0, rows.size())
+                        .mapToObj(y -> String.valueOf(rows.get(rows.size() - 1 - y).charAt(x)))
+                        .collect(Collectors.joining()))
+                .toList();
+    }
+
+    static List<String> mirror(List<String> rows) {
+        return rows.stream().map(row -> new StringBuilder(row).reverse().toString()).toList();
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testInvariantUnderSymmetries() {
+        final var expected = MapFingerprint.of(parse(rows)).getHash();
+        var current = rows;
+        for (int i = 0; i < 4; i++) {
+            current = rotate(current);
+            assertEquals(expected, MapFingerprint.of(parse(current)).getHash());
+            assertEquals(expected, MapFingerprint.of(parse(mirror(current))).getHash());
+        }
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testDistinguishesPlayers() {
+        final var swapped = rows.stream()
+                .map(row -> row.replace('A', '?').replace('B', 'A').replace('?', 'B'))
+                .toList();
+
+        assertNotEquals(MapFingerprint.of(parse(rows)).getHash(), MapFingerprint.of(parse(swapped)).getHash());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testSolutionRoundTrip() {
+        final var original = parse(rows);
+        final var transformed = parse(mirror(rotate(rows)));
+        final var solution = new CooperativeSolver(Duration.ofSeconds(1)).solve(original);
+        assertNotNull(solution);
+
+        final var canonical = MapFingerprint.of(original).toCanonical(solution);
+        final var converted = MapFingerprint.of(transformed).fromCanonical(canonical);
+
+        assertTrue(converted.isWinning(transformed));
+        assertEquals(solution.getActions(), MapFingerprint.of(original).fromCanonical(canonical).getActions());
+        assertFalse(Arrays.equals(
+                solution.getActions().get(0).toCharArray(),
+                converted.getActions().get(0).toCharArray()));
+    }
+}
@@ -0,0 +1,144 @@
+package hk.ust.comp3021.solver;
+
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.Move;
+import hk.ust.comp3021.actions.Wait;
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.Position;
+import hk.ust.comp3021.game.RenderingEngine;
+import hk.ust.comp3021.replay.ReplaySokobanGame;
+import hk.ust.comp3021.utils.TestHelper;
+import hk.ust.comp3021.utils.TestKind;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class PlannerInputEngineTest {
+
+    private static final String twoPlayerMap = """
+            -1
+            #######
+            #A.a.@#
+            #.....#
+            #B.b.@#
+            #######
+            """;
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testFetchDoesNotWaitForPlanning() throws InterruptedException {
+        final var gameState = new GameState(TestHelper.parseGameMap(twoPlayerMap));
+        final var release = new CountDownLatch(1);
+        final var threads = new ArrayList<Thread>();
+
+        final var inputEngine = new PlannerInputEngine(gameState, 0, new PushSolver(), Duration.ofSeconds(1), task -> {
+            final var thread = new Thread(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                task.run();
+            });
+            threads.add(thread);
+            thread.start();
+        });
+
+        final var start = System.nanoTime();
+        final var waiting = inputEngine.fetchAction();
+        final var elapsed = System.nanoTime() - start;
+        assertInstanceOf(Wait.class, waiting);
+        assertEquals(0, waiting.getInitiator());
+        assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(20), elapsed + " ns");
+
+        release.countDown();
+        threads.get(0).join();
+        assertInstanceOf(Move.Right.class, inputEngine.fetchAction());
+        assertEquals(1, threads.size());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testExitAfterRepeatedPlanningFailures() {
+        final var gameState = new GameState(TestHelper.parseGameMap(twoPlayerMap));
+        final var solver = new PushSolver() {
+            @Override
+            public @Nullable List<Push> solve(@NotNull Board board, int playerId, long deadlineNanos) {
+                return null;
+            }
+        };
+
+        final var inputEngine = new PlannerInputEngine(gameState, 0, solver, Duration.ofMillis(20), Runnable::run);
+
+        assertInstanceOf(Wait.class, inputEngine.fetchAction());
+        assertInstanceOf(Wait.class, inputEngine.fetchAction());
+        assertInstanceOf(Exit.class, inputEngine.fetchAction());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testPlannerDoesNotFailActions() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                -1
+                #######
+                #A...##
+                #.a..@#
+                #######
+                """));
+        final var game = new ReplaySokobanGame(
+                ReplaySokobanGame.Mode.ROUND_ROBIN,
+                ReplaySokobanGame.UNTHROTTLED,
+                gameState,
+                List.of(new PlannerInputEngine(gameState, 0)),
+                mock(RenderingEngine.class)
+        );
+
+        game.run();
+
+        assertTrue(gameState.isWin());
+        assertEquals(0, game.getFailedActionCount());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRetryRejectedMove() {
+        final var gameState = new GameState(TestHelper.parseGameMap(twoPlayerMap));
+        final var inputEngine = new PlannerInputEngine(gameState, 0, new PushSolver(), Duration.ofSeconds(1), Runnable::run);
+
+        final var first = inputEngine.fetchAction();
+        final var second = inputEngine.fetchAction();
+
+        assertInstanceOf(Move.Right.class, first);
+        assertInstanceOf(Move.Right.class, second);
+        assertEquals(Position.of(1, 1), gameState.getPlayerPositionById(0));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testFreeRaceWithPlanners() {
+        final var gameState = new GameState(TestHelper.parseGameMap(twoPlayerMap));
+        final var inputEngines = List.of(new PlannerInputEngine(gameState, 0), new PlannerInputEngine(gameState, 1));
+        final var game = new ReplaySokobanGame(
+                ReplaySokobanGame.Mode.FREE_RACE,
+                60,
+                gameState,
+                inputEngines,
+                mock(RenderingEngine.class)
+        );
+
+        game.run();
+
+        assertTrue(gameState.isWin());
+        assertInstanceOf(Exit.class, inputEngines.get(0).fetchAction());
+    }
+}
@@ -0,0 +1,67 @@
+package hk.ust.comp3021.solver;
+
+import hk.ust.comp3021.utils.TestHelper;
+import hk.ust.comp3021.utils.TestKind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolutionCacheTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testHitAcrossRunsAndOrientations() throws IOException {
+        final var original = MapFingerprintTest.parse(MapFingerprintTest.rows);
+        final var rotated = MapFingerprintTest.parse(MapFingerprintTest.rotate(MapFingerprintTest.rows));
+        final var solves = new AtomicInteger();
+        final var solver = new CooperativeSolver(Duration.ofSeconds(1));
+
+        final var first = new SolutionCache(tempDir, 4).getOrSolve(original, map -> {
+            solves.incrementAndGet();
+            return solver.solve(map);
+        });
+        final var second = new SolutionCache(tempDir, 4).getOrSolve(rotated, map -> {
+            solves.incrementAndGet();
+            return solver.solve(map);
+        });
+
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(1, solves.get());
+        assertTrue(second.isWinning(rotated));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testEvictLeastRecentlyUsed() throws IOException {
+        final var maps = new String[]{"#A.a@#", "#Aa.@#", "#A..a@#"};
+        final var cache = new SolutionCache(tempDir, 2);
+        final var solution = new Solution(Map.of(0, "L"));
+
+        cache.put(TestHelper.parseGameMap(wrap(maps[0])), solution);
+        cache.put(TestHelper.parseGameMap(wrap(maps[1])), solution);
+        assertNotNull(cache.get(TestHelper.parseGameMap(wrap(maps[0]))));
+        cache.put(TestHelper.parseGameMap(wrap(maps[2])), solution);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(TestHelper.parseGameMap(wrap(maps[0]))));
+        assertNull(cache.get(TestHelper.parseGameMap(wrap(maps[1]))));
+        assertEquals(2, new SolutionCache(tempDir, 2).size());
+    }
+
+    private static String wrap(String row) {
+        final var wall = "#".repeat(row.length());
+        return "-1\n" + wall + "\n" + row + "\n" + wall + "\n";
+    }
+}
@@ -0,0 +1,156 @@
+package hk.ust.comp3021.tools;
+
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.game.AbstractSokobanGame;
+import hk.ust.comp3021.game.GameMap;
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.replay.StreamInputEngine;
+import hk.ust.comp3021.utils.TestHelper;
+import hk.ust.comp3021.utils.TestKind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActionMinimizerTest {
+
+    private static final String MAP = """
+            -1
+            #########
+            #A.a...@#
+            #.......#
+            #..b..#.#
+            #B....@.#
+            #########
+            """;
+
+    @TempDir
+    private Path tempDir;
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testDropsFailuresWalksAndUndonePushes() {
+        final var map = TestHelper.parseGameMap(MAP);
+        // Bump into walls, wander around, push the box and undo it, then push it onto the goal.
+        final var actions = "0\nK\nK\nH\nJ\nL\nK\nL\nU\nJ\nL\nK\nL\nL\nL\nL\n";
+
+        final var minimized = minimize(map, actions);
+
+        assertEquals("LLLLL", minimized);
+        assertEquals(replay(map, actions), replay(map, lines(0, minimized)));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testKeepsUndosThatUseQuota() {
+        final var map = TestHelper.parseGameMap(MAP.replaceFirst("-1", "3"));
+        final var actions = "0\nJ\nK\nL\nL\nU\nH\nH\nH\n";
+
+        final var minimized = minimize(map, actions);
+
+        assertEquals("LLU", minimized);
+        assertEquals(replay(map, actions), replay(map, lines(0, minimized)));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRandomFilesKeepFinalState() {
+        final var random = new Random(40);
+        for (final var undoLimit : new String[]{"-1", "2"}) {
+            final var map = TestHelper.parseGameMap(MAP.replaceFirst("-1", undoLimit));
+            for (int i = 0; i < 200; i++) {
+                final var builder = new StringBuilder("1\n");
+                for (int k = 0; k < 60; k++) {
+                    builder.append("HJKLU".charAt(random.nextInt(5)));
+                    builder.append(random.nextInt(8) == 0 ? "3\n" : "\n");
+                }
+                final var actions = builder.toString();
+
+                final var minimized = minimize(map, actions);
+
+                final var expected = replay(map, actions);
+                final var actual = replay(map, lines(1, minimized));
+                assertEquals(expected, actual, actions);
+                assertEquals(expected.getPlayerPositionById(1), actual.getPlayerPositionById(1));
+                assertEquals(expected.isWin(), actual.isWin());
+            }
+        }
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testMinimizeCorpus() throws IOException, InterruptedException {
+        final var input = tempDir.resolve("in");
+        final var output = tempDir.resolve("out");
+        Files.createDirectories(input.resolve("nested"));
+        Files.writeString(input.resolve("a.txt"), "0\nK\nL\nL\nL\nL\nL\n");
+        Files.writeString(input.resolve("nested/b.txt"), "1\nH\nL\nK\nL\n");
+        Files.writeString(input.resolve("nested/broken.txt"), "");
+        Files.writeString(input.resolve("ignored.map"), MAP);
+        final var pool = new ForkJoinPool(2);
+
+        final ActionMinimizer.Summary summary;
+        try {
+            summary = new ActionMinimizer(pool).minimizeAll(TestHelper.parseGameMap(MAP), input, output);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(3, summary.files());
+        assertEquals(1, summary.failed());
+        assertEquals(10, summary.originalActions());
+        assertEquals(8, summary.minimizedActions());
+        assertEquals(lines(0, "LLLLL"), Files.readString(output.resolve("a.txt")));
+        assertEquals(lines(1, "KLL"), Files.readString(output.resolve("nested/b.txt")));
+        assertFalse(Files.exists(output.resolve("nested/broken.txt")));
+    }
+
+    private static String minimize(GameMap map, String actions) {
+        final var engine = new StreamInputEngine(stream(actions));
+        return ActionMinimizer.minimize(map, engine.getPlayerId(), engine).actions().stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining());
+    }
+
+    private static String lines(int playerId, String actions) {
+        return playerId + "\n" + actions.chars().mapToObj(c -> (char) c + "\n").collect(Collectors.joining());
+    }
+
+    /**
+     * Replays actions alone until the first exit or a win.
+     */
+    private static GameState replay(GameMap map, String actions) {
+        final var engine = new StreamInputEngine(stream(actions));
+        final var game = new AbstractSokobanGame(new GameState(map)) {
+            @Override
+            public void run() {
+                for (var action = engine.fetchAction(); !(action instanceof Exit); action = engine.fetchAction()) {
+                    processAction(action);
+                    if (state.isWin()) {
+                        return;
+                    }
+                }
+            }
+
+            GameState getState() {
+                return state;
+            }
+        };
+        game.run();
+        return game.getState();
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,124 @@
+package hk.ust.comp3021.tools;
+
+import hk.ust.comp3021.solver.Board;
+import hk.ust.comp3021.solver.PushSolver;
+import hk.ust.comp3021.utils.TestKind;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CorpusValidatorTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private void createCorpus() throws IOException {
+        Files.createDirectories(tempDir.resolve("nested"));
+        Files.writeString(tempDir.resolve("solvable.map"), """
+                -1
+                ######
+                #A.a@#
+                ######
+                """);
+        Files.writeString(tempDir.resolve("nested/unsolvable.map"), """
+                -1
+                ######
+                #a.A@#
+                ######
+                """);
+        Files.writeString(tempDir.resolve("nested/invalid.map"), """
+                -1
+                ######
+                #A.a.#
+                ######
+                """);
+        Files.writeString(tempDir.resolve("ignored.txt"), "not a map");
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testValidateCsv() throws IOException, InterruptedException {
+        createCorpus();
+        final var output = new StringWriter();
+        final var pool = new ForkJoinPool(2);
+
+        final CorpusValidator.Summary summary;
+        try (var report = new ValidationReport(output, ValidationReport.Format.CSV)) {
+            summary = new CorpusValidator(pool, Duration.ofSeconds(1)).validate(tempDir, report);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(3, summary.maps());
+        assertEquals(1, summary.invalid());
+        assertEquals(1, summary.solvable());
+        final var lines = output.toString().lines().toList();
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).startsWith("file,error,width"));
+        assertTrue(lines.stream().anyMatch(it -> it.contains("solvable.map,,6,3,1,1,SOLVABLE,")));
+        assertTrue(lines.stream().anyMatch(it -> it.contains("unsolvable.map,,6,3,1,1,UNSOLVED,")));
+        assertTrue(lines.stream().anyMatch(it -> it.contains("invalid.map,mismatch destinations,0,0,0,0,SKIPPED,0")));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testValidateJsonWithoutSolving() throws IOException, InterruptedException {
+        createCorpus();
+        final var output = new StringWriter();
+        final var pool = new ForkJoinPool(2);
+
+        try (var report = new ValidationReport(output, ValidationReport.Format.JSON)) {
+            new CorpusValidator(pool, null).validate(tempDir, report);
+        } finally {
+            pool.shutdown();
+        }
+
+        final var json = output.toString();
+        assertTrue(json.startsWith("[\n  {\"file\": "));
+        assertTrue(json.endsWith("}\n]\n"));
+        assertEquals(3, json.lines().filter(it -> it.contains("\"solvable\": \"SKIPPED\"")).count());
+        assertTrue(json.contains("\"width\": 6, \"height\": 3, \"players\": 1, \"boxes\": 1"));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testReportsFailureOfSolver() throws IOException, InterruptedException {
+        createCorpus();
+        final var output = new StringWriter();
+        final var pool = new ForkJoinPool(2);
+        final var solver = new PushSolver() {
+            @Override
+            public @Nullable List<Push> solve(@NotNull Board board, int playerId, long deadline,
+                                              @NotNull BooleanSupplier cancelled) {
+                throw new IllegalStateException("solver failed");
+            }
+        };
+
+        final CorpusValidator.Summary summary;
+        try (var report = new ValidationReport(output, ValidationReport.Format.CSV)) {
+            summary = new CorpusValidator(pool, Duration.ofSeconds(1), solver).validate(tempDir, report);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(3, summary.maps());
+        assertEquals(3, summary.invalid());
+        final var lines = output.toString().lines().toList();
+        assertEquals(4, lines.size());
+        assertTrue(lines.stream().anyMatch(it -> it.contains("solvable.map,solver failed,0,0,0,0,SKIPPED,0")));
+        assertTrue(lines.stream().anyMatch(it -> it.contains("invalid.map,mismatch destinations,0,0,0,0,SKIPPED,0")));
+    }
+}